@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.benchmarks;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.UDP;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.DefaultPacketContext;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.packet.PacketContext;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Factory of synthetic packet-ins.
+ */
+public final class BenchPackets {
+
+    private BenchPackets() {
+    }
+
+    /**
+     * Returns the device identifier used for the given device index.
+     *
+     * @param index device index
+     * @return device identifier
+     */
+    public static DeviceId device(int index) {
+        return DeviceId.deviceId(String.format("of:%016x", index + 1));
+    }
+
+    /**
+     * Returns the MAC address used for the given host index.
+     *
+     * @param index host index
+     * @return MAC address
+     */
+    public static MacAddress host(int index) {
+        return MacAddress.valueOf(0x020000000000L + index);
+    }
+
+    /**
+     * Builds a UDP over IPv4 packet-in.
+     *
+     * @param device device index
+     * @param port   input port
+     * @param src    source host index
+     * @param dst    destination host index
+     * @return inbound packet
+     */
+    public static InboundPacket ipv4(int device, long port, int src, int dst) {
+        UDP udp = new UDP();
+        udp.setSourcePort(5000).setDestinationPort(5001);
+        IPv4 ip = new IPv4();
+        ip.setSourceAddress(0x0a000000 + src)
+                .setDestinationAddress(0x0a000000 + dst)
+                .setProtocol(IPv4.PROTOCOL_UDP)
+                .setTtl((byte) 64)
+                .setPayload(udp);
+        Ethernet eth = new Ethernet();
+        eth.setSourceMACAddress(host(src))
+                .setDestinationMACAddress(host(dst))
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(ip);
+        ConnectPoint cp = new ConnectPoint(device(device), PortNumber.portNumber(port));
+        return new DefaultInboundPacket(cp, eth, ByteBuffer.wrap(eth.serialize()));
+    }
+
+    /**
+     * Wraps an inbound packet into a fresh packet context, as the packet
+     * service does for every packet-in.
+     *
+     * @param packet inbound packet
+     * @return packet context
+     */
+    public static PacketContext context(InboundPacket packet) {
+        OutboundPacket out = new DefaultOutboundPacket(packet.receivedFrom().deviceId(),
+                                                       DefaultTrafficTreatment.emptyTreatment(),
+                                                       packet.unparsed());
+        return new BenchPacketContext(packet, out);
+    }
+
+    /**
+     * Packet context whose packet-out goes nowhere.
+     */
+    private static final class BenchPacketContext extends DefaultPacketContext {
+
+        BenchPacketContext(InboundPacket inPacket, OutboundPacket outPacket) {
+            super(0L, inPacket, outPacket, false);
+        }
+
+        @Override
+        public void send() {
+            block();
+        }
+    }
+}
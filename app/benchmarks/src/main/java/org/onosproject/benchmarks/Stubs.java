@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import org.onlab.packet.ChassisId;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.core.DefaultApplicationId;
+import org.onosproject.event.AbstractListenerManager;
+import org.onosproject.event.EventDeliveryService;
+import org.onosproject.mastership.MastershipServiceAdapter;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.MastershipRole;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.packet.PacketServiceAdapter;
+import org.onosproject.net.provider.ProviderId;
+import org.osgi.service.component.ComponentContext;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Stand-ins for the ONOS services the sample applications depend on.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Returns an implementation of a service interface whose methods do
+     * nothing and return null, zero or false. Meant for services that are not
+     * on the measured path.
+     *
+     * @param type service interface
+     * @param <T>  service type
+     * @return no-op service
+     */
+    public static <T> T noop(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return type.getSimpleName();
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            }));
+    }
+
+    /**
+     * Returns a component context carrying the given configuration properties.
+     *
+     * @param properties property names and values
+     * @return component context
+     */
+    public static ComponentContext componentContext(Map<String, String> properties) {
+        Dictionary<String, Object> dictionary = new Hashtable<>(ImmutableMap.copyOf(properties));
+        return (ComponentContext) Proxy.newProxyInstance(
+                ComponentContext.class.getClassLoader(), new Class<?>[]{ComponentContext.class},
+                (proxy, method, args) -> "getProperties".equals(method.getName())
+                        ? dictionary : defaultValue(method.getReturnType()));
+    }
+
+    /**
+     * Hands a no-op event dispatcher to a manager posting events, as the
+     * service runtime would.
+     *
+     * @param manager listener manager
+     */
+    public static void injectEventDispatcher(AbstractListenerManager<?, ?> manager) {
+        try {
+            Field field = AbstractListenerManager.class.getDeclaredField("eventDispatcher");
+            field.setAccessible(true);
+            field.set(manager, noop(EventDeliveryService.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to inject the event dispatcher", e);
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return null;
+    }
+
+    /**
+     * Core service registering applications under fixed identifiers.
+     */
+    public static class BenchCoreService extends CoreServiceAdapter {
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return new DefaultApplicationId(1, name);
+        }
+    }
+
+    /**
+     * Packet service remembering the processor added by an application.
+     */
+    public static class BenchPacketService extends PacketServiceAdapter {
+
+        private PacketProcessor processor;
+
+        @Override
+        public void addProcessor(PacketProcessor processor, int priority) {
+            this.processor = processor;
+        }
+
+        /**
+         * Returns the last processor added.
+         *
+         * @return packet processor
+         */
+        public PacketProcessor processor() {
+            return processor;
+        }
+    }
+
+    /**
+     * Mastership service making the local instance master of the first
+     * devices of {@link BenchPackets#device(int)}.
+     */
+    public static class BenchMastershipService extends MastershipServiceAdapter {
+
+        private final Set<DeviceId> devices;
+
+        /**
+         * Creates a mastership service.
+         *
+         * @param count number of devices mastered
+         */
+        public BenchMastershipService(int count) {
+            devices = IntStream.range(0, count).mapToObj(BenchPackets::device).collect(Collectors.toSet());
+        }
+
+        @Override
+        public MastershipRole getLocalRole(DeviceId deviceId) {
+            return devices.contains(deviceId) ? MastershipRole.MASTER : MastershipRole.NONE;
+        }
+
+        @Override
+        public boolean isLocalMaster(DeviceId deviceId) {
+            return devices.contains(deviceId);
+        }
+
+        @Override
+        public Set<DeviceId> getDevicesOf(NodeId nodeId) {
+            return devices;
+        }
+    }
+
+    /**
+     * Device service listing the first devices of
+     * {@link BenchPackets#device(int)} as available switches.
+     */
+    public static class BenchDeviceService extends DeviceServiceAdapter {
+
+        private static final ProviderId PID = new ProviderId("bench", "org.onosproject.benchmarks");
+
+        private final List<Device> devices;
+
+        /**
+         * Creates a device service.
+         *
+         * @param count number of devices listed
+         */
+        public BenchDeviceService(int count) {
+            devices = IntStream.range(0, count)
+                    .mapToObj(i -> (Device) new DefaultDevice(PID, BenchPackets.device(i), Device.Type.SWITCH,
+                                                               "bench", "1", "1", String.valueOf(i),
+                                                               new ChassisId(i)))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public int getDeviceCount() {
+            return devices.size();
+        }
+
+        @Override
+        public int getAvailableDeviceCount() {
+            return devices.size();
+        }
+
+        @Override
+        public Iterable<Device> getDevices() {
+            return devices;
+        }
+
+        @Override
+        public Iterable<Device> getAvailableDevices() {
+            return devices;
+        }
+    }
+}
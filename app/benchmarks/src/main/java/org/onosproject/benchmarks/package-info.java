@@ -0,0 +1,24 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Shared stand-ins used by the packet-in benchmarks of the sample applications.
+ * <p>
+ * Build with {@code mvn package} and run with
+ * {@code java -jar target/benchmarks.jar -prof gc}; the gc profiler reports
+ * the allocation rate next to throughput and latency percentiles.
+ */
+package org.onosproject.benchmarks;
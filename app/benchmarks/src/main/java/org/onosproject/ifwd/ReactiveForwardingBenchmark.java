@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ifwd;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.onlab.packet.VlanId;
+import org.onosproject.benchmarks.Stubs;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cluster.ClusterServiceAdapter;
+import org.onosproject.net.DefaultHost;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.flowobjective.FlowObjectiveServiceAdapter;
+import org.onosproject.net.host.HostServiceAdapter;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentListener;
+import org.onosproject.net.intent.IntentServiceAdapter;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.MockIdGenerator;
+import org.onosproject.net.intent.Key;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.onosproject.benchmarks.BenchPackets.context;
+import static org.onosproject.benchmarks.BenchPackets.device;
+import static org.onosproject.benchmarks.BenchPackets.host;
+import static org.onosproject.benchmarks.BenchPackets.ipv4;
+
+/**
+ * Measures {@code ReactivePacketProcessor} of {@link IntentReactiveForwarding}
+ * on synthetic packet-ins.
+ * <p>
+ * Hosts {@code 0..hosts-1} are known to the host service, attached to
+ * port {@code 1 + host % 48} of a device picked round-robin. The intent
+ * service keeps submitted intents in memory and reports them installed right
+ * away; the application submits them in batches without a rate limit.
+ * Each benchmark cycles through a pre-built packet set:
+ * <ul>
+ * <li>knownDestination - the host pair intent is installed, the packet is
+ * forwarded to the destination;</li>
+ * <li>unknownDestination - the destination host is unknown, the packet is
+ * flooded (blocked, as no port is a broadcast point);</li>
+ * <li>hostChurn - packets of a large set of host pairs, most of them seen
+ * for the first time during a measurement iteration;</li>
+ * <li>baseline - only builds the packet context, to be subtracted from the
+ * others.</li>
+ * </ul>
+ * The number of devices the packets are spread over is a parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactiveForwardingBenchmark {
+
+    private static final int PACKETS = 4096;
+    private static final int CHURN_PAIRS = 1 << 18;
+    private static final int PORTS = 48;
+    private static final ProviderId PID = new ProviderId("bench", "org.onosproject.benchmarks");
+
+    @Param({"1", "64", "1024"})
+    public int devices;
+
+    @Param({"1024"})
+    public int hosts;
+
+    private IntentReactiveForwarding app;
+    private PacketProcessor processor;
+    private BenchIntentService intentService;
+
+    private InboundPacket[] known;
+    private InboundPacket[] unknown;
+    private InboundPacket[] churn;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockIdGenerator.cleanBind();
+        Stubs.BenchPacketService packetService = new Stubs.BenchPacketService();
+        BenchHostService hostService = new BenchHostService();
+        intentService = new BenchIntentService();
+        for (int h = 0; h < hosts; h++) {
+            HostId id = HostId.hostId(host(h));
+            HostLocation location = new HostLocation(device(h % devices), PortNumber.portNumber(port(h)), 0L);
+            hostService.hosts.put(id, new DefaultHost(PID, id, host(h), VlanId.NONE, location, ImmutableSet.of()));
+        }
+
+        app = new IntentReactiveForwarding();
+        app.coreService = new Stubs.BenchCoreService();
+        app.cfgService = Stubs.noop(ComponentConfigService.class);
+        app.clusterService = new ClusterServiceAdapter();
+        app.mastershipService = new Stubs.BenchMastershipService(devices);
+        app.deviceService = new Stubs.BenchDeviceService(devices);
+        app.topologyService = new TopologyServiceAdapter();
+        app.packetService = packetService;
+        app.intentService = intentService;
+        app.hostService = hostService;
+        app.flowRuleService = new FlowRuleServiceAdapter();
+        app.flowObjectiveService = new FlowObjectiveServiceAdapter();
+        app.activate(Stubs.componentContext(ImmutableMap.of("intentRateLimit", "0")));
+        processor = packetService.processor();
+
+        known = new InboundPacket[PACKETS];
+        unknown = new InboundPacket[PACKETS];
+        churn = new InboundPacket[CHURN_PAIRS];
+        for (int i = 0; i < PACKETS; i++) {
+            int src = i % hosts;
+            int dst = (i * 7 + 1) % hosts;
+            known[i] = ipv4(src % devices, port(src), src, dst);
+            unknown[i] = ipv4(src % devices, port(src), src, hosts + i);
+            processor.process(context(known[i]));
+        }
+        for (int i = 0; i < CHURN_PAIRS; i++) {
+            int src = i % hosts;
+            int dst = (i / hosts + src + 1) % hosts;
+            churn[i] = ipv4(src % devices, port(src), src, dst);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void forgetChurn() {
+        intentService.purgeAll();
+        for (InboundPacket packet : known) {
+            processor.process(context(packet));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.deactivate();
+        MockIdGenerator.unbind();
+    }
+
+    @Benchmark
+    public PacketContext baseline() {
+        return context(known[next(known.length)]);
+    }
+
+    @Benchmark
+    public PacketContext knownDestination() {
+        return process(known);
+    }
+
+    @Benchmark
+    public PacketContext unknownDestination() {
+        return process(unknown);
+    }
+
+    @Benchmark
+    public PacketContext hostChurn() {
+        return process(churn);
+    }
+
+    private PacketContext process(InboundPacket[] packets) {
+        PacketContext pc = context(packets[next(packets.length)]);
+        processor.process(pc);
+        return pc;
+    }
+
+    private int next(int length) {
+        int i = cursor;
+        cursor = i + 1 == length ? 0 : i + 1;
+        return i % length;
+    }
+
+    private static long port(int host) {
+        return 1 + host % PORTS;
+    }
+
+    /**
+     * Host service backed by a map.
+     */
+    private static final class BenchHostService extends HostServiceAdapter {
+
+        final Map<HostId, Host> hosts = new ConcurrentHashMap<>();
+
+        @Override
+        public Host getHost(HostId hostId) {
+            return hosts.get(hostId);
+        }
+
+        @Override
+        public Iterable<Host> getHosts() {
+            return hosts.values();
+        }
+
+        @Override
+        public int getHostCount() {
+            return hosts.size();
+        }
+    }
+
+    /**
+     * Intent service keeping submitted intents in memory, all of them installed
+     * and reported so to the listener right away.
+     */
+    private static final class BenchIntentService extends IntentServiceAdapter {
+
+        final Map<Key, Intent> intents = new ConcurrentHashMap<>();
+        private IntentListener listener;
+
+        @Override
+        public void addListener(IntentListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeListener(IntentListener listener) {
+            this.listener = null;
+        }
+
+        @Override
+        public void submit(Intent intent) {
+            intents.put(intent.key(), intent);
+            post(IntentEvent.Type.INSTALLED, intent);
+        }
+
+        @Override
+        public void withdraw(Intent intent) {
+            intents.remove(intent.key());
+            post(IntentEvent.Type.WITHDRAWN, intent);
+        }
+
+        void purgeAll() {
+            intents.values().forEach(intent -> post(IntentEvent.Type.PURGED, intent));
+            intents.clear();
+        }
+
+        private void post(IntentEvent.Type type, Intent intent) {
+            if (listener != null) {
+                listener.event(new IntentEvent(type, intent));
+            }
+        }
+
+        @Override
+        public Intent getIntent(Key key) {
+            return intents.get(key);
+        }
+
+        @Override
+        public IntentState getIntentState(Key key) {
+            return intents.containsKey(key) ? IntentState.INSTALLED : null;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.ImmutableMap;
+import org.onosproject.benchmarks.Stubs;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.cluster.ClusterServiceAdapter;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.config.NetworkConfigRegistry;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+import org.onosproject.store.service.TestStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.onosproject.benchmarks.BenchPackets.context;
+import static org.onosproject.benchmarks.BenchPackets.ipv4;
+
+/**
+ * Measures {@code LayerTwoPacketProcessor} on synthetic packet-ins.
+ * <p>
+ * Hosts {@code 0..hosts-1} are attached to port {@code 1 + host % 48} of every
+ * device and learned before the measurement starts. Each benchmark cycles
+ * through a pre-built packet set:
+ * <ul>
+ * <li>knownDestination - both ends learned, the packet is forwarded and the
+ * (suppressed after the first time) rule install requested;</li>
+ * <li>unknownDestination - the destination was never seen, the packet is
+ * flooded, or dropped by storm control when it is enabled as the packet set
+ * repeats faster than the deduplication window;</li>
+ * <li>hostChurn - every packet comes from a source MAC that is not in the
+ * table, which is capped below the churn set so every packet learns and
+ * evicts;</li>
+ * <li>baseline - only builds the packet context, to be subtracted from the
+ * others.</li>
+ * </ul>
+ * The number of devices the packets are spread over and whether storm
+ * control is enabled are parameters. Every port is a broadcast point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayerTwoForwardBenchmark {
+
+    private static final int PACKETS = 4096;
+    private static final int CHURN_HOSTS = 1 << 16;
+    private static final int PORTS = 48;
+
+    @Param({"1", "64", "1024"})
+    public int devices;
+
+    @Param({"1024"})
+    public int hosts;
+
+    @Param({"false", "true"})
+    public boolean stormControl;
+
+    private LayerTwoManager manager;
+    private PacketProcessor processor;
+
+    private InboundPacket[] known;
+    private InboundPacket[] unknown;
+    private InboundPacket[] churn;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Stubs.BenchPacketService packetService = new Stubs.BenchPacketService();
+        manager = new LayerTwoManager();
+        manager.coreService = new Stubs.BenchCoreService();
+        manager.cfgService = new ComponentConfigAdapter();
+        manager.netCfgRegistry = Stubs.noop(NetworkConfigRegistry.class);
+        manager.deviceService = new Stubs.BenchDeviceService(devices);
+        manager.packetService = packetService;
+        manager.flowRuleService = new FlowRuleServiceAdapter();
+        manager.topologyService = new TopologyServiceAdapter() {
+            @Override
+            public boolean isBroadcastPoint(Topology topology, ConnectPoint connectPoint) {
+                return true;
+            }
+        };
+        manager.storageService = new TestStorageService();
+        manager.clusterService = new ClusterServiceAdapter();
+        manager.mastershipService = new Stubs.BenchMastershipService(devices);
+        Stubs.injectEventDispatcher(manager);
+        manager.activate(Stubs.componentContext(ImmutableMap.of(
+                "macTableCapacity", String.valueOf(CHURN_HOSTS / 4),
+                "stormControl", String.valueOf(stormControl),
+                "macSnapshotInterval", "0")));
+        processor = packetService.processor();
+
+        for (int d = 0; d < devices; d++) {
+            for (int h = 0; h < hosts; h++) {
+                processor.process(context(ipv4(d, port(h), h, (h + 1) % hosts)));
+            }
+        }
+
+        known = new InboundPacket[PACKETS];
+        unknown = new InboundPacket[PACKETS];
+        churn = new InboundPacket[CHURN_HOSTS];
+        for (int i = 0; i < PACKETS; i++) {
+            int src = i % hosts;
+            int dst = (i * 7 + 1) % hosts;
+            known[i] = ipv4(i % devices, port(src), src, dst);
+            unknown[i] = ipv4(i % devices, port(src), src, hosts + CHURN_HOSTS + i);
+        }
+        for (int i = 0; i < CHURN_HOSTS; i++) {
+            churn[i] = ipv4(i % devices, port(i), hosts + i, hosts + CHURN_HOSTS + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.deactivate();
+    }
+
+    @Benchmark
+    public PacketContext baseline() {
+        return context(known[next(known.length)]);
+    }
+
+    @Benchmark
+    public PacketContext knownDestination() {
+        return process(known);
+    }
+
+    @Benchmark
+    public PacketContext unknownDestination() {
+        return process(unknown);
+    }
+
+    @Benchmark
+    public PacketContext hostChurn() {
+        return process(churn);
+    }
+
+    private PacketContext process(InboundPacket[] packets) {
+        PacketContext pc = context(packets[next(packets.length)]);
+        processor.process(pc);
+        return pc;
+    }
+
+    private int next(int length) {
+        int i = cursor;
+        cursor = i + 1 == length ? 0 : i + 1;
+        return i % length;
+    }
+
+    private static long port(int host) {
+        return 1 + host % PORTS;
+    }
+}
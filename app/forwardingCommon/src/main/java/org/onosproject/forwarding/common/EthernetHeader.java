@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.forwarding.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the Ethernet header fields the forwarding decisions need straight
+ * from the frame received, without deserializing the frame.
+ * <p>
+ * Fields are read at absolute offsets from the position of the buffer,
+ * which is left untouched, in network byte order. The EtherType is that of
+ * the payload, after any 802.1Q or 802.1ad tags.
+ */
+public final class EthernetHeader {
+
+    /**
+     * Length of an untagged Ethernet header.
+     */
+    public static final int LENGTH = 14;
+
+    private static final int SRC_OFFSET = 6;
+    private static final int TYPE_OFFSET = 12;
+    private static final int TAG_LENGTH = 4;
+
+    private static final int TYPE_VLAN = 0x8100;
+    private static final int TYPE_QINQ = 0x88a8;
+    private static final int TYPE_QINQ_LEGACY = 0x9100;
+
+    private EthernetHeader() {
+    }
+
+    /**
+     * Returns whether the frame is long enough to hold an Ethernet header.
+     *
+     * @param frame frame received
+     * @return true if the header fields can be read
+     */
+    public static boolean isComplete(ByteBuffer frame) {
+        return frame != null && frame.remaining() >= LENGTH;
+    }
+
+    /**
+     * Returns the destination MAC address of a frame.
+     *
+     * @param frame frame received, at least {@link #LENGTH} bytes long
+     * @return 48-bit MAC address
+     */
+    public static long dstMac(ByteBuffer frame) {
+        return mac(frame, frame.position());
+    }
+
+    /**
+     * Returns the source MAC address of a frame.
+     *
+     * @param frame frame received, at least {@link #LENGTH} bytes long
+     * @return 48-bit MAC address
+     */
+    public static long srcMac(ByteBuffer frame) {
+        return mac(frame, frame.position() + SRC_OFFSET);
+    }
+
+    /**
+     * Returns the EtherType of the payload of a frame, skipping the VLAN
+     * tags. The type of the last tag is returned if the frame ends before
+     * the payload type.
+     *
+     * @param frame frame received, at least {@link #LENGTH} bytes long
+     * @return EtherType
+     */
+    public static short etherType(ByteBuffer frame) {
+        int offset = frame.position() + TYPE_OFFSET;
+        int type = unsignedShort(frame, offset);
+        while (isTag(type) && offset + TAG_LENGTH + 2 <= frame.limit()) {
+            offset += TAG_LENGTH;
+            type = unsignedShort(frame, offset);
+        }
+        return (short) type;
+    }
+
+    private static boolean isTag(int type) {
+        return type == TYPE_VLAN || type == TYPE_QINQ || type == TYPE_QINQ_LEGACY;
+    }
+
+    private static long mac(ByteBuffer frame, int offset) {
+        long high = unsignedShort(frame, offset);
+        long low = (long) unsignedShort(frame, offset + 2) << 16 | unsignedShort(frame, offset + 4);
+        return high << 32 | low;
+    }
+
+    /* Reads byte by byte, so that the order set on the buffer does not matter. */
+    private static int unsignedShort(ByteBuffer frame, int offset) {
+        return (frame.get(offset) & 0xff) << 8 | frame.get(offset + 1) & 0xff;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.forwarding.common;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram for hot paths.
+ * <p>
+ * Values are recorded into log-linear buckets (four sub-buckets per power of
+ * two, in the manner of HdrHistogram with two significant bits), each backed
+ * by a striped {@link LongAdder}. Recording neither locks nor allocates;
+ * percentiles are reported as the upper bound of the bucket they fall into,
+ * so they are accurate to within 25%.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets[bucket(value)].increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Takes a snapshot of the values recorded so far. Values recorded while
+     * the snapshot is taken may or may not be included.
+     *
+     * @return histogram snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, total.sum(), max.get());
+    }
+
+    /**
+     * Clears the recorded values.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable view of the values recorded by a histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         *
+         * @return value count
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the mean of the recorded values.
+         *
+         * @return mean in nanoseconds, 0 if nothing was recorded
+         */
+        public long mean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * Returns the largest recorded value.
+         *
+         * @return maximum in nanoseconds
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given percentage of the recorded
+         * values fall.
+         *
+         * @param percentile percentile between 0 and 100
+         * @return latency in nanoseconds, 0 if nothing was recorded
+         */
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("count", count)
+                    .add("mean", mean())
+                    .add("p50", percentile(50))
+                    .add("p99", percentile(99))
+                    .add("p999", percentile(99.9))
+                    .add("max", max)
+                    .toString();
+        }
+    }
+}
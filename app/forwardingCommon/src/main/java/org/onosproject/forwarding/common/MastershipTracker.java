@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.forwarding.common;
+
+import org.onosproject.cluster.NodeId;
+import org.onosproject.mastership.MastershipEvent;
+import org.onosproject.mastership.MastershipListener;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceService;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Local view of the devices this instance is master of.
+ * <p>
+ * The set is seeded by asking the mastership service about every known
+ * device and then kept up to date by mastership events, so that the
+ * packet-in path tells whether it owns a device with a hash lookup instead
+ * of a call into the mastership store.
+ */
+public final class MastershipTracker {
+
+    private final MastershipService mastershipService;
+    private final NodeId localNodeId;
+    private final Consumer<DeviceId> lost;
+    private final MastershipListener listener = new InternalMastershipListener();
+    private final Set<DeviceId> mastered = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a tracker and starts listening to mastership changes.
+     *
+     * @param mastershipService mastership service
+     * @param deviceService     device service listing the devices to seed the set from
+     * @param localNodeId       identifier of the local instance
+     * @param lost              notified of every device whose mastership is lost
+     */
+    public MastershipTracker(MastershipService mastershipService, DeviceService deviceService,
+                             NodeId localNodeId, Consumer<DeviceId> lost) {
+        this.mastershipService = mastershipService;
+        this.localNodeId = localNodeId;
+        this.lost = lost;
+        /* Listen first so that no change slips in between */
+        mastershipService.addListener(listener);
+        for (Device device : deviceService.getDevices()) {
+            if (mastershipService.isLocalMaster(device.id())) {
+                mastered.add(device.id());
+            }
+        }
+    }
+
+    /**
+     * Returns whether this instance is master of a device.
+     *
+     * @param deviceId device identifier
+     * @return true if the local instance is master of the device
+     */
+    public boolean isMaster(DeviceId deviceId) {
+        return mastered.contains(deviceId);
+    }
+
+    /**
+     * Returns the number of devices this instance is master of.
+     *
+     * @return mastered device count
+     */
+    public int masteredCount() {
+        return mastered.size();
+    }
+
+    /**
+     * Stops listening to mastership changes.
+     */
+    public void close() {
+        mastershipService.removeListener(listener);
+        mastered.clear();
+    }
+
+    /**
+     * Adds and removes devices as their master changes.
+     */
+    private class InternalMastershipListener implements MastershipListener {
+        @Override
+        public void event(MastershipEvent event) {
+            DeviceId deviceId = event.subject();
+            switch (event.type()) {
+                case MASTER_CHANGED:
+                    if (localNodeId.equals(event.roleInfo().master())) {
+                        mastered.add(deviceId);
+                    } else if (mastered.remove(deviceId)) {
+                        lost.accept(deviceId);
+                    }
+                    break;
+                case SUSPENDED:
+                    if (mastered.remove(deviceId)) {
+                        lost.accept(deviceId);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.intent.HostToHostIntent;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentService;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.Key;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Resubmits the host-to-host intents that failed, once the topology has
+ * changed and may offer them a path again.
+ * <p>
+ * Failures are collected by intent key, so an intent failing repeatedly is
+ * resubmitted once. Topology events are coalesced: the first one opens a
+ * settle window at the end of which every failed intent still failed is
+ * handed to the {@link IntentSubmitter}, the pairs with the most packet-ins
+ * since their previous resubmission first. The submitter then spreads them
+ * over rate limited batches in that order, so the busiest pairs recover
+ * first and the intent framework is not asked to recompile everything at
+ * once.
+ */
+final class FailedIntentResubmitter {
+
+    private final Logger log = getLogger(getClass());
+
+    private final IntentService intentService;
+    private final IntentSubmitter intentSubmitter;
+    private final IntentCache intentCache;
+    private final ApplicationId appId;
+    private final ScheduledExecutorService executor;
+
+    private final Map<Key, IntentCache.Entry> failed = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile int settleDelay;
+
+    /**
+     * Creates a resubmitter.
+     *
+     * @param intentService   intent service
+     * @param intentSubmitter submission stage the intents are queued to
+     * @param intentCache     cache of the application intents
+     * @param appId           application whose intents are resubmitted
+     * @param executor        executor running the resubmission rounds
+     * @param settleDelay     milliseconds topology events are coalesced
+     */
+    FailedIntentResubmitter(IntentService intentService, IntentSubmitter intentSubmitter,
+                            IntentCache intentCache, ApplicationId appId,
+                            ScheduledExecutorService executor, int settleDelay) {
+        this.intentService = intentService;
+        this.intentSubmitter = intentSubmitter;
+        this.intentCache = intentCache;
+        this.appId = appId;
+        this.executor = executor;
+        this.settleDelay = settleDelay;
+    }
+
+    /**
+     * Sets how long topology events are coalesced.
+     *
+     * @param settleDelay milliseconds between the first topology event and
+     *                    the resubmission round
+     */
+    void configure(int settleDelay) {
+        this.settleDelay = Math.max(0, settleDelay);
+    }
+
+    /**
+     * Records the failures of the application intents handled by this
+     * instance and forgets the intents that recovered or were withdrawn.
+     *
+     * @param event intent event
+     */
+    void event(IntentEvent event) {
+        Intent intent = event.subject();
+        if (!appId.equals(intent.appId()) || !(intent instanceof HostToHostIntent)) {
+            return;
+        }
+        if (event.type() != IntentEvent.Type.FAILED) {
+            failed.remove(intent.key());
+            return;
+        }
+        HostToHostIntent hostIntent = (HostToHostIntent) intent;
+        IntentCache.Entry entry = intentCache.get(hostIntent.one().mac(), hostIntent.two().mac());
+        if (entry != null && intentService.isLocal(intent.key())) {
+            failed.put(intent.key(), entry);
+        }
+    }
+
+    /**
+     * Schedules a resubmission round at the end of the settle window, unless
+     * one is already pending.
+     */
+    void topologyChanged() {
+        if (!failed.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::resubmit, settleDelay, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forgets the failed intents.
+     */
+    void clear() {
+        failed.clear();
+    }
+
+    /* Queues the failed intents for submission, most active pairs first. */
+    private void resubmit() {
+        scheduled.set(false);
+        try {
+            List<Candidate> candidates = new ArrayList<>(failed.size());
+            failed.forEach((key, entry) -> {
+                if (failed.remove(key, entry) && entry.state() == IntentState.FAILED) {
+                    candidates.add(new Candidate(entry, entry.takePacketIns()));
+                }
+            });
+            if (candidates.isEmpty()) {
+                return;
+            }
+            candidates.sort(Comparator.comparingInt((Candidate c) -> c.packetIns).reversed());
+            int count = 0;
+            for (Candidate candidate : candidates) {
+                Intent intent = intentService.getIntent(candidate.entry.key());
+                if (intent == null) {
+                    continue;
+                }
+                candidate.entry.state(IntentState.INSTALL_REQ);
+                if (intentSubmitter.submit(intent)) {
+                    count++;
+                }
+            }
+            log.info("Resubmitting {} failed intents after a topology change", count);
+        } catch (RuntimeException e) {
+            log.warn("Unable to resubmit failed intents", e);
+        }
+    }
+
+    /* Failed intent with the packet-in count it is ranked by. */
+    private static final class Candidate {
+
+        private final IntentCache.Entry entry;
+        private final int packetIns;
+
+        private Candidate(IntentCache.Entry entry, int packetIns) {
+            this.entry = entry;
+            this.packetIns = packetIns;
+        }
+    }
+}
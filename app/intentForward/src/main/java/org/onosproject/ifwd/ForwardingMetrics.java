@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import com.google.common.collect.ImmutableMap;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packet-in counters of the intent forwarding application, kept per device,
+ * and a latency histogram of the forwarding decision.
+ * <p>
+ * Recording uses striped {@link LongAdder}s only: once a device has been
+ * seen, counting a packet neither locks nor allocates. Totals are summed
+ * over the devices when statistics are requested.
+ */
+final class ForwardingMetrics {
+
+    private final ConcurrentMap<DeviceId, Counters> devices = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Returns the counters of a device, creating them on first use.
+     *
+     * @param deviceId device identifier
+     * @return device counters
+     */
+    Counters device(DeviceId deviceId) {
+        Counters counters = devices.get(deviceId);
+        return counters != null ? counters : devices.computeIfAbsent(deviceId, id -> new Counters());
+    }
+
+    /**
+     * Records the time taken to handle one packet.
+     *
+     * @param counters counters of the device the packet came from
+     * @param nanos    processing time in nanoseconds
+     */
+    void processed(Counters counters, long nanos) {
+        counters.nanos.add(nanos);
+        latency.record(nanos);
+    }
+
+    /**
+     * Returns the statistics summed over all devices.
+     *
+     * @return forwarding statistics
+     */
+    ForwardingStatistics total() {
+        long[] sums = new long[Counters.FIELDS];
+        devices.values().forEach(counters -> counters.addTo(sums));
+        return statistics(sums, latency.snapshot());
+    }
+
+    /**
+     * Returns the statistics of each device.
+     *
+     * @return forwarding statistics by device
+     */
+    Map<DeviceId, ForwardingStatistics> perDevice() {
+        ImmutableMap.Builder<DeviceId, ForwardingStatistics> builder = ImmutableMap.builder();
+        devices.forEach((deviceId, counters) -> builder.put(deviceId, statistics(counters)));
+        return builder.build();
+    }
+
+    /**
+     * Returns the statistics of a device.
+     *
+     * @param deviceId device identifier
+     * @return forwarding statistics, null if no packet came from the device
+     */
+    ForwardingStatistics statistics(DeviceId deviceId) {
+        Counters counters = devices.get(deviceId);
+        return counters == null ? null : statistics(counters);
+    }
+
+    /**
+     * Clears all counters and the latency histogram.
+     */
+    void reset() {
+        devices.values().forEach(Counters::reset);
+        latency.reset();
+    }
+
+    private static ForwardingStatistics statistics(Counters counters) {
+        long[] sums = new long[Counters.FIELDS];
+        counters.addTo(sums);
+        return statistics(sums, null);
+    }
+
+    private static ForwardingStatistics statistics(long[] sums, LatencyHistogram.Snapshot latency) {
+        return new ForwardingStatistics(sums[0], sums[1], sums[2], sums[3], sums[4],
+                                        sums[5], sums[6], sums[7], sums[8], latency);
+    }
+
+    /**
+     * Packet-in counters of a single device.
+     */
+    static final class Counters {
+
+        private static final int FIELDS = 9;
+
+        final LongAdder packets = new LongAdder();
+        final LongAdder forwarded = new LongAdder();
+        final LongAdder flooded = new LongAdder();
+        final LongAdder blocked = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder cacheMisses = new LongAdder();
+        final LongAdder intentsRequested = new LongAdder();
+        final LongAdder notMaster = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        private void addTo(long[] sums) {
+            sums[0] += packets.sum();
+            sums[1] += forwarded.sum();
+            sums[2] += flooded.sum();
+            sums[3] += blocked.sum();
+            sums[4] += cacheHits.sum();
+            sums[5] += cacheMisses.sum();
+            sums[6] += intentsRequested.sum();
+            sums[7] += notMaster.sum();
+            sums[8] += nanos.sum();
+        }
+
+        private void reset() {
+            packets.reset();
+            forwarded.reset();
+            flooded.reset();
+            blocked.reset();
+            cacheHits.reset();
+            cacheMisses.reset();
+            intentsRequested.reset();
+            notMaster.reset();
+            nanos.reset();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.forwarding.common.LatencyHistogram;
+
+/**
+ * Point-in-time packet-in statistics of the intent forwarding application,
+ * for one device or summed over all of them.
+ */
+public final class ForwardingStatistics {
+
+    private final long packets;
+    private final long forwarded;
+    private final long flooded;
+    private final long blocked;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long intentsRequested;
+    private final long notMaster;
+    private final long processingNanos;
+    private final LatencyHistogram.Snapshot latency;
+
+    /**
+     * Creates forwarding statistics.
+     *
+     * @param packets          number of packet-ins received
+     * @param forwarded        number of packets sent to a known destination host
+     * @param flooded          number of packets flooded, their destination being unknown
+     * @param blocked          number of packets dropped instead of flooded, not
+     *                         being received on a broadcast point
+     * @param cacheHits        number of host pair lookups answered by the intent cache
+     * @param cacheMisses      number of host pair lookups that read the intent store
+     * @param intentsRequested number of host pair intents handed to the submitter
+     * @param notMaster        number of packet-ins skipped, the device being
+     *                         mastered by another instance
+     * @param processingNanos  total time spent handling packets, in nanoseconds
+     * @param latency          processing time distribution, null if not recorded
+     */
+    public ForwardingStatistics(long packets, long forwarded, long flooded, long blocked,
+                                long cacheHits, long cacheMisses, long intentsRequested,
+                                long notMaster, long processingNanos,
+                                LatencyHistogram.Snapshot latency) {
+        this.packets = packets;
+        this.forwarded = forwarded;
+        this.flooded = flooded;
+        this.blocked = blocked;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.intentsRequested = intentsRequested;
+        this.notMaster = notMaster;
+        this.processingNanos = processingNanos;
+        this.latency = latency;
+    }
+
+    public long packets() {
+        return packets;
+    }
+
+    public long forwarded() {
+        return forwarded;
+    }
+
+    public long flooded() {
+        return flooded;
+    }
+
+    public long blocked() {
+        return blocked;
+    }
+
+    public long cacheHits() {
+        return cacheHits;
+    }
+
+    public long cacheMisses() {
+        return cacheMisses;
+    }
+
+    public long intentsRequested() {
+        return intentsRequested;
+    }
+
+    public long notMaster() {
+        return notMaster;
+    }
+
+    public long processingNanos() {
+        return processingNanos;
+    }
+
+    public LatencyHistogram.Snapshot latency() {
+        return latency;
+    }
+
+    /**
+     * Returns the share of host pair lookups answered by the intent cache.
+     *
+     * @return hit rate between 0 and 1, 0 if no lookup was made
+     */
+    public double cacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    /**
+     * Returns the share of packet-ins that were flooded or blocked.
+     *
+     * @return flood ratio between 0 and 1, 0 if no packet was received
+     */
+    public double floodRatio() {
+        return packets == 0 ? 0 : (double) (flooded + blocked) / packets;
+    }
+
+    /**
+     * Returns the mean time spent handling a packet.
+     *
+     * @return mean in nanoseconds, 0 if no packet was handled
+     */
+    public long meanProcessingNanos() {
+        long handled = forwarded + flooded + blocked;
+        return handled == 0 ? 0 : processingNanos / handled;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("packets", packets)
+                .add("forwarded", forwarded)
+                .add("flooded", flooded)
+                .add("blocked", blocked)
+                .add("cacheHits", cacheHits)
+                .add("cacheMisses", cacheMisses)
+                .add("intentsRequested", intentsRequested)
+                .add("notMaster", notMaster)
+                .add("processingNanos", processingNanos)
+                .add("latency", latency)
+                .omitNullValues()
+                .toString();
+    }
+}
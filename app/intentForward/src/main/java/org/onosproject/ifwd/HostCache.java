@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.host.HostService;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Local cache of the hosts packets are forwarded to.
+ * <p>
+ * Hosts are looked up in the host service on first use and cached by MAC
+ * address, together with their identifier and the treatment sending a
+ * packet out of their location, so that forwarding to a known host needs
+ * neither a host store read nor any allocation. Entries are dropped when a
+ * host event reports a change of the host; a lookup racing with such an
+ * event does not cache its possibly outdated result.
+ * <p>
+ * Entries live in an open addressing table of primitive MAC addresses.
+ * Lookups are optimistic reads that only fall back to the read lock when a
+ * writer got in the way.
+ */
+final class HostCache {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final HostService hostService;
+    private final StampedLock lock = new StampedLock();
+
+    private Slots slots = new Slots(INITIAL_CAPACITY);
+    private int size;
+
+    /* Number of invalidations, so that lookups racing with one are not cached. */
+    private volatile long generation;
+
+    /**
+     * Creates an empty cache in front of the host service.
+     *
+     * @param hostService host service
+     */
+    HostCache(HostService hostService) {
+        this.hostService = hostService;
+    }
+
+    /**
+     * Returns the host with the given MAC address and no VLAN, if known.
+     *
+     * @param key MAC address of the host, as a long
+     * @return cache entry of the host, null if the host is unknown
+     */
+    Entry get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        Entry entry = slots.find(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = slots.find(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return entry != null ? entry : load(key);
+    }
+
+    /**
+     * Drops the entry of a host, typically because it moved or left.
+     *
+     * @param mac MAC address of the host
+     */
+    void invalidate(MacAddress mac) {
+        long key = mac.toLong();
+        long stamp = lock.writeLock();
+        try {
+            generation++;
+            int i = slots.indexOf(key);
+            if (i >= 0) {
+                slots.delete(i);
+                size--;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            generation++;
+            slots = new Slots(INITIAL_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of hosts cached.
+     *
+     * @return number of entries
+     */
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /* Reads a host from the host service and caches it, unless invalidated meanwhile. */
+    private Entry load(long key) {
+        long loadedAt = generation;
+        Host host = hostService.getHost(HostId.hostId(MacAddress.valueOf(key)));
+        if (host == null) {
+            return null;
+        }
+        Entry entry = new Entry(host);
+        long stamp = lock.writeLock();
+        try {
+            if (generation == loadedAt && slots.indexOf(key) < 0) {
+                if ((size + 1) * 2 > slots.entries.length) {
+                    slots = slots.resize(slots.entries.length * 2);
+                }
+                slots.insert(key, entry);
+                size++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return entry;
+    }
+
+    private static int hash(long mac) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /* Slot arrays of the table, replaced as a whole on resize; a null entry marks a free slot. */
+    private static final class Slots {
+
+        final long[] macs;
+        final Entry[] entries;
+
+        Slots(int capacity) {
+            macs = new long[capacity];
+            entries = new Entry[capacity];
+        }
+
+        /* Probe used by the lock-free readers, tolerating concurrent changes. */
+        Entry find(long key) {
+            int mask = entries.length - 1;
+            for (int i = hash(key) & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+                Entry entry = entries[i];
+                if (entry == null) {
+                    return null;
+                }
+                if (macs[i] == key) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        int indexOf(long key) {
+            int mask = entries.length - 1;
+            for (int i = hash(key) & mask; entries[i] != null; i = (i + 1) & mask) {
+                if (macs[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void insert(long key, Entry entry) {
+            int mask = entries.length - 1;
+            int i = hash(key) & mask;
+            while (entries[i] != null) {
+                i = (i + 1) & mask;
+            }
+            macs[i] = key;
+            entries[i] = entry;
+        }
+
+        /* Backward shift deletion, keeping every probe sequence free of holes. */
+        void delete(int slot) {
+            int mask = entries.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; entries[i] != null; i = (i + 1) & mask) {
+                int home = hash(macs[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    macs[hole] = macs[i];
+                    entries[hole] = entries[i];
+                    hole = i;
+                }
+            }
+            entries[hole] = null;
+        }
+
+        Slots resize(int capacity) {
+            Slots resized = new Slots(capacity);
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    resized.insert(macs[i], entries[i]);
+                }
+            }
+            return resized;
+        }
+    }
+
+    /**
+     * Cached host with the identifier and output treatment derived from it.
+     */
+    static final class Entry {
+
+        private final Host host;
+        private final TrafficTreatment treatment;
+
+        private Entry(Host host) {
+            this.host = host;
+            this.treatment = DefaultTrafficTreatment.builder()
+                    .setOutput(host.location().port()).build();
+        }
+
+        /**
+         * Returns the host.
+         *
+         * @return host
+         */
+        Host host() {
+            return host;
+        }
+
+        /**
+         * Returns the host identifier.
+         *
+         * @return host identifier
+         */
+        HostId id() {
+            return host.id();
+        }
+
+        /**
+         * Returns the device the host is attached to.
+         *
+         * @return device identifier
+         */
+        DeviceId deviceId() {
+            return host.location().deviceId();
+        }
+
+        /**
+         * Returns the treatment sending a packet out of the host location.
+         *
+         * @return output treatment
+         */
+        TrafficTreatment treatment() {
+            return treatment;
+        }
+    }
+}
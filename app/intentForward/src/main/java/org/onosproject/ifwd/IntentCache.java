@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.HostId;
+import org.onosproject.net.intent.HostToHostIntent;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.Key;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Local view of the host-to-host intents submitted by the application.
+ * <p>
+ * Entries are indexed by the unordered pair of host MAC addresses and hold
+ * the intent key, built once, together with the last intent state seen and
+ * the last time the pair was known to exchange traffic.
+ * The state is kept fresh from intent events, so that packets of a pair
+ * whose intent is already in place are resolved without building the key
+ * or reading the intent store.
+ */
+final class IntentCache {
+
+    private final ConcurrentMap<HostPair, Entry> entries = new ConcurrentHashMap<>();
+    private final ApplicationId appId;
+
+    /**
+     * Creates an empty cache for the intents of the given application.
+     *
+     * @param appId application whose intents are tracked
+     */
+    IntentCache(ApplicationId appId) {
+        this.appId = appId;
+    }
+
+    /**
+     * Returns the entry of the given host pair, if known.
+     *
+     * @param src MAC address of one host
+     * @param dst MAC address of the other host
+     * @return cache entry or null
+     */
+    Entry get(MacAddress src, MacAddress dst) {
+        return entries.get(HostPair.of(src.toLong(), dst.toLong()));
+    }
+
+    /**
+     * Returns the entry of the given host pair, creating it in the given
+     * state if absent.
+     *
+     * @param src   MAC address of one host, as a long
+     * @param dst   MAC address of the other host, as a long
+     * @param state state of a newly created entry
+     * @return cache entry
+     */
+    Entry getOrCreate(long src, long dst, IntentState state) {
+        HostPair pair = HostPair.of(src, dst);
+        return entries.computeIfAbsent(pair, p -> new Entry(p.key(appId), state));
+    }
+
+    /**
+     * Returns a live view of the entries, for sweeps.
+     *
+     * @return cache entries
+     */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Applies an intent event to the cache.
+     *
+     * @param event intent event
+     */
+    void update(IntentEvent event) {
+        Intent intent = event.subject();
+        if (!appId.equals(intent.appId()) || !(intent instanceof HostToHostIntent)) {
+            return;
+        }
+        HostToHostIntent hostIntent = (HostToHostIntent) intent;
+        HostPair pair = HostPair.of(hostIntent.one(), hostIntent.two());
+        IntentState state = state(event.type());
+        if (state == null) {
+            entries.remove(pair);
+        } else {
+            entries.computeIfAbsent(pair, p -> new Entry(intent.key(), state)).state = state;
+        }
+    }
+
+    /**
+     * Forgets the submission of an intent that never reached the intent
+     * service, so that the next packet of its host pair submits it again.
+     * Entries whose state moved on meanwhile are left alone.
+     *
+     * @param intent intent dropped before submission
+     */
+    void dropped(Intent intent) {
+        if (!(intent instanceof HostToHostIntent)) {
+            return;
+        }
+        HostToHostIntent hostIntent = (HostToHostIntent) intent;
+        Entry entry = entries.get(HostPair.of(hostIntent.one(), hostIntent.two()));
+        if (entry != null) {
+            Entry.STATE.compareAndSet(entry, IntentState.INSTALL_REQ, null);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of host pairs tracked.
+     *
+     * @return number of entries
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /* Maps an intent event to the intent state it reports, null once purged. */
+    private static IntentState state(IntentEvent.Type type) {
+        switch (type) {
+            case INSTALL_REQ:
+                return IntentState.INSTALL_REQ;
+            case INSTALLED:
+                return IntentState.INSTALLED;
+            case FAILED:
+                return IntentState.FAILED;
+            case WITHDRAW_REQ:
+                return IntentState.WITHDRAW_REQ;
+            case WITHDRAWN:
+                return IntentState.WITHDRAWN;
+            case CORRUPT:
+                return IntentState.CORRUPT;
+            case PURGED:
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Intent key, last known state and last use of a host pair.
+     */
+    static final class Entry {
+
+        private static final AtomicIntegerFieldUpdater<Entry> PACKET_INS =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "packetIns");
+        private static final AtomicLongFieldUpdater<Entry> DROP_UNTIL =
+                AtomicLongFieldUpdater.newUpdater(Entry.class, "dropUntil");
+        private static final AtomicReferenceFieldUpdater<Entry, IntentState> STATE =
+                AtomicReferenceFieldUpdater.newUpdater(Entry.class, IntentState.class, "state");
+
+        private final Key key;
+        private volatile IntentState state;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile int packetIns;
+        private volatile long dropUntil;
+
+        private Entry(Key key, IntentState state) {
+            this.key = key;
+            this.state = state;
+        }
+
+        /**
+         * Returns the key of the host pair intent.
+         *
+         * @return intent key
+         */
+        Key key() {
+            return key;
+        }
+
+        /**
+         * Returns the last known state of the host pair intent.
+         *
+         * @return intent state
+         */
+        IntentState state() {
+            return state;
+        }
+
+        /**
+         * Records a state change initiated locally, ahead of its event.
+         *
+         * @param state new intent state
+         */
+        void state(IntentState state) {
+            this.state = state;
+        }
+
+        /**
+         * Returns the last time the host pair was seen exchanging traffic.
+         *
+         * @return timestamp in milliseconds since the epoch
+         */
+        long lastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Records that the host pair exchanged traffic.
+         *
+         * @param now timestamp in milliseconds since the epoch
+         */
+        void touch(long now) {
+            if (lastUsed < now) {
+                lastUsed = now;
+            }
+        }
+
+        /**
+         * Records a packet-in of the host pair.
+         *
+         * @param now timestamp in milliseconds since the epoch
+         */
+        void packetIn(long now) {
+            touch(now);
+            PACKET_INS.incrementAndGet(this);
+        }
+
+        /**
+         * Returns the recent packet-in count and starts a new count.
+         *
+         * @return recent packet-in count
+         */
+        int takePacketIns() {
+            return PACKET_INS.getAndSet(this, 0);
+        }
+
+        /**
+         * Claims the installation of the drop rules of the host pair, which
+         * only one caller gets until the rules have timed out.
+         *
+         * @param now     timestamp in milliseconds since the epoch
+         * @param timeout lifetime of the drop rules in milliseconds
+         * @return true if the caller should install the drop rules
+         */
+        boolean claimDrop(long now, long timeout) {
+            long until = dropUntil;
+            return now >= until && DROP_UNTIL.compareAndSet(this, until, now + timeout);
+        }
+    }
+
+    /* Unordered pair of host MAC addresses, the lower one first. */
+    private static final class HostPair {
+
+        private final long low;
+        private final long high;
+
+        private HostPair(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        static HostPair of(long one, long two) {
+            return one < two ? new HostPair(one, two) : new HostPair(two, one);
+        }
+
+        static HostPair of(HostId one, HostId two) {
+            return of(one.mac().toLong(), two.mac().toLong());
+        }
+
+        /*
+         * Same key as built from the host identifiers: MAC addresses are
+         * printed at fixed width, so their text sorts like their value.
+         */
+        Key key(ApplicationId appId) {
+            return Key.of(HostId.hostId(MacAddress.valueOf(low)).toString()
+                                  + HostId.hostId(MacAddress.valueOf(high)).toString(), appId);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = (low * 31 + high) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof HostPair)) {
+                return false;
+            }
+            HostPair that = (HostPair) obj;
+            return low == that.low && high == that.high;
+        }
+    }
+}
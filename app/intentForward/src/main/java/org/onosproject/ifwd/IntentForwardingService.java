@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onosproject.net.DeviceId;
+
+import java.util.Map;
+
+/**
+ * Service exposing the run-time statistics of the intent forwarding
+ * application.
+ */
+public interface IntentForwardingService {
+
+    /**
+     * Returns the statistics of the intent submission stage.
+     *
+     * @return submission statistics
+     */
+    IntentSubmissionStatistics getIntentSubmissionStatistics();
+
+    /**
+     * Returns the statistics of the idle intent reaper.
+     *
+     * @return reaper statistics
+     */
+    IntentReaperStatistics getIntentReaperStatistics();
+
+    /**
+     * Returns the packet-in statistics summed over all devices, with the
+     * processing time distribution.
+     *
+     * @return forwarding statistics
+     */
+    ForwardingStatistics getForwardingStatistics();
+
+    /**
+     * Returns the packet-in statistics of each device a packet came from.
+     *
+     * @return forwarding statistics by device
+     */
+    Map<DeviceId, ForwardingStatistics> getDeviceForwardingStatistics();
+
+    /**
+     * Returns the packet-in statistics of a device.
+     *
+     * @param deviceId device identifier
+     * @return forwarding statistics, null if no packet came from the device
+     */
+    ForwardingStatistics getForwardingStatistics(DeviceId deviceId);
+
+    /**
+     * Clears the packet-in statistics.
+     */
+    void resetForwardingStatistics();
+}
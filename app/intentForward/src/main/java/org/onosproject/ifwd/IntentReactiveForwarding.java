@@ -18,14 +18,24 @@ package org.onosproject.ifwd;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.Service;
 import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cluster.ClusterService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
-import org.onosproject.net.Host;
+import org.onosproject.forwarding.common.EthernetHeader;
+import org.onosproject.forwarding.common.MastershipTracker;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.DeviceId;
 import org.onosproject.net.HostId;
 import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
 import org.onosproject.net.flow.FlowRuleService;
@@ -34,11 +44,15 @@ import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flowobjective.DefaultForwardingObjective;
 import org.onosproject.net.flowobjective.FlowObjectiveService;
 import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
 import org.onosproject.net.host.HostService;
 import org.onosproject.net.intent.HostToHostIntent;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentListener;
 import org.onosproject.net.intent.IntentService;
 import org.onosproject.net.intent.IntentState;
-import org.onosproject.net.intent.Key;
 import org.onosproject.net.packet.DefaultOutboundPacket;
 import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.OutboundPacket;
@@ -46,24 +60,48 @@ import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.PacketPriority;
 import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketService;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.net.topology.TopologyListener;
 import org.onosproject.net.topology.TopologyService;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
+import java.util.Dictionary;
 import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.onlab.util.Tools.getIntegerProperty;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * WORK-IN-PROGRESS: Sample reactive forwarding application using intent framework.
  */
 @Component(immediate = true)
-public class IntentReactiveForwarding {
+@Service
+public class IntentReactiveForwarding implements IntentForwardingService {
 
     private final Logger log = getLogger(getClass());
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService cfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ClusterService clusterService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MastershipService mastershipService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DeviceService deviceService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected TopologyService topologyService;
 
@@ -82,8 +120,58 @@ public class IntentReactiveForwarding {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected FlowObjectiveService flowObjectiveService;
 
+    private static final int DEFAULT_INTENT_BATCH_SIZE = 100;
+    private static final int DEFAULT_INTENT_BATCH_DELAY = 50;
+    private static final int DEFAULT_INTENT_RATE_LIMIT = 1000;
+    private static final int DEFAULT_INTENT_RATE_BURST = 200;
+    private static final int DEFAULT_INTENT_IDLE_TIMEOUT = 300;
+    private static final int DEFAULT_INTENT_REAP_RATE = 100;
+    private static final int DEFAULT_INTENT_RETRY_DELAY = 200;
+
+    @Property(name = "intentBatchSize", intValue = DEFAULT_INTENT_BATCH_SIZE,
+            label = "Maximum number of intents submitted at once; default is 100")
+    private int intentBatchSize = DEFAULT_INTENT_BATCH_SIZE;
+
+    @Property(name = "intentBatchDelay", intValue = DEFAULT_INTENT_BATCH_DELAY,
+            label = "Milliseconds new intents are held to be submitted together; default is 50")
+    private int intentBatchDelay = DEFAULT_INTENT_BATCH_DELAY;
+
+    @Property(name = "intentRateLimit", intValue = DEFAULT_INTENT_RATE_LIMIT,
+            label = "Sustained number of intents submitted per second, 0 for no limit; default is 1000")
+    private int intentRateLimit = DEFAULT_INTENT_RATE_LIMIT;
+
+    @Property(name = "intentRateBurst", intValue = DEFAULT_INTENT_RATE_BURST,
+            label = "Number of intents that may be submitted at once after a quiet period; default is 200")
+    private int intentRateBurst = DEFAULT_INTENT_RATE_BURST;
+
+    @Property(name = "intentIdleTimeout", intValue = DEFAULT_INTENT_IDLE_TIMEOUT,
+            label = "Seconds a host pair may stay idle before its intent is withdrawn and purged, "
+                    + "0 to keep intents forever; default is 300")
+    private int intentIdleTimeout = DEFAULT_INTENT_IDLE_TIMEOUT;
+
+    @Property(name = "intentReapRate", intValue = DEFAULT_INTENT_REAP_RATE,
+            label = "Maximum number of idle intents withdrawn per second; default is 100")
+    private int intentReapRate = DEFAULT_INTENT_REAP_RATE;
+
+    @Property(name = "intentRetryDelay", intValue = DEFAULT_INTENT_RETRY_DELAY,
+            label = "Milliseconds topology changes are coalesced before failed intents are "
+                    + "resubmitted; default is 200")
+    private int intentRetryDelay = DEFAULT_INTENT_RETRY_DELAY;
+
     private ReactivePacketProcessor processor = new ReactivePacketProcessor();
+    private final IntentListener intentListener = new InternalIntentListener();
+    private final TopologyListener topologyListener = new InternalTopologyListener();
+    private final HostListener hostListener = new InternalHostListener();
     private ApplicationId appId;
+    private IntentCache intentCache;
+    private HostCache hostCache;
+    private ScheduledExecutorService submitExecutor;
+    private IntentSubmitter intentSubmitter;
+    private ScheduledExecutorService reapExecutor;
+    private IntentReaper intentReaper;
+    private FailedIntentResubmitter failedIntents;
+    private MastershipTracker mastership;
+    private final ForwardingMetrics metrics = new ForwardingMetrics();
 
     private static final int DROP_RULE_TIMEOUT = 300;
 
@@ -92,9 +180,37 @@ public class IntentReactiveForwarding {
                                                                             IntentState.WITHDRAW_REQ);
 
     @Activate
-    public void activate() {
+    public void activate(ComponentContext context) {
         /* Register Intent Forward application in ONOS project */
         appId = coreService.registerApplication("org.onosproject.ifwd");
+        cfgService.registerProperties(getClass());
+
+        /* Track the state of our intents locally, and reap those left idle */
+        intentCache = new IntentCache(appId);
+
+        /* Submit new intents in rate limited batches, forgetting those that never get through */
+        submitExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/ifwd", "intent-submit", log));
+        intentSubmitter = new IntentSubmitter(intentService, submitExecutor, intentBatchSize,
+                                              intentBatchDelay, intentRateLimit, intentRateBurst,
+                                              intentCache::dropped);
+
+        reapExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/ifwd", "intent-reaper", log));
+        intentReaper = new IntentReaper(intentService, flowRuleService, intentCache, appId, reapExecutor);
+
+        /* Resubmit failed intents, busiest pairs first, once the topology changes */
+        failedIntents = new FailedIntentResubmitter(intentService, intentSubmitter, intentCache, appId,
+                                                    submitExecutor, intentRetryDelay);
+        intentService.addListener(intentListener);
+        topologyService.addListener(topologyListener);
+        readComponentConfiguration(context);
+
+        /* Resolve destination hosts locally, dropping them as they change */
+        hostCache = new HostCache(hostService);
+        hostService.addListener(hostListener);
+
+        /* Only handle the packets of devices mastered by this instance */
+        mastership = new MastershipTracker(mastershipService, deviceService,
+                                           clusterService.getLocalNode().id(), deviceId -> { });
 
         /* Add specified packet processor to Packet Service */
         packetService.addProcessor(processor, PacketProcessor.director(2));
@@ -112,10 +228,93 @@ public class IntentReactiveForwarding {
         /* Remove packet processor from packet service */
         packetService.removeProcessor(processor);
         processor = null;
+        mastership.close();
+        hostService.removeListener(hostListener);
+        hostCache.clear();
+        topologyService.removeListener(topologyListener);
+        intentService.removeListener(intentListener);
+        failedIntents.clear();
+        intentReaper.close();
+        reapExecutor.shutdownNow();
+        submitExecutor.shutdownNow();
+        int discarded = intentSubmitter.clear();
+        if (discarded > 0) {
+            log.info("Discarded {} intents waiting for submission", discarded);
+        }
+        intentCache.clear();
+        cfgService.unregisterProperties(getClass(), false);
         log.info("Stopped");
     }
 
-    
+    @Modified
+    public void modified(ComponentContext context) {
+        readComponentConfiguration(context);
+    }
+
+    /**
+     * Extracts properties from the component configuration context and
+     * applies them to the intent submission, resubmission and reaping stages.
+     *
+     * @param context the component context
+     */
+    private void readComponentConfiguration(ComponentContext context) {
+        Dictionary<?, ?> properties = context != null ? context.getProperties() : null;
+        if (properties != null) {
+            intentBatchSize = Math.max(1, getIntegerProperty(properties, "intentBatchSize",
+                                                             DEFAULT_INTENT_BATCH_SIZE));
+            intentBatchDelay = Math.max(0, getIntegerProperty(properties, "intentBatchDelay",
+                                                              DEFAULT_INTENT_BATCH_DELAY));
+            intentRateLimit = Math.max(0, getIntegerProperty(properties, "intentRateLimit",
+                                                             DEFAULT_INTENT_RATE_LIMIT));
+            intentRateBurst = Math.max(1, getIntegerProperty(properties, "intentRateBurst",
+                                                             DEFAULT_INTENT_RATE_BURST));
+            intentIdleTimeout = Math.max(0, getIntegerProperty(properties, "intentIdleTimeout",
+                                                               DEFAULT_INTENT_IDLE_TIMEOUT));
+            intentReapRate = Math.max(1, getIntegerProperty(properties, "intentReapRate",
+                                                            DEFAULT_INTENT_REAP_RATE));
+            intentRetryDelay = Math.max(0, getIntegerProperty(properties, "intentRetryDelay",
+                                                              DEFAULT_INTENT_RETRY_DELAY));
+        }
+        log.info("Configured. Intents are submitted by {} after {}ms, at most {}/s with bursts of {}",
+                 intentBatchSize, intentBatchDelay, intentRateLimit, intentRateBurst);
+        intentSubmitter.configure(intentBatchSize, intentBatchDelay, intentRateLimit, intentRateBurst);
+        failedIntents.configure(intentRetryDelay);
+        if (intentIdleTimeout > 0) {
+            log.info("Intents idle for {}s are withdrawn, at most {}/s", intentIdleTimeout, intentReapRate);
+        }
+        intentReaper.configure(intentIdleTimeout, intentReapRate);
+    }
+
+    @Override
+    public IntentSubmissionStatistics getIntentSubmissionStatistics() {
+        return intentSubmitter.statistics();
+    }
+
+    @Override
+    public IntentReaperStatistics getIntentReaperStatistics() {
+        return intentReaper.statistics();
+    }
+
+    @Override
+    public ForwardingStatistics getForwardingStatistics() {
+        return metrics.total();
+    }
+
+    @Override
+    public Map<DeviceId, ForwardingStatistics> getDeviceForwardingStatistics() {
+        return metrics.perDevice();
+    }
+
+    @Override
+    public ForwardingStatistics getForwardingStatistics(DeviceId deviceId) {
+        return metrics.statistics(deviceId);
+    }
+
+    @Override
+    public void resetForwardingStatistics() {
+        metrics.reset();
+    }
+
     /**
      * Packet processor responsible for forwarding packets along their paths.
      */
@@ -136,18 +335,29 @@ public class IntentReactiveForwarding {
             }
 
             InboundPacket pkt;
-            Ethernet ethPkt;
 
             /* Fetch incoming packet */
             pkt = context.inPacket();
+            long start = System.nanoTime();
+            DeviceId deviceId = pkt.receivedFrom().deviceId();
+            ForwardingMetrics.Counters counters = metrics.device(deviceId);
+
+            /* Leave the packets of devices mastered elsewhere to their master */
+            if (!mastership.isMaster(deviceId)) {
+                counters.notMaster.increment();
+                return;
+            }
+            counters.packets.increment();
 
             /** 
              * [STEP 1] Extract Ethernet header
-             * more specifically, we need the source and destination IP address
+             * more specifically, we need the source and destination MAC address,
+             * read straight from the frame rather than from its parsed form
              */
-            ethPkt = pkt.parsed();
-            HostId srcId = HostId.hostId(ethPkt.getSourceMAC());
-            HostId dstId = HostId.hostId(ethPkt.getDestinationMAC());
+            ByteBuffer frame = pkt.unparsed();
+            if (!EthernetHeader.isComplete(frame)) {
+                return;
+            }
 
             /** 
              * [STEP 2] Do we know where the destination host is and which host should we hand this packet to?
@@ -155,13 +365,15 @@ public class IntentReactiveForwarding {
              * Otherwise, just forward it to the next hop and processing is done.
              * * HINT: use setUpConnectivity() to install flow rule
              */
-            Host destination = hostService.getHost(dstId);
+            HostCache.Entry destination = hostCache.get(EthernetHeader.dstMac(frame));
             if (destination != null) {
-                setUpConnectivity(context,srcId,dstId);
+                setUpConnectivity(context, EthernetHeader.srcMac(frame), destination, counters);
                 forwardPacketToDst(context,destination);
+                counters.forwarded.increment();
             } else {
-                flood(context);
+                flood(context, counters);
             }
+            metrics.processed(counters, System.nanoTime() - start);
         }
     }
 
@@ -180,84 +392,144 @@ public class IntentReactiveForwarding {
      * Flood the incoming packet to neighbors.
      * 
      * @param pc PacketContext object containing packet info
+     * @param counters counters of the device the packet came from
      */
-    private void flood(PacketContext context) {
+    private void flood(PacketContext context, ForwardingMetrics.Counters counters) {
         if (topologyService.isBroadcastPoint(topologyService.currentTopology(),
                                              context.inPacket().receivedFrom())) {
             packetOut(context, PortNumber.FLOOD);
+            counters.flooded.increment();
         } else {
             context.block();
+            counters.blocked.increment();
         }
     }
 
     /**
      * Forward the incoming packet to specified destination.
      * 
+     * A destination attached to the device the packet came from is reached
+     * through the packet context, which lets the switch release the frame
+     * it buffered; any other is sent the frame received, without a copy.
+     *
      * @param pc PacketContext object containing packet info
      * @param dst the next hop of this packet
      */
-    private void forwardPacketToDst(PacketContext context, Host dst) {
-        /* Build and send out packet to destination host */
-        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-            .setOutput(dst.location().port()).build();
-        OutboundPacket pkt = new DefaultOutboundPacket(dst.location().deviceId(),
-            treatment,context.inPacket().unparsed());
+    private void forwardPacketToDst(PacketContext context, HostCache.Entry dst) {
+        if (dst.deviceId().equals(context.inPacket().receivedFrom().deviceId())) {
+            packetOut(context, dst.host().location().port());
+            return;
+        }
+        /* Send out packet to destination host, with the treatment built once per host */
+        OutboundPacket pkt = new DefaultOutboundPacket(dst.deviceId(),
+            dst.treatment(), context.inPacket().unparsed());
         packetService.emit(pkt);
     }
 
     /* Install a rule forwarding the packet to the specified port. */
-    private void setUpConnectivity(PacketContext context, HostId srcId, HostId dstId) {
-        TrafficSelector selector = DefaultTrafficSelector.emptySelector();
-        TrafficTreatment treatment = DefaultTrafficTreatment.emptyTreatment();
-
-        Key key;
-        if (srcId.toString().compareTo(dstId.toString()) < 0) {
-            key = Key.of(srcId.toString() + dstId.toString(), appId);
+    private void setUpConnectivity(PacketContext context, long srcMac, HostCache.Entry dst,
+                                   ForwardingMetrics.Counters counters) {
+        HostId dstId = dst.id();
+        /*
+         * Look the host pair up locally first. The cache holds the intent key
+         * and is kept up to date by intent events, so the intent store is
+         * only read the first time a pair is seen.
+         */
+        IntentCache.Entry entry = intentCache.getOrCreate(srcMac, dstId.mac().toLong(), null);
+        long now = System.currentTimeMillis();
+        entry.packetIn(now);
+        IntentState state = entry.state();
+        if (state != null) {
+            counters.cacheHits.increment();
         } else {
-            key = Key.of(dstId.toString() + srcId.toString(), appId);
+            counters.cacheMisses.increment();
+            state = intentService.getIntentState(entry.key());
+            if (state != null) {
+                entry.state(state);
+            }
         }
 
-        HostToHostIntent intent = (HostToHostIntent) intentService.getIntent(key);
-        if (intent != null) {
-            if (WITHDRAWN_STATES.contains(intentService.getIntentState(key))) {
-                /* This intent has been withdrawn, just insert it once more! */
-
-                /* Build host-to-host intent and submit to Intent Service */
-                HostToHostIntent hostIntent;
-                hostIntent = HostToHostIntent.builder()
-                    .appId(appId).key(key).one(srcId).two(dstId)
-                    .selector(selector).treatment(treatment).build();
-                intentService.submit(hostIntent);
-            } else if (intentService.getIntentState(key) == IntentState.FAILED) {
-                /* Special case: handle failed intent */
-                TrafficSelector objectiveSelector = DefaultTrafficSelector.builder()
-                        .matchEthSrc(srcId.mac()).matchEthDst(dstId.mac()).build();
-                TrafficTreatment dropTreatment = DefaultTrafficTreatment.builder()
-                        .drop().build();
-                ForwardingObjective objective = DefaultForwardingObjective.builder()
-                        .withSelector(objectiveSelector)
-                        .withTreatment(dropTreatment)
-                        .fromApp(appId)
-                        .withPriority(intent.priority() - 1)
-                        .makeTemporary(DROP_RULE_TIMEOUT)
-                        .withFlag(ForwardingObjective.Flag.VERSATILE)
-                        .add();
-                flowObjectiveService.forward(context.outPacket().sendThrough(), objective);
-            }
-        } else if (intent == null) {
-            /** 
-             * This intent has never been inserted before, 
+        if (state == null || WITHDRAWN_STATES.contains(state)) {
+            /**
+             * This intent has never been inserted before or has been withdrawn,
              * we should submit it to Intent Service.
              */
+            TrafficSelector selector = DefaultTrafficSelector.emptySelector();
+            TrafficTreatment treatment = DefaultTrafficTreatment.emptyTreatment();
 
             /* Build host-to-host intent and submit to Intent Service */
             HostToHostIntent hostIntent;
             hostIntent = HostToHostIntent.builder()
-                    .appId(appId).key(key).one(srcId).two(dstId)
+                    .appId(appId).key(entry.key()).one(HostId.hostId(MacAddress.valueOf(srcMac))).two(dstId)
                     .selector(selector).treatment(treatment).build();
-            intentService.submit(hostIntent);
+            entry.state(IntentState.INSTALL_REQ);
+            intentSubmitter.submit(hostIntent);
+            counters.intentsRequested.increment();
+        } else if (state == IntentState.FAILED
+                && entry.claimDrop(now, SECONDS.toMillis(DROP_RULE_TIMEOUT))) {
+            /*
+             * Special case: handle failed intent. The traffic of the pair is
+             * dropped in both directions, at the edge of each host, until the
+             * drop rules time out; later packets of the pair need no objective.
+             */
+            Intent intent = intentService.getIntent(entry.key());
+            if (intent == null) {
+                return;
+            }
+            flowObjectiveService.forward(context.outPacket().sendThrough(),
+                                         dropObjective(MacAddress.valueOf(srcMac), dstId.mac(), intent.priority() - 1));
+            flowObjectiveService.forward(dst.deviceId(),
+                                         dropObjective(dstId.mac(), MacAddress.valueOf(srcMac), intent.priority() - 1));
         }
+    }
+
+    /* Builds a temporary objective dropping the frames from one host to another. */
+    private ForwardingObjective dropObjective(MacAddress src, MacAddress dst, int priority) {
+        TrafficSelector objectiveSelector = DefaultTrafficSelector.builder()
+                .matchEthSrc(src).matchEthDst(dst).build();
+        TrafficTreatment dropTreatment = DefaultTrafficTreatment.builder()
+                .drop().build();
+        return DefaultForwardingObjective.builder()
+                .withSelector(objectiveSelector)
+                .withTreatment(dropTreatment)
+                .fromApp(appId)
+                .withPriority(priority)
+                .makeTemporary(DROP_RULE_TIMEOUT)
+                .withFlag(ForwardingObjective.Flag.VERSATILE)
+                .add();
+    }
+
+    /**
+     * Keeps the intent cache in step with the intent framework, lets the
+     * reaper purge the intents it withdrew and collects the failed intents.
+     */
+    private class InternalIntentListener implements IntentListener {
+        @Override
+        public void event(IntentEvent event) {
+            intentCache.update(event);
+            intentReaper.event(event);
+            failedIntents.event(event);
+        }
+    }
 
+    /**
+     * Drops the cached hosts that moved, changed or left.
+     */
+    private class InternalHostListener implements HostListener {
+        @Override
+        public void event(HostEvent event) {
+            hostCache.invalidate(event.subject().mac());
+        }
+    }
+
+    /**
+     * Triggers the resubmission of failed intents when the topology changes.
+     */
+    private class InternalTopologyListener implements TopologyListener {
+        @Override
+        public void event(TopologyEvent event) {
+            failedIntents.topologyChanged();
+        }
     }
 
 }
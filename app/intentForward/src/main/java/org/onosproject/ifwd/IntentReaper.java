@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentService;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.Key;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Withdraws and purges the host-to-host intents of pairs that stopped
+ * talking, so that the intent store does not grow with every pair that
+ * ever exchanged a packet.
+ * <p>
+ * The last use of each pair is recorded on its {@link IntentCache} entry by
+ * the packet processor, and refreshed from the packet counters of the flow
+ * entries the intents compiled to, since established pairs no longer cause
+ * packet-ins. A periodic scan queues the pairs idle for longer than the
+ * timeout whose intent is handled by this instance; the queue is then
+ * drained at a bounded rate, re-checking each pair before it is withdrawn.
+ * Withdrawn intents are purged once the intent framework reports them
+ * withdrawn.
+ */
+final class IntentReaper {
+
+    private static final long DRAIN_PERIOD = SECONDS.toMillis(1);
+    private static final int SCANS_PER_TIMEOUT = 4;
+
+    private final Logger log = getLogger(getClass());
+
+    private final IntentService intentService;
+    private final FlowRuleService flowRuleService;
+    private final IntentCache intentCache;
+    private final ApplicationId appId;
+    private final ScheduledExecutorService executor;
+
+    /* Keys withdrawn by the reaper and not yet purged. */
+    private final Set<Key> withdrawing = ConcurrentHashMap.newKeySet();
+
+    /* Only touched on the executor thread. */
+    private final Deque<IntentCache.Entry> idle = new ArrayDeque<>();
+    private Map<FlowId, Long> flowPackets = new HashMap<>();
+
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder withdrawn = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    private volatile int idleTimeout;
+    private volatile int reapRate;
+    private volatile int backlog;
+    private ScheduledFuture<?> scanTask;
+    private ScheduledFuture<?> drainTask;
+
+    /**
+     * Creates a reaper.
+     *
+     * @param intentService   intent service
+     * @param flowRuleService flow rule service supplying the flow statistics
+     * @param intentCache     cache of the application intents
+     * @param appId           application whose intents are reaped
+     * @param executor        executor running the scans and withdrawals
+     */
+    IntentReaper(IntentService intentService, FlowRuleService flowRuleService,
+                 IntentCache intentCache, ApplicationId appId, ScheduledExecutorService executor) {
+        this.intentService = intentService;
+        this.flowRuleService = flowRuleService;
+        this.intentCache = intentCache;
+        this.appId = appId;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the idle timeout and withdrawal rate, and reschedules the scans.
+     *
+     * @param idleTimeout seconds a pair may stay idle before its intent is withdrawn, 0 to disable
+     * @param reapRate    maximum number of intents withdrawn per second
+     */
+    synchronized void configure(int idleTimeout, int reapRate) {
+        this.idleTimeout = Math.max(0, idleTimeout);
+        this.reapRate = Math.max(1, reapRate);
+        cancel();
+        if (this.idleTimeout > 0) {
+            long period = Math.max(DRAIN_PERIOD, SECONDS.toMillis(this.idleTimeout) / SCANS_PER_TIMEOUT);
+            scanTask = executor.scheduleWithFixedDelay(this::scan, period, period, MILLISECONDS);
+            drainTask = executor.scheduleWithFixedDelay(this::drain, DRAIN_PERIOD, DRAIN_PERIOD, MILLISECONDS);
+        } else {
+            executor.execute(idle::clear);
+        }
+    }
+
+    /**
+     * Stops scanning for idle intents.
+     */
+    synchronized void close() {
+        cancel();
+    }
+
+    /**
+     * Purges the intents withdrawn by the reaper once they are withdrawn,
+     * and counts them once purged.
+     *
+     * @param event intent event
+     */
+    void event(IntentEvent event) {
+        Intent intent = event.subject();
+        if (!withdrawing.contains(intent.key())) {
+            return;
+        }
+        if (event.type() == IntentEvent.Type.WITHDRAWN) {
+            intentService.purge(intent);
+        } else if (event.type() == IntentEvent.Type.PURGED) {
+            withdrawing.remove(intent.key());
+            purged.increment();
+        } else if (event.type() == IntentEvent.Type.INSTALL_REQ) {
+            /* Traffic came back before the purge, the intent stays */
+            withdrawing.remove(intent.key());
+        }
+    }
+
+    /**
+     * Returns the current reaper statistics.
+     *
+     * @return statistics
+     */
+    IntentReaperStatistics statistics() {
+        return new IntentReaperStatistics(idleTimeout, reapRate, intentCache.size(), backlog,
+                                          scans.sum(), withdrawn.sum(), purged.sum());
+    }
+
+    private void cancel() {
+        if (scanTask != null) {
+            scanTask.cancel(false);
+            drainTask.cancel(false);
+            scanTask = null;
+            drainTask = null;
+        }
+    }
+
+    /* Refreshes the last use of the pairs and queues those found idle. */
+    private void scan() {
+        try {
+            long now = System.currentTimeMillis();
+            refreshFromFlows(now);
+            long deadline = now - SECONDS.toMillis(idleTimeout);
+            idle.clear();
+            for (IntentCache.Entry entry : intentCache.entries()) {
+                if (isReapable(entry, deadline) && intentService.isLocal(entry.key())) {
+                    idle.add(entry);
+                }
+            }
+            backlog = idle.size();
+            scans.increment();
+            if (!idle.isEmpty()) {
+                log.debug("Found {} idle host pair intents", idle.size());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to scan for idle intents", e);
+        }
+    }
+
+    /*
+     * Marks as used the pairs whose flow entries forwarded packets since the
+     * previous scan. Host-to-host intents compile to rules matching both
+     * host MAC addresses, in either direction.
+     */
+    private void refreshFromFlows(long now) {
+        Map<FlowId, Long> packets = new HashMap<>(flowPackets.size());
+        for (FlowEntry flow : flowRuleService.getFlowEntriesById(appId)) {
+            Criterion src = flow.selector().getCriterion(Criterion.Type.ETH_SRC);
+            Criterion dst = flow.selector().getCriterion(Criterion.Type.ETH_DST);
+            if (!(src instanceof EthCriterion) || !(dst instanceof EthCriterion)) {
+                continue;
+            }
+            packets.put(flow.id(), flow.packets());
+            Long previous = flowPackets.get(flow.id());
+            if (previous != null && previous == flow.packets()) {
+                continue;
+            }
+            IntentCache.Entry entry = intentCache.get(((EthCriterion) src).mac(), ((EthCriterion) dst).mac());
+            if (entry != null) {
+                entry.touch(now);
+            }
+        }
+        flowPackets = packets;
+    }
+
+    /* Withdraws up to a second worth of the queued intents still idle. */
+    private void drain() {
+        try {
+            long deadline = System.currentTimeMillis() - SECONDS.toMillis(idleTimeout);
+            int budget = reapRate;
+            while (budget > 0 && !idle.isEmpty()) {
+                IntentCache.Entry entry = idle.poll();
+                if (!isReapable(entry, deadline)) {
+                    continue;
+                }
+                Intent intent = intentService.getIntent(entry.key());
+                if (intent == null) {
+                    continue;
+                }
+                withdrawing.add(intent.key());
+                entry.state(IntentState.WITHDRAW_REQ);
+                intentService.withdraw(intent);
+                withdrawn.increment();
+                budget--;
+            }
+            backlog = idle.size();
+        } catch (RuntimeException e) {
+            log.warn("Unable to withdraw idle intents", e);
+        }
+    }
+
+    private boolean isReapable(IntentCache.Entry entry, long deadline) {
+        IntentState state = entry.state();
+        return entry.lastUsed() < deadline && !withdrawing.contains(entry.key())
+                && (state == IntentState.INSTALLED || state == IntentState.FAILED);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Point-in-time statistics of the idle intent reaper.
+ */
+public final class IntentReaperStatistics {
+
+    private final int idleTimeout;
+    private final int reapRate;
+    private final int tracked;
+    private final int backlog;
+    private final long scans;
+    private final long withdrawn;
+    private final long purged;
+
+    /**
+     * Creates reaper statistics.
+     *
+     * @param idleTimeout seconds a pair may stay idle, 0 if reaping is disabled
+     * @param reapRate    maximum number of intents withdrawn per second
+     * @param tracked     number of host pair intents tracked
+     * @param backlog     number of idle intents waiting to be withdrawn
+     * @param scans       number of scans for idle intents
+     * @param withdrawn   number of idle intents withdrawn
+     * @param purged      number of withdrawn intents purged from the store
+     */
+    public IntentReaperStatistics(int idleTimeout, int reapRate, int tracked, int backlog,
+                                  long scans, long withdrawn, long purged) {
+        this.idleTimeout = idleTimeout;
+        this.reapRate = reapRate;
+        this.tracked = tracked;
+        this.backlog = backlog;
+        this.scans = scans;
+        this.withdrawn = withdrawn;
+        this.purged = purged;
+    }
+
+    public int idleTimeout() {
+        return idleTimeout;
+    }
+
+    public int reapRate() {
+        return reapRate;
+    }
+
+    public int tracked() {
+        return tracked;
+    }
+
+    public int backlog() {
+        return backlog;
+    }
+
+    public long scans() {
+        return scans;
+    }
+
+    public long withdrawn() {
+        return withdrawn;
+    }
+
+    public long purged() {
+        return purged;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("idleTimeout", idleTimeout)
+                .add("reapRate", reapRate)
+                .add("tracked", tracked)
+                .add("backlog", backlog)
+                .add("scans", scans)
+                .add("withdrawn", withdrawn)
+                .add("purged", purged)
+                .toString();
+    }
+}
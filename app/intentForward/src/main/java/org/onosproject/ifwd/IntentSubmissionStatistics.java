@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.forwarding.common.LatencyHistogram;
+
+/**
+ * Point-in-time statistics of the intent submission stage.
+ */
+public final class IntentSubmissionStatistics {
+
+    private final int batchSize;
+    private final int batchDelay;
+    private final int rateLimit;
+    private final int backlog;
+    private final long requested;
+    private final long deduplicated;
+    private final long submitted;
+    private final long batches;
+    private final LatencyHistogram.Snapshot latency;
+
+    /**
+     * Creates submission statistics.
+     *
+     * @param batchSize    maximum number of intents submitted per batch
+     * @param batchDelay   batch window in milliseconds
+     * @param rateLimit    sustained intents per second, 0 for no limit
+     * @param backlog      number of intents currently queued
+     * @param requested    number of intents requested
+     * @param deduplicated number of requests dropped as already queued
+     * @param submitted    number of intents handed to the intent service
+     * @param batches      number of batches submitted
+     * @param latency      time intents waited before being submitted
+     */
+    public IntentSubmissionStatistics(int batchSize, int batchDelay, int rateLimit, int backlog,
+                                      long requested, long deduplicated, long submitted,
+                                      long batches, LatencyHistogram.Snapshot latency) {
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.rateLimit = rateLimit;
+        this.backlog = backlog;
+        this.requested = requested;
+        this.deduplicated = deduplicated;
+        this.submitted = submitted;
+        this.batches = batches;
+        this.latency = latency;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public int batchDelay() {
+        return batchDelay;
+    }
+
+    public int rateLimit() {
+        return rateLimit;
+    }
+
+    public int backlog() {
+        return backlog;
+    }
+
+    public long requested() {
+        return requested;
+    }
+
+    public long deduplicated() {
+        return deduplicated;
+    }
+
+    public long submitted() {
+        return submitted;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    public LatencyHistogram.Snapshot latency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("batchSize", batchSize)
+                .add("batchDelay", batchDelay)
+                .add("rateLimit", rateLimit)
+                .add("backlog", backlog)
+                .add("requested", requested)
+                .add("deduplicated", deduplicated)
+                .add("submitted", submitted)
+                .add("batches", batches)
+                .add("latency", latency)
+                .toString();
+    }
+}
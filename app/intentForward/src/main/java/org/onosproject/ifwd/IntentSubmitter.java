@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ifwd;
+
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentService;
+import org.onosproject.net.intent.Key;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Submission stage between the packet processor and the intent service.
+ * <p>
+ * Intents are queued by key, so that a host pair already waiting is not
+ * queued twice, and handed to the intent service in batches from a single
+ * executor thread. The first intent queued opens a batch window; when it
+ * closes, up to a batch worth of intents are submitted, subject to a token
+ * bucket limiting the sustained submission rate. Intents left over wait for
+ * the next window, in the order they were queued. Intents that never reach
+ * the intent service, because they were discarded or rejected, are handed
+ * back to the caller so that it can forget having submitted them.
+ */
+final class IntentSubmitter {
+
+    private final Logger log = getLogger(getClass());
+
+    private final IntentService intentService;
+    private final ScheduledExecutorService executor;
+    private final Consumer<Intent> dropped;
+
+    /* Guarded by itself; also guards scheduled. */
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    private volatile int batchSize;
+    private volatile int batchDelay;
+    private volatile int rateLimit;
+    private volatile int burst;
+
+    /* Token bucket state, only touched on the executor thread. */
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates a submitter.
+     *
+     * @param intentService intent service to submit to
+     * @param executor      executor running the batches
+     * @param batchSize     maximum number of intents submitted per batch
+     * @param batchDelay    batch window in milliseconds
+     * @param rateLimit     sustained intents per second, 0 for no limit
+     * @param burst         intents that may be submitted at once after a quiet period
+     * @param dropped       told of the intents queued that did not reach the intent service
+     */
+    IntentSubmitter(IntentService intentService, ScheduledExecutorService executor,
+                    int batchSize, int batchDelay, int rateLimit, int burst,
+                    Consumer<Intent> dropped) {
+        this.intentService = intentService;
+        this.executor = executor;
+        this.dropped = dropped;
+        configure(batchSize, batchDelay, rateLimit, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Changes the batching and rate limit parameters; batches already
+     * scheduled keep their window.
+     *
+     * @param batchSize  maximum number of intents submitted per batch
+     * @param batchDelay batch window in milliseconds
+     * @param rateLimit  sustained intents per second, 0 for no limit
+     * @param burst      intents that may be submitted at once after a quiet period
+     */
+    void configure(int batchSize, int batchDelay, int rateLimit, int burst) {
+        this.batchSize = Math.max(1, batchSize);
+        this.batchDelay = Math.max(0, batchDelay);
+        this.rateLimit = Math.max(0, rateLimit);
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * Queues an intent for submission.
+     *
+     * @param intent intent to submit
+     * @return false if an intent with the same key is already queued
+     */
+    boolean submit(Intent intent) {
+        requested.increment();
+        boolean schedule;
+        synchronized (pending) {
+            if (pending.putIfAbsent(intent.key(), new Pending(intent, System.nanoTime())) != null) {
+                deduplicated.increment();
+                return false;
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            executor.schedule(this::drain, batchDelay, MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Discards the queued intents, handing them to the drop callback.
+     *
+     * @return number of intents discarded
+     */
+    int clear() {
+        List<Pending> discarded;
+        synchronized (pending) {
+            discarded = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        discarded.forEach(p -> dropped.accept(p.intent));
+        return discarded.size();
+    }
+
+    /**
+     * Returns the current submission statistics.
+     *
+     * @return statistics
+     */
+    IntentSubmissionStatistics statistics() {
+        int backlog;
+        synchronized (pending) {
+            backlog = pending.size();
+        }
+        return new IntentSubmissionStatistics(batchSize, batchDelay, rateLimit, backlog,
+                                              requested.sum(), deduplicated.sum(),
+                                              submitted.sum(), batches.sum(),
+                                              latency.snapshot());
+    }
+
+    /* Submits one batch and schedules the next one if intents are left. */
+    private void drain() {
+        List<Pending> batch = new ArrayList<>();
+        long delay;
+        synchronized (pending) {
+            int allowed = Math.min(batchSize, acquirable());
+            Iterator<Pending> it = pending.values().iterator();
+            while (batch.size() < allowed && it.hasNext()) {
+                batch.add(it.next());
+                it.remove();
+            }
+            if (pending.isEmpty()) {
+                scheduled = false;
+                delay = -1;
+            } else {
+                delay = Math.max(batchDelay, untilNextToken());
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            tokens -= batch.size();
+            batches.increment();
+            for (Pending p : batch) {
+                try {
+                    intentService.submit(p.intent);
+                    submitted.increment();
+                } catch (RuntimeException e) {
+                    log.warn("Unable to submit intent {}", p.intent.key(), e);
+                    dropped.accept(p.intent);
+                }
+                latency.record(System.nanoTime() - p.queuedAt);
+            }
+        }
+        if (delay >= 0) {
+            executor.schedule(this::drain, delay, MILLISECONDS);
+        }
+    }
+
+    /* Refills the token bucket and returns the whole tokens available. */
+    private int acquirable() {
+        int rate = rateLimit;
+        if (rate == 0) {
+            tokens = Integer.MAX_VALUE;
+            return Integer.MAX_VALUE;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / (double) SECONDS.toNanos(1));
+        refilledAt = now;
+        return (int) tokens;
+    }
+
+    /* Milliseconds until the bucket holds a whole token again. */
+    private long untilNextToken() {
+        int rate = rateLimit;
+        if (rate == 0 || tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * SECONDS.toMillis(1) / rate);
+    }
+
+    /* Intent waiting for submission. */
+    private static final class Pending {
+
+        private final Intent intent;
+        private final long queuedAt;
+
+        private Pending(Intent intent, long queuedAt) {
+            this.intent = intent;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onosproject.ifwd.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+
+import org.onosproject.ifwd.ForwardingStatistics;
+import org.onosproject.ifwd.IntentForwardingService;
+import org.onosproject.ifwd.IntentReaperStatistics;
+import org.onosproject.ifwd.IntentSubmissionStatistics;
+
+import java.util.Map;
+
+/**
+ * Command to print the packet-in and intent metrics of the intent forwarding
+ * application.
+ */
+@Command(scope = "onos", name = "show-ifwd-metrics",
+        description = "Show packet-in counters, forwarding latency and intent counters of intent forwarding")
+public class ShowForwardingMetricsCommand extends AbstractShellCommand {
+    @Argument(index = 0, name = "device", description = "Device ID",
+              required = false, multiValued = false)
+    private String deviceStr = null;
+
+    @Option(name = "-a", aliases = "--all-devices", description = "Also show the counters of every device",
+            required = false, multiValued = false)
+    private boolean allDevices = false;
+
+    @Option(name = "-r", aliases = "--reset", description = "Reset the counters after showing them",
+            required = false, multiValued = false)
+    private boolean reset = false;
+
+    private static final String COUNTERS = " %s: %d packets, %d forwarded, %d flooded, %d blocked (%.1f%%), " +
+            "cache hit rate %.1f%%, %d intents requested, %d skipped as not master, mean %.1fus";
+    private static final String LATENCY = " latency: p50 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus";
+    private static final String SUBMISSION = " submission: batch size %d, batch delay %dms, rate limit %d, " +
+            "backlog %d, %d requested, %d deduplicated, %d submitted in %d batches, queue p99 %.1fus";
+    private static final String REAPER = " reaper: idle timeout %ds, reap rate %d, %d tracked, backlog %d, " +
+            "%d scans, %d withdrawn, %d purged";
+
+    @Override
+    protected void execute() {
+        IntentForwardingService service = get(IntentForwardingService.class);
+        if (deviceStr != null) {
+            DeviceId deviceId = DeviceId.deviceId(deviceStr);
+            ForwardingStatistics stats = service.getForwardingStatistics(deviceId);
+            if (stats == null) {
+                print(" No packet-in from %s", deviceId);
+            } else {
+                printCounters(deviceId.toString(), stats);
+            }
+        } else {
+            ForwardingStatistics total = service.getForwardingStatistics();
+            printCounters("total", total);
+            LatencyHistogram.Snapshot latency = total.latency();
+            print(LATENCY, micros(latency.percentile(50)), micros(latency.percentile(99)),
+                  micros(latency.percentile(99.9)), micros(latency.max()));
+            IntentSubmissionStatistics submission = service.getIntentSubmissionStatistics();
+            print(SUBMISSION, submission.batchSize(), submission.batchDelay(), submission.rateLimit(),
+                  submission.backlog(), submission.requested(), submission.deduplicated(),
+                  submission.submitted(), submission.batches(),
+                  micros(submission.latency().percentile(99)));
+            IntentReaperStatistics reaper = service.getIntentReaperStatistics();
+            print(REAPER, reaper.idleTimeout(), reaper.reapRate(), reaper.tracked(), reaper.backlog(),
+                  reaper.scans(), reaper.withdrawn(), reaper.purged());
+            if (allDevices) {
+                for (Map.Entry<DeviceId, ForwardingStatistics> entry
+                        : service.getDeviceForwardingStatistics().entrySet()) {
+                    printCounters(entry.getKey().toString(), entry.getValue());
+                }
+            }
+        }
+        if (reset) {
+            service.resetForwardingStatistics();
+        }
+    }
+
+    private void printCounters(String name, ForwardingStatistics stats) {
+        print(COUNTERS, name, stats.packets(), stats.forwarded(), stats.flooded(), stats.blocked(),
+              stats.floodRatio() * 100, stats.cacheHitRate() * 100, stats.intentsRequested(),
+              stats.notMaster(), micros(stats.meanProcessingNanos()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ifwd.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onlab.rest.BaseResource;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+
+import org.onosproject.ifwd.ForwardingStatistics;
+import org.onosproject.ifwd.IntentForwardingService;
+import org.onosproject.ifwd.IntentReaperStatistics;
+import org.onosproject.ifwd.IntentSubmissionStatistics;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Packet-in and intent submission metrics of the intent forwarding
+ * application.
+ */
+@Path("metrics")
+public class ForwardingMetricsWebResource extends BaseResource {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Returns the packet-in counters and processing latency summed over all
+     * devices, the intent submission and reaper counters, and the packet-in
+     * counters of each device.
+     *
+     * @return 200 OK with the metrics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        IntentForwardingService service = get(IntentForwardingService.class);
+        ObjectNode root = mapper.createObjectNode();
+        root.set("total", json(service.getForwardingStatistics()));
+        root.set("submission", json(service.getIntentSubmissionStatistics()));
+        root.set("reaper", json(service.getIntentReaperStatistics()));
+        ArrayNode devices = root.putArray("devices");
+        for (Map.Entry<DeviceId, ForwardingStatistics> entry
+                : service.getDeviceForwardingStatistics().entrySet()) {
+            devices.add(json(entry.getValue()).put("id", entry.getKey().toString()));
+        }
+        return ok(root).build();
+    }
+
+    /**
+     * Returns the packet-in counters of a device.
+     *
+     * @param deviceId device identifier
+     * @return 200 OK with the metrics, 404 if the device sent no packet
+     */
+    @GET
+    @Path("{deviceId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDeviceMetrics(@PathParam("deviceId") String deviceId) {
+        ForwardingStatistics stats = get(IntentForwardingService.class)
+                .getForwardingStatistics(DeviceId.deviceId(deviceId));
+        if (stats == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return ok(json(stats).put("id", deviceId)).build();
+    }
+
+    /**
+     * Clears the packet-in counters and the latency distribution.
+     *
+     * @return 204 NO CONTENT
+     */
+    @DELETE
+    public Response resetMetrics() {
+        get(IntentForwardingService.class).resetForwardingStatistics();
+        return Response.noContent().build();
+    }
+
+    private ObjectNode json(ForwardingStatistics stats) {
+        ObjectNode node = mapper.createObjectNode()
+                .put("packets", stats.packets())
+                .put("forwarded", stats.forwarded())
+                .put("flooded", stats.flooded())
+                .put("blocked", stats.blocked())
+                .put("cacheHits", stats.cacheHits())
+                .put("cacheMisses", stats.cacheMisses())
+                .put("intentsRequested", stats.intentsRequested())
+                .put("notMaster", stats.notMaster())
+                .put("cacheHitRate", stats.cacheHitRate())
+                .put("floodRatio", stats.floodRatio())
+                .put("meanNanos", stats.meanProcessingNanos());
+        if (stats.latency() != null) {
+            node.set("latency", json(stats.latency()));
+        }
+        return node;
+    }
+
+    private ObjectNode json(IntentSubmissionStatistics stats) {
+        ObjectNode node = mapper.createObjectNode()
+                .put("batchSize", stats.batchSize())
+                .put("batchDelay", stats.batchDelay())
+                .put("rateLimit", stats.rateLimit())
+                .put("backlog", stats.backlog())
+                .put("requested", stats.requested())
+                .put("deduplicated", stats.deduplicated())
+                .put("submitted", stats.submitted())
+                .put("batches", stats.batches());
+        node.set("queueLatency", json(stats.latency()));
+        return node;
+    }
+
+    private ObjectNode json(IntentReaperStatistics stats) {
+        return mapper.createObjectNode()
+                .put("idleTimeout", stats.idleTimeout())
+                .put("reapRate", stats.reapRate())
+                .put("tracked", stats.tracked())
+                .put("backlog", stats.backlog())
+                .put("scans", stats.scans())
+                .put("withdrawn", stats.withdrawn())
+                .put("purged", stats.purged());
+    }
+
+    private ObjectNode json(LatencyHistogram.Snapshot latency) {
+        return mapper.createObjectNode()
+                .put("count", latency.count())
+                .put("meanNanos", latency.mean())
+                .put("p50Nanos", latency.percentile(50))
+                .put("p99Nanos", latency.percentile(99))
+                .put("p999Nanos", latency.percentile(99.9))
+                .put("maxNanos", latency.max());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import java.time.Duration;
+
+/**
+ * IPv4 to MAC address bindings learned from ARP packets.
+ * <p>
+ * Bindings are kept in a {@link MacTable} keyed by the 32-bit IPv4 address
+ * instead of a MAC address, with the MAC address in place of the port. They
+ * thus share the primitive, allocation-free storage, the least-recently-seen
+ * aging and the capacity limit of the MAC tables.
+ */
+final class ArpCache {
+
+    /**
+     * MAC value returned when an IPv4 address has no binding.
+     */
+    static final long NO_MAC = MacTable.NO_PORT;
+
+    private final MacTable bindings = new MacTable();
+
+    /**
+     * Records the MAC address an IPv4 address was seen with.
+     *
+     * @param ip  IPv4 address, as an int
+     * @param mac 48-bit MAC address
+     * @param now timestamp in milliseconds since the epoch
+     * @return the previously bound MAC address or {@link #NO_MAC}
+     */
+    long learn(int ip, long mac, long now) {
+        return bindings.learn(key(ip), mac, now);
+    }
+
+    /**
+     * Returns the MAC address bound to an IPv4 address.
+     *
+     * @param ip IPv4 address, as an int
+     * @return 48-bit MAC address or {@link #NO_MAC}
+     */
+    long lookup(int ip) {
+        return bindings.lookup(key(ip));
+    }
+
+    /**
+     * Removes the bindings not refreshed within the cache age.
+     *
+     * @param now    timestamp in milliseconds since the epoch
+     * @param budget maximum number of bindings to remove
+     * @return number of bindings removed
+     */
+    int expire(long now, int budget) {
+        return bindings.expire(now, budget, null);
+    }
+
+    /**
+     * Applies the age and capacity of the cache.
+     *
+     * @param age        binding age
+     * @param maxEntries binding limit, 0 for unlimited
+     */
+    void configure(Duration age, int maxEntries) {
+        bindings.setAge(age);
+        bindings.setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Returns the number of bindings.
+     *
+     * @return binding count
+     */
+    int size() {
+        return bindings.size();
+    }
+
+    private static long key(int ip) {
+        return ip & 0xffffffffL;
+    }
+}
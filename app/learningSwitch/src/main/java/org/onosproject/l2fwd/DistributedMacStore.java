@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapEvent;
+import org.onosproject.store.service.EventuallyConsistentMapListener;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.WallClockTimestamp;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Cluster-wide copy of the learned MAC table entries.
+ * <p>
+ * Entries are replicated through an eventually consistent map keyed by
+ * device and MAC address. The local {@link MacTable}s stay the near cache
+ * every lookup is served from: the store is written when an address is
+ * learned for the first time, moves to another port or leaves a table, and
+ * the writes are propagated to the peers in the background. Refreshes are
+ * not written as they happen but replicated in bulk by {@link #refresh},
+ * a few times per aging period, since entries record when their writer last
+ * saw them and the other instances age their copies by that time rather
+ * than by when the copy arrived. Changes coming from the other instances are
+ * handed to a {@link Delegate} so that it updates its own tables; they are
+ * delivered on an executor of their own, as stores may notify listeners from
+ * the writing thread, which can hold the lock of a MAC table.
+ * <p>
+ * Entries record the instance that wrote them. Only that instance, which
+ * sees the traffic refreshing them, removes them when they age out or are
+ * evicted; other instances merely drop their local copy.
+ */
+final class DistributedMacStore {
+
+    static final String MAP_NAME = "onos-l2fwd-mac-tables";
+
+    /**
+     * Receiver of the entries changed in the store.
+     */
+    interface Delegate {
+        /**
+         * Notifies that a MAC address was learned or moved.
+         *
+         * @param deviceId device identifier
+         * @param mac      48-bit MAC address
+         * @param port     learned port number
+         * @param lastSeen time the writer last saw the address, in
+         *                 milliseconds since the epoch
+         */
+        void learned(DeviceId deviceId, long mac, long port, long lastSeen);
+
+        /**
+         * Notifies that a MAC address left the table of a device.
+         *
+         * @param deviceId device identifier
+         * @param mac      48-bit MAC address
+         * @param port     port the address was learned on, null if unknown
+         */
+        void removed(DeviceId deviceId, long mac, Long port);
+    }
+
+    private final EventuallyConsistentMap<MacKey, Location> entries;
+    private final EventuallyConsistentMapListener<MacKey, Location> listener = new InternalMapListener();
+    private final NodeId localNodeId;
+    private final Delegate delegate;
+    private final Executor executor;
+
+    /**
+     * Creates the store and starts listening to its changes.
+     *
+     * @param storageService storage service building the distributed map
+     * @param localNodeId    identifier of the local instance
+     * @param delegate       receiver of the changed entries
+     * @param executor       executor the delegate is notified on
+     */
+    DistributedMacStore(StorageService storageService, NodeId localNodeId,
+                        Delegate delegate, Executor executor) {
+        this.localNodeId = localNodeId;
+        this.delegate = delegate;
+        this.executor = executor;
+        KryoNamespace.Builder serializer = KryoNamespace.newBuilder()
+                .register(KryoNamespaces.API)
+                .register(MacKey.class)
+                .register(Location.class);
+        entries = storageService.<MacKey, Location>eventuallyConsistentMapBuilder()
+                .withName(MAP_NAME)
+                .withSerializer(serializer)
+                .withTimestampProvider((key, port) -> new WallClockTimestamp())
+                .build();
+        entries.addListener(listener);
+    }
+
+    /**
+     * Records the port a MAC address was learned or moved to.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     * @param port     learned port number
+     * @param lastSeen timestamp in milliseconds since the epoch
+     */
+    void put(DeviceId deviceId, long mac, long port, long lastSeen) {
+        entries.put(new MacKey(deviceId, mac), new Location(port, localNodeId, lastSeen));
+    }
+
+    /**
+     * Replicates the refreshes of the entries this instance wrote for a
+     * device, so that the copies of the other instances do not age out
+     * while traffic still flows. Only the entries seen since the given time
+     * and still stored as this instance wrote them are written again.
+     *
+     * @param deviceId device identifier
+     * @param table    local MAC table of the device
+     * @param since    time of the previous refresh, in milliseconds since the epoch
+     * @return number of entries refreshed
+     */
+    int refresh(DeviceId deviceId, MacTable table, long since) {
+        int[] count = {0};
+        table.walk((mac, port, lastSeen) -> {
+            if (lastSeen > since) {
+                MacKey key = new MacKey(deviceId, mac);
+                Location location = entries.get(key);
+                if (location != null && location.port == port && location.nodeId.equals(localNodeId)
+                        && location.lastSeen < lastSeen) {
+                    entries.put(key, new Location(port, localNodeId, lastSeen));
+                    count[0]++;
+                }
+            }
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * Removes a MAC address, provided it was written by this instance and has
+     * not been learned on another port in the meantime.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     * @param port     port the address was learned on
+     */
+    void remove(DeviceId deviceId, long mac, long port) {
+        MacKey key = new MacKey(deviceId, mac);
+        Location location = entries.get(key);
+        if (location != null && location.port == port && location.nodeId.equals(localNodeId)) {
+            entries.remove(key, location);
+        }
+    }
+
+    /**
+     * Hands every stored entry to the delegate, to fill the near cache.
+     *
+     * @return number of entries loaded
+     */
+    int load() {
+        int count = 0;
+        for (Map.Entry<MacKey, Location> entry : entries.entrySet()) {
+            delegate.learned(entry.getKey().deviceId, entry.getKey().mac,
+                             entry.getValue().port, entry.getValue().lastSeen);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of entries in the store.
+     *
+     * @return entry count
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops listening to the store and releases the local map instance.
+     */
+    void close() {
+        entries.removeListener(listener);
+        entries.destroy();
+    }
+
+    /**
+     * Device and MAC address of a stored entry.
+     */
+    static final class MacKey {
+
+        private final DeviceId deviceId;
+        private final long mac;
+
+        MacKey(DeviceId deviceId, long mac) {
+            this.deviceId = deviceId;
+            this.mac = mac;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceId, mac);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MacKey)) {
+                return false;
+            }
+            MacKey that = (MacKey) obj;
+            return mac == that.mac && deviceId.equals(that.deviceId);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("deviceId", deviceId)
+                    .add("mac", MacAddress.valueOf(mac))
+                    .toString();
+        }
+    }
+
+    /**
+     * Port a stored MAC address was learned on, the instance that learned it
+     * and when that instance last saw it.
+     */
+    static final class Location {
+
+        private final long port;
+        private final NodeId nodeId;
+        private final long lastSeen;
+
+        Location(long port, NodeId nodeId, long lastSeen) {
+            this.port = port;
+            this.nodeId = nodeId;
+            this.lastSeen = lastSeen;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(port, nodeId, lastSeen);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Location)) {
+                return false;
+            }
+            Location that = (Location) obj;
+            return port == that.port && lastSeen == that.lastSeen && nodeId.equals(that.nodeId);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("port", port)
+                    .add("nodeId", nodeId)
+                    .add("lastSeen", lastSeen)
+                    .toString();
+        }
+    }
+
+    /**
+     * Passes the changes of the distributed map on to the delegate, except
+     * those written by this instance.
+     */
+    private class InternalMapListener implements EventuallyConsistentMapListener<MacKey, Location> {
+        @Override
+        public void event(EventuallyConsistentMapEvent<MacKey, Location> event) {
+            MacKey key = event.key();
+            Location location = event.value();
+            Long port = location == null ? null : location.port;
+            switch (event.type()) {
+                case PUT:
+                    if (!location.nodeId.equals(localNodeId)) {
+                        executor.execute(() -> delegate.learned(key.deviceId, key.mac, port, location.lastSeen));
+                    }
+                    break;
+                case REMOVE:
+                    if (location != null && location.nodeId.equals(localNodeId)) {
+                        break;
+                    }
+                    executor.execute(() -> delegate.removed(key.deviceId, key.mac, port));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.TpPort;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.packet.PacketPriority;
+import org.slf4j.Logger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Firewall rule engine of the learning switch.
+ * <p>
+ * Keeps the installed {@link FirewallRule}s in memory, indexed by
+ * destination prefix so that overlapping rules are found without scanning
+ * the whole rule set. Each rule is compiled into one or more drop flow rule
+ * selectors, port ranges being split into masked port matches; selectors
+ * shared by several rules are reference counted so that removing one rule
+ * leaves the others in force. Changes are pushed to all available devices as
+ * a single {@link FlowRuleOperations} batch; devices that connect later are
+ * brought in line with {@link #sync(DeviceId)}.
+ */
+final class Firewall {
+
+    static final int FIREWALL_PRIORITY = PacketPriority.CONTROL.priorityValue();
+
+    private static final TrafficTreatment DROP = DefaultTrafficTreatment.builder().drop().build();
+
+    private final Logger log = getLogger(getClass());
+
+    private final FlowRuleService flowRuleService;
+    private final DeviceService deviceService;
+    private final ApplicationId appId;
+
+    /* Installed rules, in the order they were added, with their selectors. */
+    private final Map<FirewallRule, List<TrafficSelector>> rules = new LinkedHashMap<>();
+
+    /* Destination prefix -> rules matching it. */
+    private final Map<IpPrefix, Set<FirewallRule>> byDst = new HashMap<>();
+
+    /* Network address -> destination prefixes starting at it. */
+    private final NavigableMap<IpAddress, Set<IpPrefix>> dstPrefixes = new TreeMap<>();
+
+    /* Selector -> number of rules compiled into it. */
+    private final Map<TrafficSelector, Integer> selectors = new HashMap<>();
+
+    /**
+     * Creates an empty firewall.
+     *
+     * @param flowRuleService flow rule service
+     * @param deviceService   device service listing the devices to program
+     * @param appId           application installing the rules
+     */
+    Firewall(FlowRuleService flowRuleService, DeviceService deviceService, ApplicationId appId) {
+        this.flowRuleService = flowRuleService;
+        this.deviceService = deviceService;
+        this.appId = appId;
+    }
+
+    /**
+     * Adds rules and installs them on every available device. Rules already present
+     * are skipped.
+     *
+     * @param newRules rules to add
+     * @return rules actually added
+     */
+    synchronized Set<FirewallRule> add(Collection<FirewallRule> newRules) {
+        ImmutableSet.Builder<FirewallRule> added = ImmutableSet.builder();
+        List<TrafficSelector> install = Lists.newArrayList();
+        for (FirewallRule rule : newRules) {
+            if (rules.containsKey(rule)) {
+                continue;
+            }
+            List<TrafficSelector> compiled = selectors(rule);
+            rules.put(rule, compiled);
+            index(rule);
+            for (TrafficSelector selector : compiled) {
+                if (selectors.merge(selector, 1, Integer::sum) == 1) {
+                    install.add(selector);
+                }
+            }
+            added.add(rule);
+        }
+        apply(install, true);
+        return added.build();
+    }
+
+    /**
+     * Removes rules and uninstalls them from every available device. Rules not present
+     * are skipped.
+     *
+     * @param oldRules rules to remove
+     * @return rules actually removed
+     */
+    synchronized Set<FirewallRule> remove(Collection<FirewallRule> oldRules) {
+        ImmutableSet.Builder<FirewallRule> removed = ImmutableSet.builder();
+        List<TrafficSelector> uninstall = Lists.newArrayList();
+        for (FirewallRule rule : oldRules) {
+            List<TrafficSelector> compiled = rules.remove(rule);
+            if (compiled == null) {
+                continue;
+            }
+            unindex(rule);
+            for (TrafficSelector selector : compiled) {
+                if (selectors.merge(selector, -1, Integer::sum) == 0) {
+                    selectors.remove(selector);
+                    uninstall.add(selector);
+                }
+            }
+            removed.add(rule);
+        }
+        apply(uninstall, false);
+        return removed.build();
+    }
+
+    /**
+     * Returns the installed rules in the order they were added.
+     *
+     * @return firewall rules
+     */
+    synchronized Set<FirewallRule> rules() {
+        return ImmutableSet.copyOf(rules.keySet());
+    }
+
+    /**
+     * Returns the installed rules overlapping the given one, that is
+     * matching some of the traffic it matches. The rule itself is excluded.
+     *
+     * @param rule firewall rule
+     * @return overlapping rules
+     */
+    synchronized Set<FirewallRule> overlapping(FirewallRule rule) {
+        Set<FirewallRule> found = new HashSet<>();
+        IpPrefix dst = rule.dst();
+        /* Rules whose destination contains the given one... */
+        for (int length = 0; length <= dst.prefixLength(); length++) {
+            collect(byDst.get(IpPrefix.valueOf(dst.address(), length)), rule, found);
+        }
+        /* ...and rules whose destination is contained in it. */
+        for (Set<IpPrefix> prefixes : dstPrefixes.subMap(dst.address(), true, last(dst), true).values()) {
+            for (IpPrefix prefix : prefixes) {
+                if (prefix.prefixLength() > dst.prefixLength() && dst.contains(prefix)) {
+                    collect(byDst.get(prefix), rule, found);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the flow rules the firewall needs on a device.
+     *
+     * @param deviceId device identifier
+     * @return firewall flow rules
+     */
+    synchronized List<FlowRule> flowRules(DeviceId deviceId) {
+        List<FlowRule> flowRules = Lists.newArrayListWithCapacity(selectors.size());
+        selectors.keySet().forEach(selector -> flowRules.add(flowRule(deviceId, selector)));
+        return flowRules;
+    }
+
+    /**
+     * Brings the firewall flow rules of a device in line with the rule set,
+     * typically after it connected. The flow table of the device is diffed
+     * against the rules the firewall needs: only missing rules are installed
+     * and only stale firewall rules are removed, in one batch. The rule set
+     * is held for the whole diff, so that rules added meanwhile are not
+     * mistaken for stale ones.
+     *
+     * @param deviceId device identifier
+     * @return number of flow rules installed or removed
+     */
+    synchronized int sync(DeviceId deviceId) {
+        Map<FlowId, FlowRule> missing = new HashMap<>();
+        flowRules(deviceId).forEach(rule -> missing.put(rule.id(), rule));
+
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        int stale = 0;
+        for (FlowEntry entry : flowRuleService.getFlowEntries(deviceId)) {
+            if (entry.appId() != appId.id() || entry.priority() != FIREWALL_PRIORITY) {
+                continue;
+            }
+            if (entry.state() != FlowEntry.FlowEntryState.ADDED
+                    && entry.state() != FlowEntry.FlowEntryState.PENDING_ADD) {
+                continue;
+            }
+            if (missing.remove(entry.id()) == null) {
+                ops.remove(entry);
+                stale++;
+            }
+        }
+        missing.values().forEach(ops::add);
+        if (missing.isEmpty() && stale == 0) {
+            return 0;
+        }
+
+        int added = missing.size();
+        int removed = stale;
+        flowRuleService.apply(ops.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations ops) {
+                log.info("Firewall: synced {}, {} flow rules installed, {} removed", deviceId, added, removed);
+            }
+
+            @Override
+            public void onError(FlowRuleOperations ops) {
+                log.warn("Firewall: failed to sync {}: {}", deviceId, ops);
+            }
+        }));
+        return added + removed;
+    }
+
+    /**
+     * Builds the drop flow rule of a selector.
+     *
+     * @param deviceId device to program
+     * @param selector firewall selector
+     * @return flow rule
+     */
+    FlowRule flowRule(DeviceId deviceId, TrafficSelector selector) {
+        return DefaultFlowRule.builder()
+                .withSelector(selector)
+                .withTreatment(DROP)
+                .forDevice(deviceId).withPriority(FIREWALL_PRIORITY)
+                .makePermanent()
+                .fromApp(appId).build();
+    }
+
+    private static void collect(Set<FirewallRule> candidates, FirewallRule rule, Set<FirewallRule> found) {
+        if (candidates == null) {
+            return;
+        }
+        for (FirewallRule candidate : candidates) {
+            if (!candidate.equals(rule) && candidate.overlaps(rule)) {
+                found.add(candidate);
+            }
+        }
+    }
+
+    private void index(FirewallRule rule) {
+        byDst.computeIfAbsent(rule.dst(), p -> new HashSet<>()).add(rule);
+        dstPrefixes.computeIfAbsent(rule.dst().address(), a -> new HashSet<>()).add(rule.dst());
+    }
+
+    private void unindex(FirewallRule rule) {
+        Set<FirewallRule> sameDst = byDst.get(rule.dst());
+        sameDst.remove(rule);
+        if (sameDst.isEmpty()) {
+            byDst.remove(rule.dst());
+            Set<IpPrefix> sameAddress = dstPrefixes.get(rule.dst().address());
+            sameAddress.remove(rule.dst());
+            if (sameAddress.isEmpty()) {
+                dstPrefixes.remove(rule.dst().address());
+            }
+        }
+    }
+
+    /* Pushes the flow rules of the given selectors to all devices in one batch. */
+    private void apply(List<TrafficSelector> changed, boolean install) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        int devices = 0;
+        for (Device device : deviceService.getAvailableDevices()) {
+            for (TrafficSelector selector : changed) {
+                FlowRule flowRule = flowRule(device.id(), selector);
+                if (install) {
+                    ops.add(flowRule);
+                } else {
+                    ops.remove(flowRule);
+                }
+            }
+            devices++;
+        }
+        String action = install ? "install" : "remove";
+        int count = changed.size();
+        int total = devices;
+        flowRuleService.apply(ops.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations ops) {
+                log.info("Firewall: {} {} flow rules on {} devices done", action, count, total);
+            }
+
+            @Override
+            public void onError(FlowRuleOperations ops) {
+                log.warn("Firewall: failed to {} flow rules: {}", action, ops);
+            }
+        }));
+    }
+
+    /**
+     * Compiles a firewall rule into the selectors of its drop flow rules.
+     * Port ranges that are not a single masked block are split into several
+     * selectors.
+     *
+     * @param rule firewall rule
+     * @return flow rule selectors
+     */
+    static List<TrafficSelector> selectors(FirewallRule rule) {
+        List<TrafficSelector> compiled = Lists.newArrayList();
+        for (int[] srcBlock : blocks(rule.srcPorts())) {
+            for (int[] dstBlock : blocks(rule.dstPorts())) {
+                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+                if (rule.dst().isIp4()) {
+                    selector.matchEthType(Ethernet.TYPE_IPV4);
+                    if (rule.src().prefixLength() > 0) {
+                        selector.matchIPSrc(rule.src());
+                    }
+                    if (rule.dst().prefixLength() > 0) {
+                        selector.matchIPDst(rule.dst());
+                    }
+                } else {
+                    selector.matchEthType(Ethernet.TYPE_IPV6);
+                    if (rule.src().prefixLength() > 0) {
+                        selector.matchIPv6Src(rule.src());
+                    }
+                    if (rule.dst().prefixLength() > 0) {
+                        selector.matchIPv6Dst(rule.dst());
+                    }
+                }
+                if (rule.protocol() != FirewallRule.ANY_PROTOCOL) {
+                    selector.matchIPProtocol((byte) rule.protocol());
+                }
+                boolean tcp = rule.protocol() == IPv4.PROTOCOL_TCP;
+                if (srcBlock != null) {
+                    matchPorts(selector, tcp, true, srcBlock);
+                }
+                if (dstBlock != null) {
+                    matchPorts(selector, tcp, false, dstBlock);
+                }
+                compiled.add(selector.build());
+            }
+        }
+        return compiled;
+    }
+
+    /* Matches a block of transport ports, exactly if it is a single port. */
+    private static void matchPorts(TrafficSelector.Builder selector, boolean tcp, boolean src, int[] block) {
+        TpPort port = TpPort.tpPort(block[0]);
+        if (block[1] == 0xffff) {
+            if (tcp) {
+                if (src) {
+                    selector.matchTcpSrc(port);
+                } else {
+                    selector.matchTcpDst(port);
+                }
+            } else {
+                if (src) {
+                    selector.matchUdpSrc(port);
+                } else {
+                    selector.matchUdpDst(port);
+                }
+            }
+            return;
+        }
+        TpPort mask = TpPort.tpPort(block[1]);
+        if (tcp) {
+            if (src) {
+                selector.matchTcpSrcMasked(port, mask);
+            } else {
+                selector.matchTcpDstMasked(port, mask);
+            }
+        } else {
+            if (src) {
+                selector.matchUdpSrcMasked(port, mask);
+            } else {
+                selector.matchUdpDstMasked(port, mask);
+            }
+        }
+    }
+
+    /*
+     * Splits a port range into aligned power-of-two blocks, each matched by
+     * a port and mask pair. Any port is a single null block, matching
+     * nothing on ports.
+     */
+    private static List<int[]> blocks(FirewallRule.PortRange range) {
+        List<int[]> blocks = Lists.newArrayList();
+        if (range.isAny()) {
+            blocks.add(null);
+            return blocks;
+        }
+        int port = range.min();
+        while (port <= range.max()) {
+            int size = port == 0 ? 0x10000 : Integer.lowestOneBit(port);
+            while (port + size - 1 > range.max()) {
+                size >>>= 1;
+            }
+            blocks.add(new int[]{port, 0xffff & ~(size - 1)});
+            port += size;
+        }
+        return blocks;
+    }
+
+    /* Highest address of a prefix. */
+    private static IpAddress last(IpPrefix prefix) {
+        byte[] octets = prefix.address().toOctets();
+        for (int bit = prefix.prefixLength(); bit < octets.length * Byte.SIZE; bit++) {
+            octets[bit / Byte.SIZE] |= 0x80 >>> (bit % Byte.SIZE);
+        }
+        return IpAddress.valueOf(prefix.address().version(), octets);
+    }
+}
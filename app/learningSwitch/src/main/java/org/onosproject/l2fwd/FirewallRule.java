@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IpPrefix;
+
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Firewall rule dropping the IP traffic it matches.
+ * <p>
+ * A rule matches on source and destination prefixes, optionally on the IP
+ * protocol and, for TCP and UDP, on source and destination port ranges.
+ * Fields left unspecified match anything.
+ */
+public final class FirewallRule {
+
+    /**
+     * Protocol value matching any IP protocol.
+     */
+    public static final int ANY_PROTOCOL = -1;
+
+    private static final IpPrefix ANY_IP4 = IpPrefix.valueOf("0.0.0.0/0");
+    private static final IpPrefix ANY_IP6 = IpPrefix.valueOf("::/0");
+
+    private final IpPrefix src;
+    private final IpPrefix dst;
+    private final int protocol;
+    private final PortRange srcPorts;
+    private final PortRange dstPorts;
+
+    private FirewallRule(IpPrefix src, IpPrefix dst, int protocol,
+                         PortRange srcPorts, PortRange dstPorts) {
+        this.src = src;
+        this.dst = dst;
+        this.protocol = protocol;
+        this.srcPorts = srcPorts;
+        this.dstPorts = dstPorts;
+    }
+
+    /**
+     * Returns a new builder of firewall rules.
+     *
+     * @return rule builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the source prefix.
+     *
+     * @return source prefix
+     */
+    public IpPrefix src() {
+        return src;
+    }
+
+    /**
+     * Returns the destination prefix.
+     *
+     * @return destination prefix
+     */
+    public IpPrefix dst() {
+        return dst;
+    }
+
+    /**
+     * Returns the IP protocol number.
+     *
+     * @return protocol number, {@link #ANY_PROTOCOL} if any
+     */
+    public int protocol() {
+        return protocol;
+    }
+
+    /**
+     * Returns the range of source transport ports.
+     *
+     * @return source port range
+     */
+    public PortRange srcPorts() {
+        return srcPorts;
+    }
+
+    /**
+     * Returns the range of destination transport ports.
+     *
+     * @return destination port range
+     */
+    public PortRange dstPorts() {
+        return dstPorts;
+    }
+
+    /**
+     * Returns whether some traffic is matched by both this rule and the
+     * given one.
+     *
+     * @param other another rule
+     * @return true if the rules overlap
+     */
+    public boolean overlaps(FirewallRule other) {
+        return overlaps(src, other.src) && overlaps(dst, other.dst)
+                && (protocol == ANY_PROTOCOL || other.protocol == ANY_PROTOCOL || protocol == other.protocol)
+                && srcPorts.overlaps(other.srcPorts) && dstPorts.overlaps(other.dstPorts);
+    }
+
+    private static boolean overlaps(IpPrefix a, IpPrefix b) {
+        return a.contains(b) || b.contains(a);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(src, dst, protocol, srcPorts, dstPorts);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FirewallRule)) {
+            return false;
+        }
+        FirewallRule that = (FirewallRule) obj;
+        return protocol == that.protocol && src.equals(that.src) && dst.equals(that.dst)
+                && srcPorts.equals(that.srcPorts) && dstPorts.equals(that.dstPorts);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("src", src)
+                .add("dst", dst)
+                .add("protocol", protocolName(protocol))
+                .add("srcPorts", srcPorts)
+                .add("dstPorts", dstPorts)
+                .toString();
+    }
+
+    /**
+     * Returns the usual name of an IP protocol number.
+     *
+     * @param protocol protocol number or {@link #ANY_PROTOCOL}
+     * @return tcp, udp, icmp, any or the number itself
+     */
+    public static String protocolName(int protocol) {
+        switch (protocol) {
+            case ANY_PROTOCOL:
+                return "any";
+            case IPv4.PROTOCOL_TCP:
+                return "tcp";
+            case IPv4.PROTOCOL_UDP:
+                return "udp";
+            case IPv4.PROTOCOL_ICMP:
+                return "icmp";
+            default:
+                return Integer.toString(protocol);
+        }
+    }
+
+    /**
+     * Parses an IP protocol name or number.
+     *
+     * @param name tcp, udp, icmp, any or a protocol number
+     * @return protocol number or {@link #ANY_PROTOCOL}
+     * @throws IllegalArgumentException if the protocol is unknown
+     */
+    public static int protocolNumber(String name) {
+        switch (name.toLowerCase()) {
+            case "any":
+                return ANY_PROTOCOL;
+            case "tcp":
+                return IPv4.PROTOCOL_TCP;
+            case "udp":
+                return IPv4.PROTOCOL_UDP;
+            case "icmp":
+                return IPv4.PROTOCOL_ICMP;
+            default:
+                int number = Integer.parseInt(name);
+                checkArgument(number >= 0 && number <= 0xff, "Invalid IP protocol %s", name);
+                return number;
+        }
+    }
+
+    /**
+     * Inclusive range of transport ports.
+     */
+    public static final class PortRange {
+
+        /**
+         * Range of all ports.
+         */
+        public static final PortRange ANY = new PortRange(0, 0xffff);
+
+        private final int min;
+        private final int max;
+
+        private PortRange(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Returns the range between two ports, both included.
+         *
+         * @param min lowest port
+         * @param max highest port
+         * @return port range
+         * @throws IllegalArgumentException if the range is empty or not within 0-65535
+         */
+        public static PortRange of(int min, int max) {
+            checkArgument(0 <= min && min <= max && max <= 0xffff, "Invalid port range %s-%s", min, max);
+            return min == 0 && max == 0xffff ? ANY : new PortRange(min, max);
+        }
+
+        /**
+         * Parses a port range written as a single port, as two ports
+         * separated by a dash, or as "any".
+         *
+         * @param range port range text
+         * @return port range
+         * @throws IllegalArgumentException if the range is malformed
+         */
+        public static PortRange valueOf(String range) {
+            if (range.equalsIgnoreCase("any")) {
+                return ANY;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                int port = Integer.parseInt(range.trim());
+                return of(port, port);
+            }
+            return of(Integer.parseInt(range.substring(0, dash).trim()),
+                      Integer.parseInt(range.substring(dash + 1).trim()));
+        }
+
+        public int min() {
+            return min;
+        }
+
+        public int max() {
+            return max;
+        }
+
+        /**
+         * Returns whether the range covers every port.
+         *
+         * @return true if any port matches
+         */
+        public boolean isAny() {
+            return min == 0 && max == 0xffff;
+        }
+
+        /**
+         * Returns whether both ranges have a port in common.
+         *
+         * @param other another range
+         * @return true if the ranges overlap
+         */
+        public boolean overlaps(PortRange other) {
+            return min <= other.max && other.min <= max;
+        }
+
+        @Override
+        public int hashCode() {
+            return min * 65537 + max;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PortRange)) {
+                return false;
+            }
+            PortRange that = (PortRange) obj;
+            return min == that.min && max == that.max;
+        }
+
+        @Override
+        public String toString() {
+            if (isAny()) {
+                return "any";
+            }
+            return min == max ? Integer.toString(min) : min + "-" + max;
+        }
+    }
+
+    /**
+     * Builder of firewall rules.
+     */
+    public static final class Builder {
+
+        private IpPrefix src;
+        private IpPrefix dst;
+        private int protocol = ANY_PROTOCOL;
+        private PortRange srcPorts = PortRange.ANY;
+        private PortRange dstPorts = PortRange.ANY;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the source prefix; any source by default.
+         *
+         * @param src source prefix
+         * @return this builder
+         */
+        public Builder src(IpPrefix src) {
+            this.src = src;
+            return this;
+        }
+
+        /**
+         * Sets the destination prefix; any destination by default.
+         *
+         * @param dst destination prefix
+         * @return this builder
+         */
+        public Builder dst(IpPrefix dst) {
+            this.dst = dst;
+            return this;
+        }
+
+        /**
+         * Sets the IP protocol; any protocol by default.
+         *
+         * @param protocol protocol number or {@link #ANY_PROTOCOL}
+         * @return this builder
+         */
+        public Builder protocol(int protocol) {
+            this.protocol = protocol;
+            return this;
+        }
+
+        /**
+         * Sets the source port range; any port by default.
+         *
+         * @param srcPorts source port range
+         * @return this builder
+         */
+        public Builder srcPorts(PortRange srcPorts) {
+            this.srcPorts = checkNotNull(srcPorts);
+            return this;
+        }
+
+        /**
+         * Sets the destination port range; any port by default.
+         *
+         * @param dstPorts destination port range
+         * @return this builder
+         */
+        public Builder dstPorts(PortRange dstPorts) {
+            this.dstPorts = checkNotNull(dstPorts);
+            return this;
+        }
+
+        /**
+         * Builds the rule.
+         *
+         * @return firewall rule
+         * @throws IllegalArgumentException if the prefixes are of different
+         *                                  IP versions, or ports are given for a protocol other
+         *                                  than TCP or UDP
+         */
+        public FirewallRule build() {
+            IpPrefix any = (src != null && src.isIp6()) || (dst != null && dst.isIp6()) ? ANY_IP6 : ANY_IP4;
+            IpPrefix s = src != null ? src : any;
+            IpPrefix d = dst != null ? dst : any;
+            checkArgument(s.version() == d.version(), "Source and destination are of different IP versions");
+            checkArgument(protocol == ANY_PROTOCOL || (protocol >= 0 && protocol <= 0xff),
+                          "Invalid IP protocol %s", protocol);
+            checkArgument((srcPorts.isAny() && dstPorts.isAny())
+                                  || protocol == IPv4.PROTOCOL_TCP || protocol == IPv4.PROTOCOL_UDP,
+                          "Port ranges require TCP or UDP");
+            return new FirewallRule(s, d, protocol, srcPorts, dstPorts);
+        }
+    }
+}
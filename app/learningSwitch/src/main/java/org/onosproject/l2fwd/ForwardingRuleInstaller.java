@@ -0,0 +1,496 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.onlab.packet.MacAddress;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.flow.instructions.Instructions.OutputInstruction;
+import org.onosproject.net.packet.PacketPriority;
+import org.slf4j.Logger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Installs the destination MAC forwarding rules of the learning switch.
+ * <p>
+ * Rules already installed or in flight for the same device, destination MAC
+ * and output port are suppressed, so a burst of packet-ins towards a freshly
+ * learned destination results in a single install. The remaining installs are
+ * coalesced per device and handed to the flow rule service as one
+ * {@link FlowRuleOperations} batch once the batch is full or its deadline
+ * has passed. Removals requested through {@link #remove} travel in the same
+ * batches.
+ * <p>
+ * The cache of a device and its pending batch change together under the
+ * lock of the device, so that concurrent requests for the same destination
+ * neither both pass for a first install nor reach the switch in another
+ * order than they updated the cache. Cache entries are only dropped when the
+ * rule is removed, by this class or by the switch, as the idle timeout of a
+ * rule that traffic keeps hitting never expires.
+ * <p>
+ * The devices holding a rule towards each destination MAC are indexed, so
+ * that when an address moves only the rules leading to its old port are
+ * replaced, across all devices in a single batch; see {@link #relocate}.
+ * <p>
+ * The rules along a whole path are also installed in a single batch, one
+ * stage per hop from the egress device back; see {@link #installPath}.
+ */
+final class ForwardingRuleInstaller {
+
+    static final int FLOW_TIMEOUT = 60;
+    static final int FLOW_PRIORITY = PacketPriority.REACTIVE.priorityValue();
+
+    private final Logger log = getLogger(getClass());
+
+    private final FlowRuleService flowRuleService;
+    private final ScheduledExecutorService executor;
+    private final ApplicationId appId;
+
+    private final Map<DeviceId, DeviceRules> devices = new ConcurrentHashMap<>();
+
+    /* Destination MAC -> devices with a rule towards it installed or in flight. */
+    private final Map<Long, Set<DeviceId>> holders = new ConcurrentHashMap<>();
+
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder relocations = new LongAdder();
+    private final LongAdder paths = new LongAdder();
+
+    private volatile int batchSize;
+    private volatile int batchDelay;
+
+    /**
+     * Creates a rule installer.
+     *
+     * @param flowRuleService flow rule service
+     * @param executor        executor running the batch deadlines
+     * @param appId           application installing the rules
+     * @param batchSize       number of rules that triggers a flush
+     * @param batchDelay      longest time a rule waits for its batch, in milliseconds
+     */
+    ForwardingRuleInstaller(FlowRuleService flowRuleService, ScheduledExecutorService executor,
+                            ApplicationId appId, int batchSize, int batchDelay) {
+        this.flowRuleService = flowRuleService;
+        this.executor = executor;
+        this.appId = appId;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Updates the batching parameters.
+     *
+     * @param batchSize  number of rules that triggers a flush
+     * @param batchDelay longest time a rule waits for its batch, in milliseconds
+     */
+    void configure(int batchSize, int batchDelay) {
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Requests a rule forwarding frames for a destination MAC out of a port.
+     * Nothing is sent if the same rule is already installed or pending; a
+     * rule of the same destination towards another port is replaced.
+     *
+     * @param deviceId device to program
+     * @param mac      destination MAC address, as a long
+     * @param outPort  output port
+     * @return true if the rule was queued, false if it was suppressed
+     */
+    boolean install(DeviceId deviceId, long mac, PortNumber outPort) {
+        DeviceRules rules = rules(deviceId);
+        synchronized (rules) {
+            FlowRuleOperation[] ops = update(deviceId, rules, mac, outPort);
+            if (ops == null) {
+                return false;
+            }
+            rules.add(ops);
+        }
+        return true;
+    }
+
+    /**
+     * Requests the rules forwarding frames for a destination MAC along a
+     * path. Unlike {@link #install}, the rules are not left to the batch
+     * deadlines but sent right away in a single batch holding one stage per
+     * hop, egress first, so that no device forwards a frame before the next
+     * one down the path has its rule. Hops whose rule is already installed
+     * or pending are skipped; pending operations of the devices along the
+     * path are sent with theirs.
+     *
+     * @param mac  destination MAC address, as a long
+     * @param hops devices and output ports along the path, egress first
+     * @return number of rules sent
+     */
+    int installPath(long mac, List<ConnectPoint> hops) {
+        List<List<FlowRuleOperation>> stages = Lists.newArrayListWithCapacity(hops.size());
+        for (ConnectPoint hop : hops) {
+            DeviceRules rules = rules(hop.deviceId());
+            synchronized (rules) {
+                FlowRuleOperation[] ops = update(hop.deviceId(), rules, mac, hop.port());
+                if (ops != null) {
+                    stages.add(rules.take(ops));
+                }
+            }
+        }
+        if (!stages.isEmpty()) {
+            paths.increment();
+            applyStages(stages);
+        }
+        return stages.size();
+    }
+
+    /**
+     * Replaces the rules towards a destination MAC that was just seen on a
+     * new port of a device. The rule of that device is pointed at the new
+     * port; the rules of every other device holding one are removed, as they
+     * lead towards the old location. Pending operations of the devices
+     * involved are sent along, so that the whole move takes effect in one
+     * batch without waiting for the batch deadlines.
+     *
+     * @param deviceId device the address moved on
+     * @param dstMac   destination MAC address
+     * @param outPort  port the address is now reached through
+     * @return other devices whose rule towards the address was removed
+     */
+    Set<DeviceId> relocate(DeviceId deviceId, MacAddress dstMac, PortNumber outPort) {
+        long mac = dstMac.toLong();
+        Set<DeviceId> current = holders.get(mac);
+        if (current == null) {
+            return ImmutableSet.of();
+        }
+        Set<DeviceId> invalidated = Sets.newHashSet();
+        List<FlowRuleOperation> ops = Lists.newArrayList();
+        for (DeviceId holder : current) {
+            DeviceRules rules = devices.get(holder);
+            if (rules == null) {
+                unindex(mac, holder);
+                continue;
+            }
+            synchronized (rules) {
+                long port = rules.installed.lookup(mac);
+                if (port == outPort.toLong() && holder.equals(deviceId)) {
+                    continue;
+                }
+                if (port == MacTable.NO_PORT || rules.installed.remove(mac) == MacTable.NO_PORT) {
+                    unindex(mac, holder);
+                    continue;
+                }
+                FlowRuleOperation remove = new FlowRuleOperation(rule(holder, dstMac, PortNumber.portNumber(port)),
+                                                                 FlowRuleOperation.Type.REMOVE);
+                if (holder.equals(deviceId)) {
+                    rules.installed.learn(mac, outPort.toLong(), System.currentTimeMillis());
+                    ops.addAll(rules.take(remove, new FlowRuleOperation(rule(holder, dstMac, outPort),
+                                                                        FlowRuleOperation.Type.ADD)));
+                } else {
+                    unindex(mac, holder);
+                    invalidated.add(holder);
+                    ops.addAll(rules.take(remove));
+                }
+            }
+        }
+        if (!ops.isEmpty()) {
+            relocations.increment();
+            apply(ops);
+        }
+        return invalidated;
+    }
+
+    /**
+     * Requests the removal of the rule forwarding frames for a destination
+     * MAC, if one is installed or pending on the device.
+     *
+     * @param deviceId device to program
+     * @param dstMac   destination MAC address
+     * @return true if a removal was queued
+     */
+    boolean remove(DeviceId deviceId, MacAddress dstMac) {
+        DeviceRules rules = devices.get(deviceId);
+        if (rules == null) {
+            return false;
+        }
+        long mac = dstMac.toLong();
+        synchronized (rules) {
+            long port = rules.installed.remove(mac);
+            if (port == MacTable.NO_PORT) {
+                return false;
+            }
+            unindex(mac, deviceId);
+            rules.add(new FlowRuleOperation(rule(deviceId, dstMac, PortNumber.portNumber(port)),
+                                            FlowRuleOperation.Type.REMOVE));
+        }
+        return true;
+    }
+
+    /**
+     * Requests the removal of the rules forwarding frames for a destination
+     * MAC on every device.
+     *
+     * @param dstMac destination MAC address
+     * @return number of removals queued
+     */
+    int removeAll(MacAddress dstMac) {
+        Set<DeviceId> current = holders.get(dstMac.toLong());
+        if (current == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (DeviceId deviceId : current) {
+            if (remove(deviceId, dstMac)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Forgets an installed rule, typically because the switch removed it.
+     *
+     * @param rule flow rule
+     */
+    void forget(FlowRule rule) {
+        DeviceRules rules = devices.get(rule.deviceId());
+        Criterion criterion = rule.selector().getCriterion(Criterion.Type.ETH_DST);
+        if (rules == null || !(criterion instanceof EthCriterion)) {
+            return;
+        }
+        long mac = ((EthCriterion) criterion).mac().toLong();
+        long port = outPort(rule);
+        if (port == MacTable.NO_PORT) {
+            return;
+        }
+        synchronized (rules) {
+            if (rules.installed.lookup(mac) == port && rules.installed.remove(mac) != MacTable.NO_PORT) {
+                unindex(mac, rule.deviceId());
+            }
+        }
+    }
+
+    /**
+     * Sends all pending batches right away.
+     */
+    void flush() {
+        devices.values().forEach(DeviceRules::flush);
+    }
+
+    /**
+     * Returns the statistics of the installer.
+     *
+     * @return forwarding rule statistics
+     */
+    ForwardingRuleStatistics statistics() {
+        return new ForwardingRuleStatistics(batchSize, batchDelay, requested.sum(), suppressed.sum(),
+                                            batches.sum(), relocations.sum(), paths.sum());
+    }
+
+    /**
+     * Builds the forwarding rule of a destination MAC address.
+     *
+     * @param deviceId device to program
+     * @param dstMac   destination MAC address
+     * @param outPort  output port
+     * @return flow rule
+     */
+    FlowRule rule(DeviceId deviceId, MacAddress dstMac, PortNumber outPort) {
+        return DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.builder().matchEthDst(dstMac).build())
+                .withTreatment(DefaultTrafficTreatment.builder().setOutput(outPort).build())
+                .forDevice(deviceId).withPriority(FLOW_PRIORITY)
+                .makeTemporary(FLOW_TIMEOUT)
+                .fromApp(appId).build();
+    }
+
+    private DeviceRules rules(DeviceId deviceId) {
+        DeviceRules rules = devices.get(deviceId);
+        return rules != null ? rules : devices.computeIfAbsent(deviceId, DeviceRules::new);
+    }
+
+    /*
+     * Records a rule as installed and returns the operations installing it,
+     * replacing the rule of the same destination towards another port, or
+     * null if the same rule is already installed or pending. Called with the
+     * lock of the device rules held.
+     */
+    private FlowRuleOperation[] update(DeviceId deviceId, DeviceRules rules, long mac, PortNumber outPort) {
+        requested.increment();
+        long port = outPort.toLong();
+        long previousPort = rules.installed.lookup(mac);
+        if (previousPort == port) {
+            suppressed.increment();
+            return null;
+        }
+        rules.installed.learn(mac, port, System.currentTimeMillis());
+        MacAddress dstMac = MacAddress.valueOf(mac);
+        FlowRuleOperation add = new FlowRuleOperation(rule(deviceId, dstMac, outPort),
+                                                      FlowRuleOperation.Type.ADD);
+        if (previousPort == MacTable.NO_PORT) {
+            index(mac, deviceId);
+            return new FlowRuleOperation[] {add};
+        }
+        return new FlowRuleOperation[] {
+                new FlowRuleOperation(rule(deviceId, dstMac, PortNumber.portNumber(previousPort)),
+                                      FlowRuleOperation.Type.REMOVE), add};
+    }
+
+    private void index(long mac, DeviceId deviceId) {
+        holders.compute(mac, (k, set) -> {
+            Set<DeviceId> ids = set != null ? set : Sets.newConcurrentHashSet();
+            ids.add(deviceId);
+            return ids;
+        });
+    }
+
+    private void unindex(long mac, DeviceId deviceId) {
+        holders.computeIfPresent(mac, (k, set) -> set.remove(deviceId) && set.isEmpty() ? null : set);
+    }
+
+    private void apply(List<FlowRuleOperation> ops) {
+        applyStages(Collections.singletonList(ops));
+    }
+
+    /*
+     * Hands lists of operations to the flow rule service, each in stages of
+     * its own that apply after those of the previous list. Operations on the
+     * same flow, such as the removal and re-addition of a rule whose output
+     * port changed, go in successive stages as well so that they apply in
+     * order.
+     */
+    private void applyStages(List<List<FlowRuleOperation>> stages) {
+        FlowRuleOperations.Builder batch = FlowRuleOperations.builder();
+        Set<FlowId> stage = Sets.newHashSet();
+        for (List<FlowRuleOperation> ops : stages) {
+            if (!stage.isEmpty()) {
+                batch.newStage();
+                stage.clear();
+            }
+            for (FlowRuleOperation op : ops) {
+                if (!stage.add(op.rule().id())) {
+                    batch.newStage();
+                    stage.clear();
+                    stage.add(op.rule().id());
+                }
+                if (op.type() == FlowRuleOperation.Type.REMOVE) {
+                    batch.remove(op.rule());
+                } else {
+                    batch.add(op.rule());
+                }
+            }
+        }
+        batches.increment();
+        flowRuleService.apply(batch.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onError(FlowRuleOperations failed) {
+                log.warn("Failed to apply forwarding rules: {}", failed);
+                stages.stream().flatMap(List::stream)
+                        .filter(op -> op.type() == FlowRuleOperation.Type.ADD)
+                        .forEach(op -> forget(op.rule()));
+            }
+        }));
+    }
+
+    private static long outPort(FlowRule rule) {
+        for (Instruction instruction : rule.treatment().immediate()) {
+            if (instruction instanceof OutputInstruction) {
+                return ((OutputInstruction) instruction).port().toLong();
+            }
+        }
+        return MacTable.NO_PORT;
+    }
+
+    /**
+     * Installed-rule cache and pending batch of a single device.
+     */
+    private final class DeviceRules {
+
+        /* Destination MAC -> output port of the rules installed or in flight. */
+        final MacTable installed = new MacTable();
+
+        private List<FlowRuleOperation> pending = Lists.newArrayList();
+        private ScheduledFuture<?> deadline;
+
+        DeviceRules(DeviceId deviceId) {
+            installed.setEvictionListener((mac, port, lastSeen) -> unindex(mac, deviceId));
+        }
+
+        /*
+         * Batches of a device are handed to the flow rule service, which
+         * only queues them, with the lock held so that they keep the order
+         * their operations were queued in.
+         */
+        synchronized void add(FlowRuleOperation... ops) {
+            Collections.addAll(pending, ops);
+            if (pending.size() >= batchSize) {
+                apply(drain());
+            } else if (deadline == null) {
+                deadline = executor.schedule(this::flush, batchDelay, MILLISECONDS);
+            }
+        }
+
+        synchronized void flush() {
+            List<FlowRuleOperation> ops = drain();
+            if (!ops.isEmpty()) {
+                apply(ops);
+            }
+        }
+
+        /* Appends operations and takes the whole pending batch, to be applied by the caller. */
+        synchronized List<FlowRuleOperation> take(FlowRuleOperation... ops) {
+            Collections.addAll(pending, ops);
+            return drain();
+        }
+
+        private List<FlowRuleOperation> drain() {
+            List<FlowRuleOperation> ops = pending;
+            pending = Lists.newArrayListWithCapacity(batchSize);
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            return ops;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Point-in-time statistics of the forwarding rule installer.
+ */
+public final class ForwardingRuleStatistics {
+
+    private final int batchSize;
+    private final int batchDelay;
+    private final long requested;
+    private final long suppressed;
+    private final long batches;
+    private final long relocations;
+    private final long paths;
+
+    /**
+     * Creates forwarding rule statistics.
+     *
+     * @param batchSize   number of rules that triggers a flush
+     * @param batchDelay  longest time a rule waits for its batch, in milliseconds
+     * @param requested   number of rule installs requested
+     * @param suppressed  number of requests dropped as the same rule was
+     *                    already installed or pending
+     * @param batches     number of batches handed to the flow rule service
+     * @param relocations number of moved addresses whose rules were replaced
+     * @param paths       number of paths installed as a single batch
+     */
+    public ForwardingRuleStatistics(int batchSize, int batchDelay, long requested, long suppressed,
+                                    long batches, long relocations, long paths) {
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.requested = requested;
+        this.suppressed = suppressed;
+        this.batches = batches;
+        this.relocations = relocations;
+        this.paths = paths;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public int batchDelay() {
+        return batchDelay;
+    }
+
+    public long requested() {
+        return requested;
+    }
+
+    public long suppressed() {
+        return suppressed;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    public long relocations() {
+        return relocations;
+    }
+
+    public long paths() {
+        return paths;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("batchSize", batchSize)
+                .add("batchDelay", batchDelay)
+                .add("requested", requested)
+                .add("suppressed", suppressed)
+                .add("batches", batches)
+                .add("relocations", relocations)
+                .add("paths", paths)
+                .toString();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.forwarding.common.LatencyHistogram;
+
+/**
+ * Point-in-time packet-in statistics of the learning switch, for one device
+ * or summed over all of them.
+ */
+public final class ForwardingStatistics {
+
+    private final long packets;
+    private final long forwarded;
+    private final long flooded;
+    private final long learned;
+    private final long moved;
+    private final long arpReplied;
+    private final long notMaster;
+    private final long processingNanos;
+    private final LatencyHistogram.Snapshot latency;
+
+    /**
+     * Creates forwarding statistics.
+     *
+     * @param packets         number of packet-ins received
+     * @param forwarded       number of packets sent to a learned port
+     * @param flooded         number of packets flooded, their destination being unknown
+     * @param learned         number of MAC addresses learned
+     * @param moved           number of MAC addresses seen on a new port
+     * @param arpReplied      number of ARP requests answered by the controller
+     * @param notMaster       number of packet-ins skipped, the device being
+     *                        mastered by another instance
+     * @param processingNanos total time spent forwarding, in nanoseconds
+     * @param latency         forwarding time distribution, null if not recorded
+     */
+    public ForwardingStatistics(long packets, long forwarded, long flooded, long learned,
+                                long moved, long arpReplied, long notMaster, long processingNanos,
+                                LatencyHistogram.Snapshot latency) {
+        this.packets = packets;
+        this.forwarded = forwarded;
+        this.flooded = flooded;
+        this.learned = learned;
+        this.moved = moved;
+        this.arpReplied = arpReplied;
+        this.notMaster = notMaster;
+        this.processingNanos = processingNanos;
+        this.latency = latency;
+    }
+
+    public long packets() {
+        return packets;
+    }
+
+    public long forwarded() {
+        return forwarded;
+    }
+
+    public long flooded() {
+        return flooded;
+    }
+
+    public long learned() {
+        return learned;
+    }
+
+    public long moved() {
+        return moved;
+    }
+
+    public long arpReplied() {
+        return arpReplied;
+    }
+
+    public long notMaster() {
+        return notMaster;
+    }
+
+    public long processingNanos() {
+        return processingNanos;
+    }
+
+    public LatencyHistogram.Snapshot latency() {
+        return latency;
+    }
+
+    /**
+     * Returns the share of forwarded packets whose destination was found in
+     * the MAC table.
+     *
+     * @return hit rate between 0 and 1, 0 if nothing was forwarded
+     */
+    public double hitRate() {
+        long lookups = forwarded + flooded;
+        return lookups == 0 ? 0 : (double) forwarded / lookups;
+    }
+
+    /**
+     * Returns the share of packet-ins that were flooded.
+     *
+     * @return flood ratio between 0 and 1, 0 if no packet was received
+     */
+    public double floodRatio() {
+        return packets == 0 ? 0 : (double) flooded / packets;
+    }
+
+    /**
+     * Returns the mean time spent forwarding a packet.
+     *
+     * @return mean in nanoseconds, 0 if nothing was forwarded
+     */
+    public long meanProcessingNanos() {
+        long lookups = forwarded + flooded;
+        return lookups == 0 ? 0 : processingNanos / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("packets", packets)
+                .add("forwarded", forwarded)
+                .add("flooded", flooded)
+                .add("learned", learned)
+                .add("moved", moved)
+                .add("arpReplied", arpReplied)
+                .add("notMaster", notMaster)
+                .add("processingNanos", processingNanos)
+                .add("latency", latency)
+                .omitNullValues()
+                .toString();
+    }
+}
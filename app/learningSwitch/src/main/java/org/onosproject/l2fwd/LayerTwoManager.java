@@ -16,29 +16,72 @@
 
 package org.onosproject.l2fwd;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableSet;
 import org.apache.felix.scr.annotations.*;
 import org.onlab.packet.*;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cluster.ClusterService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
+import org.onosproject.event.AbstractListenerManager;
+import org.onosproject.forwarding.common.EthernetHeader;
+import org.onosproject.forwarding.common.MastershipTracker;
+import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.ConnectPoint;
-import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
+import org.onosproject.net.config.ConfigFactory;
+import org.onosproject.net.config.NetworkConfigEvent;
+import org.onosproject.net.config.NetworkConfigListener;
+import org.onosproject.net.config.NetworkConfigRegistry;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.*;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.PacketPriority;
 import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketService;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.net.topology.TopologyListener;
+import org.onosproject.net.topology.TopologyService;
+import org.onosproject.store.service.StorageService;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 
-import static org.onlab.packet.Ethernet.TYPE_IPV4;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.onlab.util.Tools.get;
+import static org.onlab.util.Tools.getIntegerProperty;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onlab.util.Tools.isPropertyEnabled;
+import static org.onosproject.net.config.basics.SubjectFactories.DEVICE_SUBJECT_FACTORY;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -46,17 +89,47 @@ import static org.slf4j.LoggerFactory.getLogger;
  */
 @Component(immediate = true)
 @Service
-public class LayerTwoManager implements LayerTwoService {
+public class LayerTwoManager extends AbstractListenerManager<MacTableEvent, MacTableListener>
+        implements LayerTwoService {
 
     public static final String L2FWD_APP = "org.onosproject.l2fwd";
 
+    private static final int DEFAULT_MAC_AGE = 60;
+    private static final int DEFAULT_MAC_TABLE_CAPACITY = 100000;
+    private static final int DEFAULT_MAC_AGING_INTERVAL = 1000;
+    private static final int DEFAULT_MAC_AGING_BUDGET = 10000;
+    private static final int DEFAULT_FLOW_BATCH_SIZE = 64;
+    private static final int DEFAULT_FLOW_BATCH_DELAY = 10;
+    private static final boolean DEFAULT_PACKET_PIPELINE = false;
+    private static final int DEFAULT_PIPELINE_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_PIPELINE_QUEUE_DEPTH = 1024;
+    private static final String DEFAULT_PIPELINE_OVERFLOW_POLICY = "drop";
+    private static final boolean DEFAULT_PROACTIVE_FORWARDING = false;
+    private static final boolean DEFAULT_PROACTIVE_ALL_DEVICES = false;
+    private static final boolean DEFAULT_PATH_FORWARDING = false;
+    private static final boolean DEFAULT_ARP_PROXY = true;
+    private static final boolean DEFAULT_DISTRIBUTED_MAC_TABLE = false;
+    private static final boolean DEFAULT_STORM_CONTROL = true;
+    private static final int DEFAULT_FLOOD_RATE_LIMIT = 1000;
+    private static final int DEFAULT_FLOOD_SOURCE_RATE_LIMIT = 100;
+    private static final int DEFAULT_FLOOD_DEDUP_WINDOW = 100;
+    private static final int DEFAULT_MAC_SNAPSHOT_INTERVAL = 60;
+    private static final String DEFAULT_MAC_SNAPSHOT_FILE = "";
+    private static final int MAC_CHANGE_FEED_SIZE = 65536;
+
     private final Logger log = getLogger(getClass());
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
-    private DeviceService deviceService;
+    protected ComponentConfigService cfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected NetworkConfigRegistry netCfgRegistry;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DeviceService deviceService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected PacketService packetService;
@@ -64,15 +137,165 @@ public class LayerTwoManager implements LayerTwoService {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected FlowRuleService flowRuleService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected TopologyService topologyService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected StorageService storageService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ClusterService clusterService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MastershipService mastershipService;
+
+    @Property(name = "macAgeSeconds", intValue = DEFAULT_MAC_AGE,
+            label = "Default age of learned MAC entries in seconds")
+    private int macAgeSeconds = DEFAULT_MAC_AGE;
+
+    @Property(name = "macTableCapacity", intValue = DEFAULT_MAC_TABLE_CAPACITY,
+            label = "Default maximum number of learned MAC entries per device; 0 for unlimited")
+    private int macTableCapacity = DEFAULT_MAC_TABLE_CAPACITY;
+
+    @Property(name = "macAgingInterval", intValue = DEFAULT_MAC_AGING_INTERVAL,
+            label = "Interval between MAC aging sweeps in milliseconds")
+    private int macAgingInterval = DEFAULT_MAC_AGING_INTERVAL;
+
+    @Property(name = "macAgingBudget", intValue = DEFAULT_MAC_AGING_BUDGET,
+            label = "Maximum number of MAC entries expired per device in one sweep")
+    private int macAgingBudget = DEFAULT_MAC_AGING_BUDGET;
+
+    @Property(name = "flowBatchSize", intValue = DEFAULT_FLOW_BATCH_SIZE,
+            label = "Number of pending forwarding rules of a device sent as one batch")
+    private int flowBatchSize = DEFAULT_FLOW_BATCH_SIZE;
+
+    @Property(name = "flowBatchDelay", intValue = DEFAULT_FLOW_BATCH_DELAY,
+            label = "Longest time a forwarding rule waits for its batch in milliseconds")
+    private int flowBatchDelay = DEFAULT_FLOW_BATCH_DELAY;
+
+    @Property(name = "packetPipeline", boolValue = DEFAULT_PACKET_PIPELINE,
+            label = "Process packet-ins asynchronously on worker threads sharded by device")
+    private boolean packetPipeline = DEFAULT_PACKET_PIPELINE;
+
+    @Property(name = "pipelineWorkers", intValue = 0,
+            label = "Number of packet pipeline worker threads; 0 for one per core")
+    private int pipelineWorkers = DEFAULT_PIPELINE_WORKERS;
+
+    @Property(name = "pipelineQueueDepth", intValue = DEFAULT_PIPELINE_QUEUE_DEPTH,
+            label = "Maximum number of packets queued per device in the packet pipeline")
+    private int pipelineQueueDepth = DEFAULT_PIPELINE_QUEUE_DEPTH;
+
+    @Property(name = "pipelineOverflowPolicy", value = DEFAULT_PIPELINE_OVERFLOW_POLICY,
+            label = "Action on packets overflowing a full device queue: drop or flood")
+    private String pipelineOverflowPolicy = DEFAULT_PIPELINE_OVERFLOW_POLICY;
+
+    @Property(name = "proactiveForwarding", boolValue = DEFAULT_PROACTIVE_FORWARDING,
+            label = "Install the forwarding rule of a MAC address as soon as it is learned")
+    private boolean proactiveForwarding = DEFAULT_PROACTIVE_FORWARDING;
+
+    @Property(name = "proactiveAllDevices", boolValue = DEFAULT_PROACTIVE_ALL_DEVICES,
+            label = "Also install the rules of MAC addresses learned on edge ports on all other devices")
+    private boolean proactiveAllDevices = DEFAULT_PROACTIVE_ALL_DEVICES;
+
+    @Property(name = "pathForwarding", boolValue = DEFAULT_PATH_FORWARDING,
+            label = "Install the rules of all devices on the path to a host learned on an edge port at once")
+    private boolean pathForwarding = DEFAULT_PATH_FORWARDING;
+
+    @Property(name = "distributedMacTable", boolValue = DEFAULT_DISTRIBUTED_MAC_TABLE,
+            label = "Share learned MAC addresses with the other cluster instances")
+    private boolean distributedMacTable = DEFAULT_DISTRIBUTED_MAC_TABLE;
+
+    @Property(name = "arpProxy", boolValue = DEFAULT_ARP_PROXY,
+            label = "Answer ARP requests for known IPv4 addresses instead of flooding them")
+    private boolean arpProxy = DEFAULT_ARP_PROXY;
+
+    @Property(name = "stormControl", boolValue = DEFAULT_STORM_CONTROL,
+            label = "Only flood from broadcast points, within rate limits and without duplicates")
+    private boolean stormControl = DEFAULT_STORM_CONTROL;
+
+    @Property(name = "floodRateLimit", intValue = DEFAULT_FLOOD_RATE_LIMIT,
+            label = "Packets flooded per second on a device; 0 for unlimited")
+    private int floodRateLimit = DEFAULT_FLOOD_RATE_LIMIT;
+
+    @Property(name = "floodSourceRateLimit", intValue = DEFAULT_FLOOD_SOURCE_RATE_LIMIT,
+            label = "Packets flooded per second from a source MAC address on a device; 0 for unlimited")
+    private int floodSourceRateLimit = DEFAULT_FLOOD_SOURCE_RATE_LIMIT;
+
+    @Property(name = "floodDedupWindow", intValue = DEFAULT_FLOOD_DEDUP_WINDOW,
+            label = "Milliseconds during which a device does not flood the same frame twice; 0 to disable")
+    private int floodDedupWindow = DEFAULT_FLOOD_DEDUP_WINDOW;
+
+    @Property(name = "macSnapshotInterval", intValue = DEFAULT_MAC_SNAPSHOT_INTERVAL,
+            label = "Seconds between full snapshots of the MAC tables reloaded on restart; 0 to disable")
+    private int macSnapshotInterval = DEFAULT_MAC_SNAPSHOT_INTERVAL;
+
+    @Property(name = "macSnapshotFile", value = DEFAULT_MAC_SNAPSHOT_FILE,
+            label = "File the MAC table snapshots are kept in; empty for l2fwd/mac-tables.db in the data directory")
+    private String macSnapshotFile = DEFAULT_MAC_SNAPSHOT_FILE;
+
+    private final ConfigFactory<DeviceId, MacTableConfig> macTableConfigFactory =
+            new ConfigFactory<DeviceId, MacTableConfig>(DEVICE_SUBJECT_FACTORY,
+                                                        MacTableConfig.class, MacTableConfig.KEY) {
+                @Override
+                public MacTableConfig createConfig() {
+                    return new MacTableConfig();
+                }
+            };
+
+    private final NetworkConfigListener macTableConfigListener = new InternalConfigListener();
+    private final FlowRuleListener flowRuleListener = new InternalFlowRuleListener();
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final TopologyListener topologyListener = new InternalTopologyListener();
+    private final Set<DeviceId> pendingSyncs = ConcurrentHashMap.newKeySet();
+
     private LayerTwoPacketProcessor processor = new LayerTwoPacketProcessor();
     private ApplicationId appId;
 
-    protected Map<DeviceId, Map<MacAddress, MacTableEntry>> macTables
-        = new ConcurrentHashMap<>();
+    private ScheduledExecutorService agingExecutor;
+    private ScheduledFuture<?> agingTask;
+    private ScheduledExecutorService flowExecutor;
+    private ForwardingRuleInstaller ruleInstaller;
+    private volatile PacketPipeline pipeline;
+    private volatile ProactiveForwarder proactive;
+    private volatile PathForwarder pathForwarder;
+    private volatile StormControl floodControl;
+    private volatile ArpCache arpCache;
+    private volatile DistributedMacStore macStore;
+    private ExecutorService macStoreExecutor;
+    private long macStoreRefreshedAt;
+    private volatile MacTableJournal journal;
+    private Path journalFile;
+    private ScheduledExecutorService journalExecutor;
+    private Firewall firewall;
+    private MastershipTracker mastership;
+    private final ForwardingMetrics metrics = new ForwardingMetrics();
+    private final MacTableChangeFeed changeFeed = new MacTableChangeFeed(MAC_CHANGE_FEED_SIZE);
+    private final MacLocationIndex macIndex = new MacLocationIndex();
+
+    /* Listeners also registered with the listener registry, so that events are only built for someone. */
+    private final Set<MacTableListener> listeners = ConcurrentHashMap.newKeySet();
+
+    protected Map<DeviceId, MacTable> macTables = new ConcurrentHashMap<>();
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         appId = coreService.registerApplication(L2FWD_APP);
+        cfgService.registerProperties(getClass());
+        eventDispatcher.addSink(MacTableEvent.class, listenerRegistry);
+        netCfgRegistry.registerConfigFactory(macTableConfigFactory);
+        netCfgRegistry.addListener(macTableConfigListener);
+        agingExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/l2fwd", "mac-aging", log));
+        flowExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/l2fwd", "flow-batch", log));
+        journalExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/l2fwd", "mac-snapshot", log));
+        ruleInstaller = new ForwardingRuleInstaller(flowRuleService, flowExecutor, appId,
+                                                    flowBatchSize, flowBatchDelay);
+        firewall = new Firewall(flowRuleService, deviceService, appId);
+        mastership = new MastershipTracker(mastershipService, deviceService,
+                                           clusterService.getLocalNode().id(), this::mastershipLost);
+        readComponentConfiguration(context);
+        flowRuleService.addListener(flowRuleListener);
+        deviceService.addListener(deviceListener);
+        topologyService.addListener(topologyListener);
         packetService.addProcessor(processor, PacketProcessor.director(3));
 
         /*
@@ -88,12 +311,639 @@ public class LayerTwoManager implements LayerTwoService {
     @Deactivate
     protected void deactivate() {
         packetService.removeProcessor(processor);
+        mastership.close();
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+        topologyService.removeListener(topologyListener);
+        deviceService.removeListener(deviceListener);
+        flowRuleService.removeListener(flowRuleListener);
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        journalExecutor.shutdown();
+        if (macStore != null) {
+            macStore.close();
+            macStore = null;
+            macStoreExecutor.shutdown();
+        }
+        ruleInstaller.flush();
+        flowExecutor.shutdown();
+        agingExecutor.shutdownNow();
+        netCfgRegistry.removeListener(macTableConfigListener);
+        netCfgRegistry.unregisterConfigFactory(macTableConfigFactory);
+        eventDispatcher.removeSink(MacTableEvent.class);
+        cfgService.unregisterProperties(getClass(), false);
         log.info(" l2fwd stopped");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        readComponentConfiguration(context);
+    }
+
+    /**
+     * Extracts properties from the component configuration context, applies
+     * the new MAC table defaults and (re)schedules the aging sweeper.
+     *
+     * @param context the component context
+     */
+    private void readComponentConfiguration(ComponentContext context) {
+        Dictionary<?, ?> properties = context != null ? context.getProperties() : null;
+        if (properties != null) {
+            macAgeSeconds = Math.max(1, getIntegerProperty(properties, "macAgeSeconds", DEFAULT_MAC_AGE));
+            macTableCapacity = Math.max(0, getIntegerProperty(properties, "macTableCapacity",
+                                                              DEFAULT_MAC_TABLE_CAPACITY));
+            macAgingInterval = Math.max(10, getIntegerProperty(properties, "macAgingInterval",
+                                                               DEFAULT_MAC_AGING_INTERVAL));
+            macAgingBudget = Math.max(1, getIntegerProperty(properties, "macAgingBudget",
+                                                            DEFAULT_MAC_AGING_BUDGET));
+            flowBatchSize = Math.max(1, getIntegerProperty(properties, "flowBatchSize",
+                                                           DEFAULT_FLOW_BATCH_SIZE));
+            flowBatchDelay = Math.max(0, getIntegerProperty(properties, "flowBatchDelay",
+                                                            DEFAULT_FLOW_BATCH_DELAY));
+            packetPipeline = isPropertyEnabled(properties, "packetPipeline", DEFAULT_PACKET_PIPELINE);
+            int workers = getIntegerProperty(properties, "pipelineWorkers", 0);
+            pipelineWorkers = workers > 0 ? workers : DEFAULT_PIPELINE_WORKERS;
+            pipelineQueueDepth = Math.max(1, getIntegerProperty(properties, "pipelineQueueDepth",
+                                                                DEFAULT_PIPELINE_QUEUE_DEPTH));
+            String policy = get(properties, "pipelineOverflowPolicy");
+            pipelineOverflowPolicy = isNullOrEmpty(policy) ? DEFAULT_PIPELINE_OVERFLOW_POLICY : policy.trim();
+            proactiveForwarding = isPropertyEnabled(properties, "proactiveForwarding",
+                                                    DEFAULT_PROACTIVE_FORWARDING);
+            proactiveAllDevices = isPropertyEnabled(properties, "proactiveAllDevices",
+                                                    DEFAULT_PROACTIVE_ALL_DEVICES);
+            pathForwarding = isPropertyEnabled(properties, "pathForwarding", DEFAULT_PATH_FORWARDING);
+            distributedMacTable = isPropertyEnabled(properties, "distributedMacTable",
+                                                    DEFAULT_DISTRIBUTED_MAC_TABLE);
+            arpProxy = isPropertyEnabled(properties, "arpProxy", DEFAULT_ARP_PROXY);
+            stormControl = isPropertyEnabled(properties, "stormControl", DEFAULT_STORM_CONTROL);
+            floodRateLimit = Math.max(0, getIntegerProperty(properties, "floodRateLimit",
+                                                            DEFAULT_FLOOD_RATE_LIMIT));
+            floodSourceRateLimit = Math.max(0, getIntegerProperty(properties, "floodSourceRateLimit",
+                                                                  DEFAULT_FLOOD_SOURCE_RATE_LIMIT));
+            floodDedupWindow = Math.max(0, getIntegerProperty(properties, "floodDedupWindow",
+                                                              DEFAULT_FLOOD_DEDUP_WINDOW));
+            macSnapshotInterval = Math.max(0, getIntegerProperty(properties, "macSnapshotInterval",
+                                                                 DEFAULT_MAC_SNAPSHOT_INTERVAL));
+            String snapshotFile = get(properties, "macSnapshotFile");
+            macSnapshotFile = isNullOrEmpty(snapshotFile) ? DEFAULT_MAC_SNAPSHOT_FILE : snapshotFile.trim();
+        }
+        log.info("Configured. MAC age is {}s, capacity {}, aging every {}ms expiring at most {} entries",
+                 macAgeSeconds, macTableCapacity, macAgingInterval, macAgingBudget);
+        log.info("Configured. Forwarding rules are batched by {} or after {}ms",
+                 flowBatchSize, flowBatchDelay);
+
+        ruleInstaller.configure(flowBatchSize, flowBatchDelay);
+        configurePipeline();
+        configureProactive();
+        configurePathForwarding();
+        configureStormControl();
+        configureArpProxy();
+        configureMacStore();
+
+        macTables.forEach(this::configureMacTable);
+        configureMacJournal();
+
+        if (agingTask != null) {
+            agingTask.cancel(false);
+        }
+        agingTask = agingExecutor.scheduleWithFixedDelay(this::sweepMacTables, macAgingInterval,
+                                                         macAgingInterval, MILLISECONDS);
+    }
+
+    /**
+     * Starts, restarts or stops the asynchronous packet pipeline to match the
+     * component configuration. A running pipeline is kept, with its queued
+     * packets and statistics, when its settings did not change.
+     */
+    private void configurePipeline() {
+        PacketPipeline old = pipeline;
+        if (packetPipeline) {
+            PacketPipeline.OverflowPolicy policy;
+            try {
+                policy = PacketPipeline.OverflowPolicy.valueOf(pipelineOverflowPolicy.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown pipeline overflow policy {}, dropping instead", pipelineOverflowPolicy);
+                policy = PacketPipeline.OverflowPolicy.DROP;
+            }
+            if (old != null && old.isConfigured(pipelineWorkers, pipelineQueueDepth, policy)) {
+                return;
+            }
+            pipeline = new PacketPipeline(pipelineWorkers, pipelineQueueDepth, policy,
+                                          processor::forward, processor::flood);
+            log.info("Packet pipeline enabled with {} workers, queue depth {}, overflow policy {}",
+                     pipelineWorkers, pipelineQueueDepth, policy);
+        } else {
+            pipeline = null;
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Enables, reconfigures or disables proactive rule installation to match
+     * the component configuration. Rules already installed are left to age
+     * out when it is disabled.
+     */
+    private void configureProactive() {
+        if (!proactiveForwarding) {
+            proactive = null;
+            return;
+        }
+        if (proactive == null) {
+            proactive = new ProactiveForwarder(topologyService, deviceService, ruleInstaller,
+                                               flowExecutor, proactiveAllDevices);
+        } else {
+            proactive.configure(proactiveAllDevices);
+        }
+        log.info("Proactive forwarding enabled on {}",
+                 proactiveAllDevices ? "all devices" : "the learning device");
+    }
+
+    /**
+     * Enables or disables path-wide rule installation to match the component
+     * configuration.
+     */
+    private void configurePathForwarding() {
+        if (!pathForwarding) {
+            pathForwarder = null;
+            return;
+        }
+        if (pathForwarder == null) {
+            pathForwarder = new PathForwarder(topologyService, ruleInstaller);
+        }
+        log.info("Path forwarding enabled");
+    }
+
+    /**
+     * Enables, reconfigures or disables flood storm control to match the
+     * component configuration.
+     */
+    private void configureStormControl() {
+        if (!stormControl) {
+            floodControl = null;
+            log.info("Storm control disabled");
+            return;
+        }
+        if (floodControl == null) {
+            floodControl = new StormControl(topologyService, floodRateLimit,
+                                            floodSourceRateLimit, floodDedupWindow);
+        } else {
+            floodControl.configure(floodRateLimit, floodSourceRateLimit, floodDedupWindow);
+        }
+        log.info("Storm control enabled. Floods are limited to {}/s per device and {}/s per source, "
+                         + "duplicates within {}ms are dropped",
+                 floodRateLimit, floodSourceRateLimit, floodDedupWindow);
+    }
+
+    /**
+     * Enables, reconfigures or disables the ARP proxy to match the component
+     * configuration. Bindings age and are capped like MAC table entries.
+     */
+    private void configureArpProxy() {
+        if (!arpProxy) {
+            arpCache = null;
+            return;
+        }
+        ArpCache cache = arpCache != null ? arpCache : new ArpCache();
+        cache.configure(Duration.ofSeconds(macAgeSeconds), macTableCapacity);
+        arpCache = cache;
+    }
+
+    /**
+     * Opens or closes the distributed MAC store to match the component
+     * configuration. Entries already stored by the cluster are loaded into
+     * the local MAC tables when it opens.
+     */
+    private void configureMacStore() {
+        if (distributedMacTable == (macStore != null)) {
+            return;
+        }
+        if (distributedMacTable) {
+            macStoreExecutor = newSingleThreadExecutor(groupedThreads("onos/l2fwd", "mac-store", log));
+            DistributedMacStore store = new DistributedMacStore(storageService,
+                                                                clusterService.getLocalNode().id(),
+                                                                new InternalMacStoreDelegate(),
+                                                                macStoreExecutor);
+            int loaded = store.load();
+            macStore = store;
+            log.info("Distributed MAC table enabled, {} entries loaded", loaded);
+        } else {
+            macStore.close();
+            macStore = null;
+            macStoreExecutor.shutdown();
+            log.info("Distributed MAC table disabled");
+        }
+    }
+
+    /**
+     * Opens, reschedules or closes the MAC table snapshots to match the
+     * component configuration. The tables kept in the snapshot file are
+     * reloaded when it opens, which makes forwarding warm right after a
+     * restart.
+     */
+    private void configureMacJournal() {
+        Path file = isNullOrEmpty(macSnapshotFile)
+                ? Paths.get(System.getProperty("karaf.data", "."), "l2fwd", "mac-tables.db")
+                : Paths.get(macSnapshotFile);
+        if (journal != null && (macSnapshotInterval == 0 || !file.equals(journalFile))) {
+            journal.close();
+            journal = null;
+            log.info("MAC table snapshots to {} stopped", journalFile);
+        }
+        if (macSnapshotInterval == 0) {
+            return;
+        }
+        if (journal == null) {
+            MacTableJournal opened = new MacTableJournal(file, macTables, journalExecutor);
+            try {
+                long start = System.nanoTime();
+                int restored = opened.load(this::macTable);
+                log.info("Restored {} MAC entries from {} in {}ms", restored, file,
+                         MILLISECONDS.convert(System.nanoTime() - start, NANOSECONDS));
+                indexMacTables();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unable to restore the MAC tables from {}", file, e);
+            }
+            journal = opened;
+            journalFile = file;
+        }
+        journal.start(macSnapshotInterval);
+    }
+
+    /**
+     * Rebuilds the MAC location index from the MAC tables, for entries
+     * learned without going through the index, such as restored ones.
+     */
+    private void indexMacTables() {
+        Topology topology = topologyService.currentTopology();
+        macIndex.clear();
+        macTables.forEach((deviceId, macTable) -> macTable.forEach(
+                (mac, port, lastSeen) -> macIndex.learned(deviceId, mac, port, isEdge(topology, deviceId, port))));
+    }
+
+    /**
+     * Returns whether a port is an edge port, where hosts attach, rather
+     * than a link to another device.
+     *
+     * @param topology current topology
+     * @param deviceId device identifier
+     * @param port     port number
+     * @return true if no infrastructure link ends at the port
+     */
+    private boolean isEdge(Topology topology, DeviceId deviceId, long port) {
+        return !topologyService.isInfrastructure(topology, new ConnectPoint(deviceId, PortNumber.portNumber(port)));
+    }
+
+    /**
+     * Returns whether a source MAC address seen on a port is only passing
+     * through and must not be learned there. Infrastructure ports are not
+     * learned for an address whose edge port is known, when that edge port
+     * is on the same device, as the packet is then a flood of the host
+     * coming back through the network, or when path forwarding reaches the
+     * edge port without learning along the way. A host that really moves is
+     * first learned on the edge port of its new device, which leaves the
+     * previous one behind.
+     *
+     * @param cp  port the address was seen on
+     * @param mac MAC address, as a long
+     * @return true if the address is not to be learned on the port
+     */
+    private boolean isTransit(ConnectPoint cp, long mac) {
+        MacLocationIndex.Location home = macIndex.edge(mac);
+        if (home == null || pathForwarder == null && !home.deviceId().equals(cp.deviceId())) {
+            return false;
+        }
+        return topologyService.isInfrastructure(topologyService.currentTopology(), cp);
+    }
+
+    /**
+     * Programs every device on the path to the edge port a destination MAC
+     * address lives behind, when path forwarding is enabled.
+     *
+     * @param deviceId device that received a frame towards the destination
+     * @param dstMac   destination MAC address, as a long
+     * @return port to send the frame out of, null if the frame is to be
+     * forwarded hop by hop instead
+     */
+    private PortNumber forwardAlongPath(DeviceId deviceId, long dstMac) {
+        PathForwarder paths = pathForwarder;
+        if (paths == null) {
+            return null;
+        }
+        MacLocationIndex.Location home = macIndex.edge(dstMac);
+        return home == null ? null : paths.forward(deviceId, dstMac, home.connectPoint());
+    }
+
+    /**
+     * Discards the MAC table of a device mastered by another instance from
+     * now on, which learns it afresh. The table is kept when the cluster
+     * shares MAC tables, as the local copy then remains up to date.
+     *
+     * @param deviceId device identifier
+     */
+    private void mastershipLost(DeviceId deviceId) {
+        if (macStore == null && macTables.remove(deviceId) != null) {
+            macIndex.removed(deviceId);
+            log.debug("Discarded the MAC table of {}, now mastered elsewhere", deviceId);
+        }
+    }
+
+    /**
+     * Points the rules towards a MAC address that moved to a new port of a
+     * device at that port, and removes those of the other devices along with
+     * their MAC table entry, so that they learn the new location rather than
+     * keep forwarding towards the old one until the rules idle out.
+     *
+     * @param deviceId device the address moved on
+     * @param mac      MAC address, as a long
+     * @param port     port the address is now seen on
+     */
+    private void relocate(DeviceId deviceId, long mac, long port) {
+        Set<DeviceId> invalidated = ruleInstaller.relocate(deviceId, MacAddress.valueOf(mac),
+                                                           PortNumber.portNumber(port));
+        for (DeviceId other : invalidated) {
+            MacTable macTable = macTables.get(other);
+            long stalePort = macTable == null ? MacTable.NO_PORT : macTable.remove(mac);
+            if (stalePort != MacTable.NO_PORT) {
+                macRemoved(other, mac, stalePort, MacTableEvent.Type.REMOVED);
+            }
+        }
+        if (!invalidated.isEmpty()) {
+            log.debug("{} moved to {}/{}, invalidated its rules on {}",
+                      MacAddress.valueOf(mac), deviceId, port, invalidated);
+        }
+    }
+
+    /**
+     * Removes the pre-installed rules of a MAC address that left a MAC table.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address, as a long
+     * @param port     port the address was last seen on
+     * @param type     cause of the removal
+     */
+    private void macRemoved(DeviceId deviceId, long mac, long port, MacTableEvent.Type type) {
+        ProactiveForwarder current = proactive;
+        if (current != null) {
+            current.removed(deviceId, mac, port);
+        }
+        DistributedMacStore store = macStore;
+        if (store != null) {
+            store.remove(deviceId, mac, port);
+        }
+        recordRemoved(deviceId, mac, port, type);
+    }
+
+    /**
+     * Records an address learned for the first time or moved in the location
+     * index, the snapshot journal and the change feed, and notifies the
+     * listeners.
+     *
+     * @param deviceId     device identifier
+     * @param mac          MAC address, as a long
+     * @param port         port the address was learned on
+     * @param previousPort port the address moved from, or {@link MacTable#NO_PORT}
+     * @param now          timestamp in milliseconds since the epoch
+     */
+    private void recordLearned(DeviceId deviceId, long mac, long port, long previousPort, long now) {
+        macIndex.learned(deviceId, mac, port, isEdge(topologyService.currentTopology(), deviceId, port));
+        MacTableJournal changes = journal;
+        if (changes != null) {
+            changes.learned(deviceId, mac, port, now);
+        }
+        MacTableEvent.Type type = previousPort == MacTable.NO_PORT
+                ? MacTableEvent.Type.LEARNED : MacTableEvent.Type.MOVED;
+        dispatch(changeFeed.append(type, deviceId, mac, port, previousPort));
+    }
+
+    /**
+     * Records an address that left a MAC table in the location index, the
+     * snapshot journal and the change feed, and notifies the listeners.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address, as a long
+     * @param port     port the address was last seen on
+     * @param type     cause of the removal
+     */
+    private void recordRemoved(DeviceId deviceId, long mac, long port, MacTableEvent.Type type) {
+        macIndex.removed(deviceId, mac);
+        MacTableJournal changes = journal;
+        if (changes != null) {
+            changes.removed(deviceId, mac);
+        }
+        dispatch(changeFeed.append(type, deviceId, mac, port, MacTable.NO_PORT));
+    }
+
+    /**
+     * Notifies the listeners of a MAC table change, building its event only
+     * if some are registered.
+     *
+     * @param change change recorded in the feed
+     */
+    private void dispatch(MacTableChangeFeed.Change change) {
+        if (!listeners.isEmpty()) {
+            post(change.event());
+        }
+    }
+
+    /**
+     * Applies the age and capacity configured for a device to its MAC table,
+     * falling back to the component defaults.
+     *
+     * @param deviceId device identifier
+     * @param macTable MAC table of the device
+     */
+    private void configureMacTable(DeviceId deviceId, MacTable macTable) {
+        int age = macAgeSeconds;
+        int capacity = macTableCapacity;
+        MacTableConfig config = netCfgRegistry.getConfig(deviceId, MacTableConfig.class);
+        if (config != null) {
+            age = config.macAgeSeconds(age);
+            capacity = config.macTableCapacity(capacity);
+        }
+        macTable.setAge(Duration.ofSeconds(age));
+        macTable.setMaxEntries(capacity);
+    }
+
+    /**
+     * Replicates the refreshes of the locally learned entries to the other
+     * cluster instances, four times per aging period of the fastest aging
+     * table, so that their copies outlive the time refreshes take to travel.
+     *
+     * @param now timestamp in milliseconds since the epoch
+     */
+    private void refreshMacStore(long now) {
+        DistributedMacStore store = macStore;
+        if (store == null || macTables.isEmpty()) {
+            return;
+        }
+        long age = macTables.values().stream().mapToLong(t -> t.age().toMillis()).min().getAsLong();
+        if (now - macStoreRefreshedAt < age / 4) {
+            return;
+        }
+        long since = macStoreRefreshedAt;
+        macStoreRefreshedAt = now;
+        int refreshed = 0;
+        for (Map.Entry<DeviceId, MacTable> entry : macTables.entrySet()) {
+            refreshed += store.refresh(entry.getKey(), entry.getValue(), since);
+        }
+        if (refreshed > 0) {
+            log.debug("Replicated the refreshes of {} MAC entries", refreshed);
+        }
+    }
+
+    /**
+     * Expires stale entries of every MAC table. Each table gives up at most
+     * the configured budget of entries per sweep.
+     */
+    private void sweepMacTables() {
+        try {
+            long now = System.currentTimeMillis();
+            macTables.forEach((deviceId, macTable) -> {
+                int expired = macTable.expire(now, macAgingBudget,
+                        (mac, port, lastSeen) -> macRemoved(deviceId, mac, port, MacTableEvent.Type.EXPIRED));
+                if (expired > 0) {
+                    log.debug("Expired {} MAC entries on {}", expired, deviceId);
+                }
+            });
+            refreshMacStore(now);
+            ArpCache cache = arpCache;
+            if (cache != null) {
+                cache.expire(now, macAgingBudget);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to age MAC tables", e);
+        }
+    }
+
     @Override
     public Map<MacAddress, MacTableEntry> getDeviceMacTable(DeviceId deviceId) {
-        return macTables.get(deviceId);
+        MacTable macTable = macTables.get(deviceId);
+        return macTable == null ? null : new MacTableView(macTable);
+    }
+
+    @Override
+    public MacTableStatistics getMacTableStatistics(DeviceId deviceId) {
+        MacTable macTable = macTables.get(deviceId);
+        return macTable == null ? null : MacTableStatistics.of(macTable);
+    }
+
+    @Override
+    public Set<DeviceId> getMacTableDevices() {
+        return ImmutableSet.copyOf(macTables.keySet());
+    }
+
+    @Override
+    public boolean walkMacTable(DeviceId deviceId, MacTable.Walker walker) {
+        MacTable macTable = macTables.get(deviceId);
+        if (macTable == null) {
+            return false;
+        }
+        macTable.walk(walker);
+        return true;
+    }
+
+    @Override
+    public void addListener(MacTableListener listener) {
+        super.addListener(listener);
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(MacTableListener listener) {
+        listeners.remove(listener);
+        super.removeListener(listener);
+    }
+
+    @Override
+    public Map<DeviceId, MacTableSnapshot> getMacTableSnapshots(Collection<DeviceId> deviceIds) {
+        long sequence = changeFeed.sequence();
+        Map<DeviceId, MacTableSnapshot> snapshots = new LinkedHashMap<>();
+        for (DeviceId deviceId : deviceIds.isEmpty() ? macTables.keySet() : deviceIds) {
+            MacTable macTable = macTables.get(deviceId);
+            if (macTable != null) {
+                snapshots.put(deviceId, MacTableSnapshot.of(deviceId, macTable, sequence));
+            }
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    @Override
+    public List<MacLocation> getMacLocations(MacAddress mac) {
+        long key = mac.toLong();
+        List<MacLocation> locations = new ArrayList<>();
+        for (MacLocationIndex.Location location : macIndex.locations(key)) {
+            MacTable macTable = macTables.get(location.deviceId());
+            long lastSeen = macTable == null ? -1 : macTable.lastSeen(key);
+            if (lastSeen >= 0) {
+                locations.add(new MacLocation(location.connectPoint(), location.isEdge(), lastSeen));
+            }
+        }
+        return locations;
+    }
+
+    @Override
+    public ConnectPoint getHostLocation(MacAddress mac) {
+        MacLocationIndex.Location location = macIndex.edge(mac.toLong());
+        return location == null ? null : location.connectPoint();
+    }
+
+    @Override
+    public long getMacTableSequence() {
+        return changeFeed.sequence();
+    }
+
+    @Override
+    public MacTableChanges getMacTableChanges(long after, int max, long timeout) throws InterruptedException {
+        return changeFeed.since(after, max, timeout);
+    }
+
+    @Override
+    public PacketPipelineStatistics getPacketPipelineStatistics() {
+        PacketPipeline current = pipeline;
+        return current == null ? null : current.statistics();
+    }
+
+    @Override
+    public StormControlStatistics getStormControlStatistics() {
+        StormControl current = floodControl;
+        return current == null ? null : current.statistics();
+    }
+
+    @Override
+    public ProactiveForwardingStatistics getProactiveForwardingStatistics() {
+        ProactiveForwarder current = proactive;
+        return current == null ? null : current.statistics();
+    }
+
+    @Override
+    public ForwardingRuleStatistics getForwardingRuleStatistics() {
+        return ruleInstaller.statistics();
+    }
+
+    @Override
+    public ForwardingStatistics getForwardingStatistics() {
+        return metrics.total();
+    }
+
+    @Override
+    public Map<DeviceId, ForwardingStatistics> getDeviceForwardingStatistics() {
+        return metrics.perDevice();
+    }
+
+    @Override
+    public ForwardingStatistics getForwardingStatistics(DeviceId deviceId) {
+        return metrics.statistics(deviceId);
+    }
+
+    @Override
+    public void resetForwardingStatistics() {
+        metrics.reset();
     }
 
     @Override
@@ -101,42 +951,38 @@ public class LayerTwoManager implements LayerTwoService {
         /**
          * Blocking flows from srcIP(ANY PORT) --> dstIP(dst port)
          */
-        Iterable<Device> devices = deviceService.getDevices();
-        for (Device d : devices) {
-            /* Insert Firewall flow rule on every devices */
-
-            // FlowRule fr = DefaultFlowRule.builder()
-            //         .withSelector(DefaultTrafficSelector.builder()
-            //                 .matchEthType(TYPE_IPV4)
-            //                 .matchIPProtocol(IPv4.PROTOCOL_TCP)
-            //                 .matchIPSrc(firstIpAddress.toIpPrefix())
-            //                 .matchIPDst(secondIpAddress.toIpPrefix())
-            //                 .matchTcpDst(TpPort.tpPort((int) portNumber.toLong()))
-            //                 .build())
-            //         .withTreatment(DefaultTrafficTreatment.builder().drop().build())
-            //         .forDevice(d.id()).withPriority(PacketPriority.CONTROL.priorityValue())
-            //         .makeTemporary(30)
-            //         .fromApp(appId).build();
-            // log.info(" On device {} install firewall rule: {}", d.id(), fr);
-            // flowRuleService.applyFlowRules(fr);
-            FlowRule fr = DefaultFlowRule.builder()
-                     .withSelector(DefaultTrafficSelector.builder()
-                             .matchEthType(TYPE_IPV4)
-                             .matchIPProtocol(IPv4.PROTOCOL_TCP)
-                             .matchIPSrc(srcIpAddress.toIpPrefix())
-                             .matchIPDst(dstIpAddress.toIpPrefix())
-                             .matchTcpDst(TpPort.tpPort((int) dstPort.toLong()))
-                             .build())
-                     .withTreatment(DefaultTrafficTreatment.builder().drop().build())
-                     .forDevice(d.id()).withPriority(PacketPriority.CONTROL.priorityValue())
-                     .makePermanent()
-                     .fromApp(appId).build();
-            log.info(" On device {} install firewall rule: {}", d.id(), fr);
-            flowRuleService.applyFlowRules(fr);
-        }
-        return true;
+        FirewallRule rule = FirewallRule.builder()
+                .src(srcIpAddress.toIpPrefix())
+                .dst(dstIpAddress.toIpPrefix())
+                .protocol(IPv4.PROTOCOL_TCP)
+                .dstPorts(FirewallRule.PortRange.of((int) dstPort.toLong(), (int) dstPort.toLong()))
+                .build();
+        return !addFirewallRules(Collections.singleton(rule)).isEmpty();
+    }
+
+    @Override
+    public Set<FirewallRule> addFirewallRules(Collection<FirewallRule> rules) {
+        Set<FirewallRule> added = firewall.add(rules);
+        log.info(" Added {} firewall rules, {} already installed", added.size(), rules.size() - added.size());
+        return added;
+    }
+
+    @Override
+    public Set<FirewallRule> removeFirewallRules(Collection<FirewallRule> rules) {
+        Set<FirewallRule> removed = firewall.remove(rules);
+        log.info(" Removed {} firewall rules", removed.size());
+        return removed;
     }
 
+    @Override
+    public Set<FirewallRule> getFirewallRules() {
+        return firewall.rules();
+    }
+
+    @Override
+    public Set<FirewallRule> getOverlappingFirewallRules(FirewallRule rule) {
+        return firewall.overlapping(rule);
+    }
 
     /**
      * Packet processor responsible for forwarding packets along their paths.
@@ -144,109 +990,199 @@ public class LayerTwoManager implements LayerTwoService {
     private class LayerTwoPacketProcessor implements PacketProcessor {
 
         /**
+         * Skips the packet unless this instance is master of its device.
          * Learns the source port associated with the packet's DeviceId if it has not
          * already been learned.
-         * Calls forward() to process and send the packet.
+         * Calls forward() to process and send the packet, or queues it for a
+         * pipeline worker to do so when the packet pipeline is enabled.
          *
          * @param pc PacketContext object containing packet info
          */
         @Override
         public void process(PacketContext pc) {
+            /* Leave the packets of devices mastered elsewhere to their master */
+            DeviceId deviceId = pc.inPacket().receivedFrom().deviceId();
+            if (!mastership.isMaster(deviceId)) {
+                metrics.device(deviceId).notMaster.increment();
+                return;
+            }
+
             /* Record source information(srcIP, input port) in MAC table */
             initMacTable(pc.inPacket().receivedFrom());
+            metrics.device(deviceId).packets.increment();
+
+            PacketPipeline current = pipeline;
+            if (current != null) {
+                ByteBuffer frame = pc.inPacket().unparsed();
+                if (EthernetHeader.isComplete(frame)) {
+                    short etherType = EthernetHeader.etherType(frame);
+                    if (etherType == Ethernet.TYPE_IPV4 || etherType == Ethernet.TYPE_ARP) {
+                        current.submit(pc);
+                    }
+                }
+                return;
+            }
 
-            /*
-             * This is the call to the forward() method you will be creating. When
-             * you are ready to test it, uncomment the line below, and comment out the
-             * flood call above.
-             */
             forward(pc);
         }
 
         /**
-         * Flood a packet. Floods packet out of all switch ports.
+         * Flood a packet. Floods packet out of all switch ports, unless storm
+         * control suppresses it, in which case the packet is dropped.
          *
          * @param pc the PacketContext object passed through from activate() method
          */
         public void flood(PacketContext pc) {
+            StormControl control = floodControl;
+            if (control != null) {
+                InboundPacket pkt = pc.inPacket();
+                ByteBuffer frame = pkt.unparsed();
+                StormControl.Verdict verdict = control.check(pkt.receivedFrom(),
+                                                             EthernetHeader.srcMac(frame), frame);
+                if (verdict != StormControl.Verdict.FLOOD) {
+                    pc.block();
+                    return;
+                }
+            }
             pc.treatmentBuilder().setOutput(PortNumber.FLOOD);
             pc.send();
         }
 
         /**
          * Forward a packet.
-         * 
-         * Ensures packet is of required type. Obtain the PortNumber associated with the
-         * inPackets DeviceId.
-         * If this port has previously been learned (in initMacTable method) build a
-         * flow using the packet's
-         * out port, treatment, destination, and other properties. Send the flow to the
-         * learned out port.
-         * Otherwise, flood packet to all ports if out port is not learned.
+         * <p>
+         * Learns the input port of the source MAC address, then sends the
+         * packet out of the port learned for its destination and installs
+         * the matching forwarding rule, or floods it if the destination is
+         * not known yet.
          *
          * @param pc the PacketContext object passed through from activate() method
          */
         public void forward(PacketContext pc) {
 
             /*
-             * Ensures the type of packet being processed is only of type IPV4 (not LLDP or BDDP). 
-             * If it is not, return and do nothing with the packet. forward() can only process IPV4 packets.
+             * Ensures the type of packet being processed is only of type IPV4 or ARP (not LLDP or BDDP). 
+             * If it is not, return and do nothing with the packet. forward() can only process IPV4 and ARP packets.
+             * The header fields are read from the frame itself; only ARP packets get parsed.
              */
-            Short type = pc.inPacket().parsed().getEtherType();
-            if (type != Ethernet.TYPE_IPV4) {
+            ByteBuffer frame = pc.inPacket().unparsed();
+            if (!EthernetHeader.isComplete(frame)) {
+                return;
+            }
+            short etherType = EthernetHeader.etherType(frame);
+            if (etherType != Ethernet.TYPE_IPV4 && etherType != Ethernet.TYPE_ARP) {
                 return;
             }
 
-            /*
-             * [MAIN PROCESSING]
-             * 
-             * Learn the destination, source, and output port of the packet using a ConnectPoint and the associated MAC table. 
-             * If there is a known port associated with the packet's destination MAC Address, the output port will not be null.
-             */
+            long start = System.nanoTime();
             ConnectPoint cp = pc.inPacket().receivedFrom();
-            Map<MacAddress, MacTableEntry> macTable = macTables.get(cp.deviceId());
-            MacAddress srcMac = pc.inPacket().parsed().getSourceMAC();
-            MacAddress dstMac = pc.inPacket().parsed().getDestinationMAC();
+            ForwardingMetrics.Counters counters = metrics.device(cp.deviceId());
+            MacTable macTable = macTables.get(cp.deviceId());
+            if (macTable == null) {
+                /* Mastership was lost while the packet waited in the pipeline; the new master handles the device */
+                counters.notMaster.increment();
+                return;
+            }
+            long dstMac = EthernetHeader.dstMac(frame);
+
+            /* Learn (or refresh in place) the input port of the source MAC address */
+            long srcMac = EthernetHeader.srcMac(frame);
+            long inPort = cp.port().toLong();
+            long now = System.currentTimeMillis();
+            long previousPort = inPort;
+            if (macTable.lookup(srcMac) == inPort || !isTransit(cp, srcMac)) {
+                previousPort = macTable.learn(srcMac, inPort, now);
+            }
+            boolean changed = previousPort != inPort;
+            if (previousPort == MacTable.NO_PORT) {
+                counters.learned.increment();
+            } else if (changed) {
+                counters.moved.increment();
+                relocate(cp.deviceId(), srcMac, inPort);
+            }
 
-            /* Insert a MAC table entry with time duration for input IP address */
-            MacTableEntry macTableEntry = new MacTableEntry(cp.port(), Duration.ofSeconds(60));
-            macTable.put(srcMac, macTableEntry);
+            if (changed) {
+                /* New or moved addresses get their rules ahead of the first packet towards them */
+                ProactiveForwarder current = proactive;
+                if (current != null) {
+                    current.learned(cp.deviceId(), srcMac, inPort);
+                }
+                /* Only changes are written here, refreshes go out in bulk */
+                DistributedMacStore store = macStore;
+                if (store != null) {
+                    store.put(cp.deviceId(), srcMac, inPort, now);
+                }
+                recordLearned(cp.deviceId(), srcMac, inPort, previousPort, now);
+            }
 
-            PortNumber outPort = null;
-            if (!macTable.containsKey(dstMac)) {
+            /* ARP requests for a known address are answered here rather than flooded */
+            if (etherType == Ethernet.TYPE_ARP && proxyArp(pc, pc.inPacket().parsed(), now)) {
+                counters.arpReplied.increment();
+                metrics.processed(counters, System.nanoTime() - start);
+                return;
+            }
+
+            /* With the edge port of the destination known, the whole path is programmed at once */
+            PortNumber pathPort = forwardAlongPath(cp.deviceId(), dstMac);
+            if (pathPort != null) {
+                counters.forwarded.increment();
+                pc.treatmentBuilder().setOutput(pathPort);
+                pc.send();
+                metrics.processed(counters, System.nanoTime() - start);
+                return;
+            }
+
+            long learnedPort = macTable.lookup(dstMac);
+            if (learnedPort == MacTable.NO_PORT) {
+                counters.flooded.increment();
                 flood(pc);
             } else {
-                outPort = macTable.get(dstMac).getPortNumber();
+                counters.forwarded.increment();
+                PortNumber outPort = PortNumber.portNumber(learnedPort);
                 pc.treatmentBuilder().setOutput(outPort);
-                FlowRule fr = DefaultFlowRule.builder()
-                           .withSelector(DefaultTrafficSelector.builder().matchEthDst(dstMac).build())
-                           .withTreatment(DefaultTrafficTreatment.builder().setOutput(outPort).build())
-                           .forDevice(cp.deviceId()).withPriority(PacketPriority.REACTIVE.priorityValue())
-                           .makeTemporary(60)
-                           .fromApp(appId).build();
-                flowRuleService.applyFlowRules(fr);
+                /* Suppressed if the same rule is already installed or waiting in a batch */
+                ruleInstaller.install(cp.deviceId(), dstMac, outPort);
                 pc.send();
             }
+            metrics.processed(counters, System.nanoTime() - start);
+        }
 
-            /** 
-             * Lookup for destination host in MAC table
-             * 
-             * If lookup succeeded, get the port via which we should forward this packet.
-             *      Set pc's out port to the packet's learned output port.
-             *      Construct a FlowRule using a source, destination, treatment and other properties. 
-             *      Insert the FlowRule to the designated output port.
-             * Otherwise, we haven't learnt the output port yet. We need to flood this packet to all the ports.
-             */
-
-            /**
-             * * HINT: install FlowRule using the following method(more detailed API usage can be found in ONOS website)
-             * FlowRule fr = DefaultFlowRule.builder()
-             *              .withSelector(DefaultTrafficSelector.builder().matchEthDst(IP_ADDR).build())
-             *              .withTreatment(DefaultTrafficTreatment.builder().setOutput(PORT_NUM).build())
-             *              .forDevice(cp.deviceId()).withPriority(PacketPriority.REACTIVE.priorityValue())
-             *              .fromApp(appId).build();
-             */
-             
+        /**
+         * Learns the IPv4 to MAC binding of the sender of an ARP packet and,
+         * if the packet is a request for an address whose binding is known,
+         * sends the reply back through the input port and drops the request.
+         *
+         * @param pc     the PacketContext of the ARP packet
+         * @param ethPkt the parsed ARP packet
+         * @param now    timestamp in milliseconds since the epoch
+         * @return true if the request was answered
+         */
+        private boolean proxyArp(PacketContext pc, Ethernet ethPkt, long now) {
+            ArpCache cache = arpCache;
+            if (cache == null || !(ethPkt.getPayload() instanceof ARP)) {
+                return false;
+            }
+            ARP arp = (ARP) ethPkt.getPayload();
+            int senderIp = Ip4Address.valueOf(arp.getSenderProtocolAddress()).toInt();
+            /* Probes for duplicate addresses come from 0.0.0.0 and bind nothing */
+            if (senderIp != 0) {
+                cache.learn(senderIp, MacAddress.valueOf(arp.getSenderHardwareAddress()).toLong(), now);
+            }
+            if (arp.getOpCode() != ARP.OP_REQUEST) {
+                return false;
+            }
+            int targetIp = Ip4Address.valueOf(arp.getTargetProtocolAddress()).toInt();
+            long targetMac = targetIp == senderIp ? ArpCache.NO_MAC : cache.lookup(targetIp);
+            if (targetMac == ArpCache.NO_MAC) {
+                return false;
+            }
+            Ethernet reply = ARP.buildArpReply(Ip4Address.valueOf(targetIp), MacAddress.valueOf(targetMac), ethPkt);
+            ConnectPoint cp = pc.inPacket().receivedFrom();
+            TrafficTreatment treatment = DefaultTrafficTreatment.builder().setOutput(cp.port()).build();
+            packetService.emit(new DefaultOutboundPacket(cp.deviceId(), treatment,
+                                                         ByteBuffer.wrap(reply.serialize())));
+            pc.block();
+            return true;
         }
 
         /**
@@ -256,8 +1192,153 @@ public class LayerTwoManager implements LayerTwoService {
          * @param cp ConnectPoint containing the required DeviceId for the map
          */
         private void initMacTable(ConnectPoint cp) {
-            macTables.putIfAbsent(cp.deviceId(), Maps.newConcurrentMap());
+            if (!macTables.containsKey(cp.deviceId())) {
+                macTable(cp.deviceId());
+            }
+        }
+
+    }
+
+    /**
+     * Returns the MAC table of a device, creating it on first use.
+     *
+     * @param deviceId device identifier
+     * @return MAC table of the device
+     */
+    private MacTable macTable(DeviceId deviceId) {
+        return macTables.computeIfAbsent(deviceId, id -> {
+            MacTable macTable = new MacTable();
+            configureMacTable(id, macTable);
+            macTable.setEvictionListener(
+                    (mac, port, lastSeen) -> macRemoved(id, mac, port, MacTableEvent.Type.REMOVED));
+            return macTable;
+        });
+    }
+
+    /**
+     * Applies the MAC table changes made by other cluster instances to the
+     * local tables, skipping those already known locally. Copies are aged
+     * by the time their writer last saw them.
+     */
+    private class InternalMacStoreDelegate implements DistributedMacStore.Delegate {
+
+        @Override
+        public void learned(DeviceId deviceId, long mac, long port, long lastSeen) {
+            MacTable macTable = macTable(deviceId);
+            if (macTable.lookup(mac) != port) {
+                long previousPort = macTable.learn(mac, port, lastSeen);
+                recordLearned(deviceId, mac, port, previousPort, lastSeen);
+            } else if (macTable.lastSeen(mac) < lastSeen) {
+                /* A refresh replicated by the writer, which stays local like ours */
+                macTable.learn(mac, port, lastSeen);
+            }
+        }
+
+        @Override
+        public void removed(DeviceId deviceId, long mac, Long port) {
+            MacTable macTable = macTables.get(deviceId);
+            if (macTable != null && (port == null || macTable.lookup(mac) == port)) {
+                long removedPort = macTable.remove(mac);
+                if (removedPort != MacTable.NO_PORT) {
+                    recordRemoved(deviceId, mac, removedPort, MacTableEvent.Type.REMOVED);
+                }
+            }
         }
 
     }
+
+    /**
+     * Forgets forwarding rules removed from the switches so they get reinstalled.
+     */
+    private class InternalFlowRuleListener implements FlowRuleListener {
+
+        @Override
+        public boolean isRelevant(FlowRuleEvent event) {
+            return event.type() == FlowRuleEvent.Type.RULE_REMOVED
+                    && event.subject().appId() == appId.id();
+        }
+
+        @Override
+        public void event(FlowRuleEvent event) {
+            ruleInstaller.forget(event.subject());
+        }
+    }
+
+    /**
+     * Installs the missing firewall rules on devices that connect.
+     */
+    private class InternalDeviceListener implements DeviceListener {
+
+        @Override
+        public boolean isRelevant(DeviceEvent event) {
+            return event.type() == DeviceEvent.Type.DEVICE_ADDED
+                    || event.type() == DeviceEvent.Type.DEVICE_AVAILABILITY_CHANGED;
+        }
+
+        @Override
+        public void event(DeviceEvent event) {
+            DeviceId deviceId = event.subject().id();
+            if (!deviceService.isAvailable(deviceId) || !pendingSyncs.add(deviceId)) {
+                return;
+            }
+            /* Several events of a device in a row result in a single sync */
+            flowExecutor.execute(() -> {
+                pendingSyncs.remove(deviceId);
+                try {
+                    firewall.sync(deviceId);
+                } catch (Exception e) {
+                    log.warn("Unable to sync firewall rules of {}", deviceId, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the cached paths when the topology changes, and re-classifies
+     * the ports MAC addresses were learned on as edge or infrastructure
+     * ports when links come and go.
+     */
+    private class InternalTopologyListener implements TopologyListener {
+
+        @Override
+        public void event(TopologyEvent event) {
+            PathForwarder paths = pathForwarder;
+            if (paths != null) {
+                paths.invalidate();
+            }
+            if (event.reasons() != null && event.reasons().stream().anyMatch(r -> r instanceof LinkEvent)) {
+                Topology topology = event.subject();
+                agingExecutor.execute(() -> macIndex.reclassify(
+                        cp -> !topologyService.isInfrastructure(topology, cp)));
+            }
+        }
+    }
+
+    /**
+     * Re-applies per-device MAC table settings when their configuration changes.
+     */
+    private class InternalConfigListener implements NetworkConfigListener {
+
+        @Override
+        public boolean isRelevant(NetworkConfigEvent event) {
+            return event.configClass().equals(MacTableConfig.class);
+        }
+
+        @Override
+        public void event(NetworkConfigEvent event) {
+            switch (event.type()) {
+                case CONFIG_ADDED:
+                case CONFIG_UPDATED:
+                case CONFIG_REMOVED:
+                    DeviceId deviceId = (DeviceId) event.subject();
+                    MacTable macTable = macTables.get(deviceId);
+                    if (macTable != null) {
+                        configureMacTable(deviceId, macTable);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
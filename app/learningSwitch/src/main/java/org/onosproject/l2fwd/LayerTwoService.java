@@ -18,16 +18,196 @@ package org.onosproject.l2fwd;
 
 import org.onlab.packet.MacAddress;
 import org.onlab.packet.IpAddress;
+import org.onosproject.event.ListenerService;
+import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Component for the LayerTwoForward application.
  */
-public interface LayerTwoService {
+public interface LayerTwoService extends ListenerService<MacTableEvent, MacTableListener> {
     Map<MacAddress, MacTableEntry> getDeviceMacTable(DeviceId deviceId);
 
+    /**
+     * Returns size, limits and aging counters of the MAC table of a device.
+     *
+     * @param deviceId device identifier
+     * @return MAC table statistics, null if the device has no MAC table
+     */
+    MacTableStatistics getMacTableStatistics(DeviceId deviceId);
+
+    /**
+     * Returns the devices that have a MAC table.
+     *
+     * @return device identifiers
+     */
+    Set<DeviceId> getMacTableDevices();
+
+    /**
+     * Walks the MAC table of a device without copying it, until the walker
+     * stops. Learning goes on during the walk, see
+     * {@link MacTable#walk(MacTable.Walker)}.
+     *
+     * @param deviceId device identifier
+     * @param walker   entry walker
+     * @return false if the device has no MAC table
+     */
+    boolean walkMacTable(DeviceId deviceId, MacTable.Walker walker);
+
+    /**
+     * Returns immutable copies of the MAC tables of several devices. Each
+     * records the sequence number of the last change before it was taken,
+     * from which the change feed can be followed.
+     *
+     * @param deviceIds device identifiers, every device with a MAC table if empty
+     * @return MAC table snapshots by device, devices without a MAC table left out
+     */
+    Map<DeviceId, MacTableSnapshot> getMacTableSnapshots(Collection<DeviceId> deviceIds);
+
+    /**
+     * Returns the ports a MAC address has been learned on, on every device.
+     *
+     * @param mac MAC address
+     * @return locations of the address, empty if no device learned it
+     */
+    List<MacLocation> getMacLocations(MacAddress mac);
+
+    /**
+     * Returns the edge port a MAC address was last learned on, which is
+     * where the host using it is attached.
+     *
+     * @param mac MAC address
+     * @return location of the host, null if the address was not learned on
+     * any edge port
+     */
+    ConnectPoint getHostLocation(MacAddress mac);
+
+    /**
+     * Returns the sequence number of the last MAC table change.
+     *
+     * @return sequence number, 0 if nothing changed yet
+     */
+    long getMacTableSequence();
+
+    /**
+     * Returns the MAC table changes following a sequence number, waiting
+     * for one if there is none yet. Only the most recent changes are kept;
+     * the result tells a reader that fell further behind to start over from
+     * a snapshot.
+     *
+     * @param after   sequence number of the last change read
+     * @param max     maximum number of changes returned
+     * @param timeout milliseconds to wait for a change
+     * @return changes, possibly none if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    MacTableChanges getMacTableChanges(long after, int max, long timeout) throws InterruptedException;
+
+    /**
+     * Returns queue and latency statistics of the asynchronous packet pipeline.
+     *
+     * @return pipeline statistics, null if the pipeline is disabled
+     */
+    PacketPipelineStatistics getPacketPipelineStatistics();
+
+    /**
+     * Returns the statistics of flood storm control.
+     *
+     * @return storm control statistics, null if storm control is disabled
+     */
+    StormControlStatistics getStormControlStatistics();
+
+    /**
+     * Returns the rule counters of proactive forwarding.
+     *
+     * @return proactive forwarding statistics, null if proactive forwarding
+     * is disabled
+     */
+    ProactiveForwardingStatistics getProactiveForwardingStatistics();
+
+    /**
+     * Returns the counters of the forwarding rule installer.
+     *
+     * @return forwarding rule statistics
+     */
+    ForwardingRuleStatistics getForwardingRuleStatistics();
+
+    /**
+     * Returns packet-in counters and forwarding latency summed over all
+     * devices.
+     *
+     * @return forwarding statistics
+     */
+    ForwardingStatistics getForwardingStatistics();
+
+    /**
+     * Returns packet-in counters of each device that sent packets.
+     *
+     * @return forwarding statistics by device, without latency distribution
+     */
+    Map<DeviceId, ForwardingStatistics> getDeviceForwardingStatistics();
+
+    /**
+     * Returns packet-in counters of a device.
+     *
+     * @param deviceId device identifier
+     * @return forwarding statistics, null if the device sent no packet
+     */
+    ForwardingStatistics getForwardingStatistics(DeviceId deviceId);
+
+    /**
+     * Clears the packet-in counters and the latency distribution.
+     */
+    void resetForwardingStatistics();
+
+    /**
+     * Blocks TCP traffic from one host to a port of another host on every
+     * device.
+     *
+     * @param srcIpAddress source host address
+     * @param dstIpAddress destination host address
+     * @param dstPort      destination TCP port
+     * @return true if the rule was added, false if it was already installed
+     */
     boolean installFirewallRule(IpAddress srcIpAddress, IpAddress dstIpAddress, PortNumber dstPort);
+
+    /**
+     * Adds firewall rules and installs them on every device in one batch.
+     * Rules already installed are skipped.
+     *
+     * @param rules firewall rules
+     * @return rules actually added
+     */
+    Set<FirewallRule> addFirewallRules(Collection<FirewallRule> rules);
+
+    /**
+     * Removes firewall rules from every device in one batch. Rules not
+     * installed are skipped.
+     *
+     * @param rules firewall rules
+     * @return rules actually removed
+     */
+    Set<FirewallRule> removeFirewallRules(Collection<FirewallRule> rules);
+
+    /**
+     * Returns the installed firewall rules in the order they were added.
+     *
+     * @return firewall rules
+     */
+    Set<FirewallRule> getFirewallRules();
+
+    /**
+     * Returns the installed firewall rules matching some of the traffic the
+     * given rule matches.
+     *
+     * @param rule firewall rule, installed or not
+     * @return overlapping rules, the rule itself excluded
+     */
+    Set<FirewallRule> getOverlappingFirewallRules(FirewallRule rule);
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.net.ConnectPoint;
+
+/**
+ * Port a MAC address has been learned on, as seen by one device.
+ */
+public final class MacLocation {
+
+    private final ConnectPoint connectPoint;
+    private final boolean edge;
+    private final long lastSeen;
+
+    /**
+     * Creates a MAC address location.
+     *
+     * @param connectPoint device and port the address was learned on
+     * @param edge         whether the port is an edge port rather than a
+     *                     link to another device
+     * @param lastSeen     last-seen timestamp in milliseconds since the epoch
+     */
+    public MacLocation(ConnectPoint connectPoint, boolean edge, long lastSeen) {
+        this.connectPoint = connectPoint;
+        this.edge = edge;
+        this.lastSeen = lastSeen;
+    }
+
+    public ConnectPoint connectPoint() {
+        return connectPoint;
+    }
+
+    public boolean isEdge() {
+        return edge;
+    }
+
+    public long lastSeen() {
+        return lastSeen;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("connectPoint", connectPoint)
+                .add("edge", edge)
+                .add("lastSeen", lastSeen)
+                .toString();
+    }
+}
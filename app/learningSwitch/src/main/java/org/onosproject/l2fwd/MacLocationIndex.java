@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * Reverse index of the MAC tables, from a MAC address to the ports it has
+ * been learned on across all devices.
+ * <p>
+ * Each address maps to an immutable record of its locations, replaced as a
+ * whole when one changes, so that readers never lock. Locations are told
+ * apart as edge ports, where hosts attach, and infrastructure ports, where
+ * an address is merely learned in transit; the record points at the edge
+ * location learned last, which is where the host is. The index follows
+ * the changes of the tables, not their refreshes, and is reclassified when
+ * links come and go.
+ */
+final class MacLocationIndex {
+
+    private static final Location[] NONE = new Location[0];
+
+    private final ConcurrentMap<Long, Locations> index = new ConcurrentHashMap<>();
+
+    /**
+     * Records the port an address was learned or moved to on a device.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     * @param port     learned port number
+     * @param edge     whether the port is an edge port
+     */
+    void learned(DeviceId deviceId, long mac, long port, boolean edge) {
+        Location location = new Location(deviceId, port, edge);
+        index.compute(mac, (k, locations) -> (locations != null ? locations : Locations.EMPTY).with(location));
+    }
+
+    /**
+     * Forgets the location of an address on a device.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     */
+    void removed(DeviceId deviceId, long mac) {
+        index.computeIfPresent(mac, (k, locations) -> locations.without(deviceId::equals));
+    }
+
+    /**
+     * Forgets every address learned on a device.
+     *
+     * @param deviceId device identifier
+     */
+    void removed(DeviceId deviceId) {
+        for (Long mac : index.keySet()) {
+            index.computeIfPresent(mac, (k, locations) -> locations.without(deviceId::equals));
+        }
+    }
+
+    /**
+     * Re-evaluates whether the ports addresses were learned on are edge
+     * ports, typically after links changed.
+     *
+     * @param isEdge tells whether a port is an edge port
+     */
+    void reclassify(Predicate<ConnectPoint> isEdge) {
+        index.replaceAll((k, locations) -> locations.reclassify(isEdge));
+    }
+
+    /**
+     * Returns the edge port a host was learned on last.
+     *
+     * @param mac 48-bit MAC address
+     * @return edge location, null if the address is unknown or only learned
+     * on infrastructure ports
+     */
+    Location edge(long mac) {
+        Locations locations = index.get(mac);
+        return locations != null ? locations.edge : null;
+    }
+
+    /**
+     * Returns every location of an address.
+     *
+     * @param mac 48-bit MAC address
+     * @return locations, empty if the address is unknown
+     */
+    Location[] locations(long mac) {
+        Locations locations = index.get(mac);
+        return locations != null ? locations.all.clone() : NONE;
+    }
+
+    /**
+     * Returns the number of addresses indexed.
+     *
+     * @return address count
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Forgets every address.
+     */
+    void clear() {
+        index.clear();
+    }
+
+    /**
+     * Port an address was learned on by a device.
+     */
+    static final class Location {
+
+        private final DeviceId deviceId;
+        private final long port;
+        private final boolean edge;
+        private final ConnectPoint connectPoint;
+
+        private Location(DeviceId deviceId, long port, boolean edge) {
+            this(deviceId, port, edge, new ConnectPoint(deviceId, PortNumber.portNumber(port)));
+        }
+
+        private Location(DeviceId deviceId, long port, boolean edge, ConnectPoint connectPoint) {
+            this.deviceId = deviceId;
+            this.port = port;
+            this.edge = edge;
+            this.connectPoint = connectPoint;
+        }
+
+        DeviceId deviceId() {
+            return deviceId;
+        }
+
+        long port() {
+            return port;
+        }
+
+        boolean isEdge() {
+            return edge;
+        }
+
+        ConnectPoint connectPoint() {
+            return connectPoint;
+        }
+
+        private Location withEdge(boolean edge) {
+            return edge == this.edge ? this : new Location(deviceId, port, edge, connectPoint);
+        }
+    }
+
+    /* Immutable locations of an address, one per device. */
+    private static final class Locations {
+
+        static final Locations EMPTY = new Locations(NONE, null);
+
+        final Location[] all;
+        final Location edge;
+
+        private Locations(Location[] all, Location edge) {
+            this.all = all;
+            this.edge = edge;
+        }
+
+        Locations with(Location location) {
+            Location[] next = null;
+            for (int i = 0; i < all.length; i++) {
+                if (all[i].deviceId.equals(location.deviceId)) {
+                    next = all.clone();
+                    next[i] = location;
+                    break;
+                }
+            }
+            if (next == null) {
+                next = Arrays.copyOf(all, all.length + 1);
+                next[all.length] = location;
+            }
+            /* A new edge location is where the host went; transit learnings do not move it */
+            Location nextEdge = location.edge ? location
+                    : edge != null && edge.deviceId.equals(location.deviceId) ? null : edge;
+            return new Locations(next, nextEdge != null ? nextEdge : anyEdge(next));
+        }
+
+        Locations without(Predicate<DeviceId> device) {
+            int kept = 0;
+            Location[] next = new Location[all.length];
+            for (Location location : all) {
+                if (!device.test(location.deviceId)) {
+                    next[kept++] = location;
+                }
+            }
+            if (kept == all.length) {
+                return this;
+            }
+            if (kept == 0) {
+                return null;
+            }
+            next = Arrays.copyOf(next, kept);
+            Location nextEdge = edge != null && !device.test(edge.deviceId) ? edge : anyEdge(next);
+            return new Locations(next, nextEdge);
+        }
+
+        Locations reclassify(Predicate<ConnectPoint> isEdge) {
+            Location[] next = all.clone();
+            boolean changed = false;
+            Location nextEdge = edge;
+            for (int i = 0; i < next.length; i++) {
+                next[i] = all[i].withEdge(isEdge.test(all[i].connectPoint()));
+                if (next[i] != all[i]) {
+                    changed = true;
+                    if (all[i] == edge) {
+                        nextEdge = next[i].edge ? next[i] : null;
+                    }
+                }
+            }
+            if (!changed) {
+                return this;
+            }
+            return new Locations(next, nextEdge != null ? nextEdge : anyEdge(next));
+        }
+
+        private static Location anyEdge(Location[] locations) {
+            for (Location location : locations) {
+                if (location.edge) {
+                    return location;
+                }
+            }
+            return null;
+        }
+    }
+}
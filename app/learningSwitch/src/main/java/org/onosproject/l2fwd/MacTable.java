@@ -0,0 +1,596 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * MAC learning table of a single device.
+ * <p>
+ * MAC addresses are keyed by their 48-bit value held in a primitive long and
+ * stored in open-addressed (linear probing) arrays next to the learned port
+ * number and the last-seen timestamp. Learning an address that is already
+ * present updates its slot in place, so the packet-in path neither boxes keys
+ * nor allocates entries. Lookups are optimistic and lock-free unless they race
+ * with a writer.
+ * <p>
+ * Entries are also threaded on an intrusive least-recently-seen list, so that
+ * aging only ever looks at the entries that actually expire and a table at
+ * its capacity limit evicts the least recently seen address in constant time.
+ */
+public final class MacTable {
+
+    /**
+     * Port value returned when a MAC address has not been learned.
+     */
+    public static final long NO_PORT = -1L;
+
+    /* A 48-bit MAC address can never be all ones in 64 bits. */
+    private static final long EMPTY = -1L;
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int WALK_CHUNK = 256;
+    private static final Duration DEFAULT_AGE = Duration.ofSeconds(60);
+
+    private final StampedLock lock = new StampedLock();
+
+    private volatile Slots slots;
+    private int size;
+    private volatile Duration age = DEFAULT_AGE;
+    private volatile int maxEntries;
+    private volatile Visitor evictionListener;
+
+    private long expired;
+    private long evicted;
+
+    /**
+     * Visitor of the entries of a MAC table.
+     */
+    public interface Visitor {
+        /**
+         * Visits a single learned entry.
+         *
+         * @param mac      48-bit MAC address
+         * @param port     learned port number
+         * @param lastSeen last-seen timestamp in milliseconds since the epoch
+         */
+        void visit(long mac, long port, long lastSeen);
+    }
+
+    /**
+     * Visitor of the entries of a MAC table that may stop the walk.
+     */
+    public interface Walker {
+        /**
+         * Visits a single learned entry.
+         *
+         * @param mac      48-bit MAC address
+         * @param port     learned port number
+         * @param lastSeen last-seen timestamp in milliseconds since the epoch
+         * @return true to go on with the next entry, false to stop
+         */
+        boolean visit(long mac, long port, long lastSeen);
+    }
+
+    /**
+     * Creates an empty MAC table.
+     */
+    public MacTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty MAC table sized for the given number of entries.
+     *
+     * @param expectedEntries number of entries expected to be learned
+     */
+    public MacTable(int expectedEntries) {
+        checkArgument(expectedEntries > 0, "Expected entries must be positive");
+        slots = new Slots(capacityFor(expectedEntries));
+    }
+
+    /**
+     * Learns the port of a MAC address, updating the entry in place if the
+     * address is already known.
+     *
+     * @param mac  48-bit MAC address
+     * @param port port number the address was seen on
+     * @param now  timestamp in milliseconds since the epoch
+     * @return the previously learned port or {@link #NO_PORT} if the address
+     * was not known
+     */
+    public long learn(long mac, long port, long now) {
+        long[] gone = null;
+        long stamp = lock.writeLock();
+        try {
+            Slots s = slots;
+            int i = s.indexOf(mac);
+            if (i >= 0) {
+                long previous = s.ports[i];
+                s.ports[i] = port;
+                s.lastSeen[i] = now;
+                s.moveToTail(i);
+                return previous;
+            }
+            int limit = maxEntries;
+            if (limit > 0 && size >= limit) {
+                gone = evictOldest(s, null, 0);
+            }
+            if ((size + 1) * 2 > s.macs.length) {
+                s = resize(s.macs.length * 2);
+            }
+            s.insert(mac, port, now);
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        visit(evictionListener, gone, gone == null ? 0 : 1);
+        return NO_PORT;
+    }
+
+    /**
+     * Returns the port a MAC address has been learned on.
+     *
+     * @param mac 48-bit MAC address
+     * @return learned port number or {@link #NO_PORT}
+     */
+    public long lookup(long mac) {
+        long stamp = lock.tryOptimisticRead();
+        long port = portOf(slots, mac);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                port = portOf(slots, mac);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Returns the last time a MAC address has been seen.
+     *
+     * @param mac 48-bit MAC address
+     * @return timestamp in milliseconds since the epoch, or -1 if the address
+     * is not known
+     */
+    public long lastSeen(long mac) {
+        long stamp = lock.readLock();
+        try {
+            Slots s = slots;
+            int i = s.indexOf(mac);
+            return i < 0 ? -1L : s.lastSeen[i];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Removes a MAC address from the table.
+     *
+     * @param mac 48-bit MAC address
+     * @return the port the address was learned on or {@link #NO_PORT}
+     */
+    public long remove(long mac) {
+        long stamp = lock.writeLock();
+        try {
+            Slots s = slots;
+            int i = s.indexOf(mac);
+            if (i < 0) {
+                return NO_PORT;
+            }
+            long port = s.ports[i];
+            s.delete(i);
+            size--;
+            return port;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entries that have not been seen for longer than the age of
+     * the table, oldest first. The sweep stops at the first entry that is still
+     * fresh or once the budget is exhausted, so its cost is bounded by the
+     * number of entries it removes.
+     *
+     * @param now     timestamp in milliseconds since the epoch
+     * @param budget  maximum number of entries to remove
+     * @param removed visitor notified of every removed entry once the table
+     *                is unlocked, may be null
+     * @return number of entries removed
+     */
+    public int expire(long now, int budget, Visitor removed) {
+        long deadline = now - age.toMillis();
+        long[] gone = null;
+        int count = 0;
+        long stamp = lock.writeLock();
+        try {
+            Slots s = slots;
+            while (count < budget && s.head >= 0 && s.lastSeen[s.head] < deadline) {
+                int i = s.head;
+                if (removed != null) {
+                    gone = record(gone, count, s, i);
+                }
+                s.delete(i);
+                size--;
+                count++;
+            }
+            expired += count;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        visit(removed, gone, count);
+        return count;
+    }
+
+    /**
+     * Visits every entry of the table, least recently seen first. Writers are
+     * held off while the visitor runs.
+     *
+     * @param visitor entry visitor
+     */
+    public void forEach(Visitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            Slots s = slots;
+            for (int i = s.head; i >= 0; i = s.next[i]) {
+                visitor.visit(s.macs[i], s.ports[i], s.lastSeen[i]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Walks the entries of the table in slot order until the walker stops.
+     * Unlike {@link #forEach(Visitor)}, the read lock is only held while a
+     * bounded chunk of entries is copied aside and the walker runs without
+     * it, so a slow walker never holds off learning. The walk is weakly
+     * consistent: an entry learned, moved or removed meanwhile, or relocated
+     * by the table growing, may be missed or visited twice.
+     *
+     * @param walker entry walker
+     */
+    public void walk(Walker walker) {
+        long[] macs = new long[WALK_CHUNK];
+        long[] ports = new long[WALK_CHUNK];
+        long[] seen = new long[WALK_CHUNK];
+        int from = 0;
+        while (from >= 0) {
+            int count = 0;
+            long stamp = lock.readLock();
+            try {
+                Slots s = slots;
+                int i = from;
+                for (; i < s.macs.length && count < WALK_CHUNK; i++) {
+                    if (s.macs[i] != EMPTY) {
+                        macs[count] = s.macs[i];
+                        ports[count] = s.ports[i];
+                        seen[count] = s.lastSeen[i];
+                        count++;
+                    }
+                }
+                from = i < s.macs.length ? i : -1;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            for (int j = 0; j < count; j++) {
+                if (!walker.visit(macs[j], ports[j], seen[j])) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of learned entries.
+     *
+     * @return entry count
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of entries removed by aging since the table was created.
+     *
+     * @return expired entry count
+     */
+    public long expiredCount() {
+        long stamp = lock.readLock();
+        try {
+            return expired;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of entries evicted to honour the capacity limit since
+     * the table was created.
+     *
+     * @return evicted entry count
+     */
+    public long evictedCount() {
+        long stamp = lock.readLock();
+        try {
+            return evicted;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries of the table.
+     *
+     * @return entry limit, 0 if unlimited
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of entries of the table. Entries in excess are
+     * evicted least recently seen first.
+     *
+     * @param maxEntries entry limit, 0 for unlimited
+     */
+    public void setMaxEntries(int maxEntries) {
+        checkArgument(maxEntries >= 0, "Entry limit must not be negative");
+        long[] gone = null;
+        int count = 0;
+        long stamp = lock.writeLock();
+        try {
+            this.maxEntries = maxEntries;
+            Slots s = slots;
+            while (maxEntries > 0 && size > maxEntries) {
+                gone = evictOldest(s, gone, count++);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        visit(evictionListener, gone, count);
+    }
+
+    /**
+     * Sets the visitor notified of entries evicted to honour the capacity
+     * limit. It is invoked once the table is unlocked, by the thread whose
+     * learning caused the eviction.
+     *
+     * @param listener eviction listener, null for none
+     */
+    public void setEvictionListener(Visitor listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Returns the age after which entries of this table are considered stale.
+     *
+     * @return entry age
+     */
+    public Duration age() {
+        return age;
+    }
+
+    /**
+     * Sets the age after which entries of this table are considered stale.
+     *
+     * @param age entry age
+     */
+    public void setAge(Duration age) {
+        this.age = age;
+    }
+
+    private static long portOf(Slots s, long mac) {
+        int i = s.indexOf(mac);
+        return i < 0 ? NO_PORT : s.ports[i];
+    }
+
+    /* Evicts the least recently seen entry, recording it for the eviction listener. */
+    private long[] evictOldest(Slots s, long[] gone, int n) {
+        int i = s.head;
+        long[] recorded = evictionListener != null ? record(gone, n, s, i) : gone;
+        s.delete(i);
+        size--;
+        evicted++;
+        return recorded;
+    }
+
+    /*
+     * Appends an entry to a buffer of (MAC, port, last seen) triples, grown
+     * as needed, so that visitors can be told of removals once the table is
+     * unlocked.
+     */
+    private static long[] record(long[] gone, int n, Slots s, int i) {
+        long[] buffer = gone;
+        if (buffer == null || buffer.length < (n + 1) * 3) {
+            buffer = Arrays.copyOf(buffer == null ? new long[0] : buffer, (n + 1) * 6);
+        }
+        buffer[n * 3] = s.macs[i];
+        buffer[n * 3 + 1] = s.ports[i];
+        buffer[n * 3 + 2] = s.lastSeen[i];
+        return buffer;
+    }
+
+    private static void visit(Visitor visitor, long[] gone, int n) {
+        for (int j = 0; visitor != null && gone != null && j < n; j++) {
+            visitor.visit(gone[j * 3], gone[j * 3 + 1], gone[j * 3 + 2]);
+        }
+    }
+
+    /* Re-inserts oldest first so that the recency order survives growth. */
+    private Slots resize(int capacity) {
+        Slots old = slots;
+        Slots grown = new Slots(capacity);
+        for (int i = old.head; i >= 0; i = old.next[i]) {
+            grown.insert(old.macs[i], old.ports[i], old.lastSeen[i]);
+        }
+        slots = grown;
+        return grown;
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = Integer.highestOneBit(Math.max(entries * 2 - 1, 1)) << 1;
+        return Math.max(capacity, 8);
+    }
+
+    /*
+     * Spreads the bits of a MAC address over the table index; the low-order
+     * bytes of MAC addresses vary much more than the vendor prefix.
+     */
+    private static int hash(long mac) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Slot arrays of a table; replaced as a whole when the table grows so that
+     * optimistic readers always see arrays of the same length. The prev/next
+     * arrays link occupied slots from the least to the most recently seen.
+     */
+    private static final class Slots {
+        final long[] macs;
+        final long[] ports;
+        final long[] lastSeen;
+        final int[] prev;
+        final int[] next;
+        final int mask;
+        int head = -1;
+        int tail = -1;
+
+        Slots(int capacity) {
+            macs = new long[capacity];
+            ports = new long[capacity];
+            lastSeen = new long[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(macs, EMPTY);
+        }
+
+        int indexOf(long mac) {
+            int i = hash(mac) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long key = macs[i];
+                if (key == mac) {
+                    return i;
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        int insert(long mac, long port, long now) {
+            int i = hash(mac) & mask;
+            while (macs[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            macs[i] = mac;
+            ports[i] = port;
+            lastSeen[i] = now;
+            link(i);
+            return i;
+        }
+
+        void moveToTail(int i) {
+            if (i != tail) {
+                unlink(i);
+                link(i);
+            }
+        }
+
+        private void link(int i) {
+            prev[i] = tail;
+            next[i] = -1;
+            if (tail >= 0) {
+                next[tail] = i;
+            } else {
+                head = i;
+            }
+            tail = i;
+        }
+
+        private void unlink(int i) {
+            if (prev[i] >= 0) {
+                next[prev[i]] = next[i];
+            } else {
+                head = next[i];
+            }
+            if (next[i] >= 0) {
+                prev[next[i]] = prev[i];
+            } else {
+                tail = prev[i];
+            }
+        }
+
+        /* Moves the entry of slot 'from' into the empty slot 'to'. */
+        private void relocate(int from, int to) {
+            macs[to] = macs[from];
+            ports[to] = ports[from];
+            lastSeen[to] = lastSeen[from];
+            prev[to] = prev[from];
+            next[to] = next[from];
+            if (prev[to] >= 0) {
+                next[prev[to]] = to;
+            } else {
+                head = to;
+            }
+            if (next[to] >= 0) {
+                prev[next[to]] = to;
+            } else {
+                tail = to;
+            }
+        }
+
+        /*
+         * Backward-shift deletion: entries following the removed slot in the
+         * same probe run are moved up so that no tombstones are needed.
+         */
+        void delete(int i) {
+            unlink(i);
+            int hole = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                long key = macs[j];
+                if (key == EMPTY) {
+                    break;
+                }
+                int home = hash(key) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    relocate(j, hole);
+                    hole = j;
+                }
+            }
+            macs[hole] = EMPTY;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Numbers the MAC table changes and keeps the most recent ones for the
+ * readers polling the change feed.
+ * <p>
+ * Changes are kept in a ring of fixed size. A reader that falls behind by
+ * more than the ring holds is told so, and has to start over from a
+ * snapshot of the tables. Readers that caught up wait for the next change.
+ * <p>
+ * Appending takes no lock: a change takes the next sequence number and
+ * stores a compact record of itself in its ring slot. Events are only built
+ * from the records when read. Writers take the monitor of the feed solely
+ * to wake readers up, and only when some are waiting.
+ */
+final class MacTableChangeFeed {
+
+    private final AtomicReferenceArray<Change> ring;
+    private final int mask;
+
+    /* Sequence number of the last change taken, 0 before the first. */
+    private final AtomicLong last = new AtomicLong();
+
+    /* Number of readers waiting for a change, updated under the monitor. */
+    private volatile int waiting;
+
+    /**
+     * Creates an empty feed.
+     *
+     * @param capacity number of changes kept, rounded up to a power of two
+     */
+    MacTableChangeFeed(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Numbers and records a change.
+     *
+     * @param type         type of change
+     * @param deviceId     device whose table changed
+     * @param mac          48-bit MAC address
+     * @param port         port number
+     * @param previousPort port number the address moved from, or
+     *                     {@link MacTable#NO_PORT}
+     * @return record of the change
+     */
+    Change append(MacTableEvent.Type type, DeviceId deviceId, long mac, long port, long previousPort) {
+        long sequence = last.incrementAndGet();
+        Change change = new Change(sequence, type, deviceId, mac, port, previousPort, System.currentTimeMillis());
+        ring.set((int) (sequence & mask), change);
+        if (waiting > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return change;
+    }
+
+    /**
+     * Returns the sequence number of the last change.
+     *
+     * @return sequence number, 0 if nothing changed yet
+     */
+    long sequence() {
+        return last.get();
+    }
+
+    /**
+     * Returns the changes following a sequence number, waiting for one if
+     * there is none yet. The reader is told to start over when changes it
+     * has not read were dropped, or when it read a sequence number this
+     * feed never issued, as it does after a restart.
+     *
+     * @param after   sequence number of the last change read
+     * @param max     maximum number of changes returned
+     * @param timeout milliseconds to wait for a change
+     * @return changes, possibly none if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    MacTableChanges since(long after, int max, long timeout) throws InterruptedException {
+        long current = last.get();
+        if (after > current) {
+            return new MacTableChanges(current, true, Collections.emptyList());
+        }
+        if (after == current && timeout > 0) {
+            current = await(after, timeout);
+        }
+        int size = mask + 1;
+        long oldest = Math.max(1, current - size + 1);
+        boolean reset = after + 1 < oldest;
+        long from = Math.max(after + 1, oldest);
+        long to = Math.min(current, from + Math.max(1, max) - 1);
+        List<MacTableEvent> events = new ArrayList<>((int) Math.max(0, to - from + 1));
+        long read = from - 1;
+        for (long s = from; s <= to; s++) {
+            Change change = ring.get((int) (s & mask));
+            if (change == null || change.sequence < s) {
+                /* Taken but not stored yet; the next poll picks it up */
+                break;
+            }
+            if (change.sequence > s) {
+                /* Overwritten while reading, the remaining changes are lost as well */
+                reset = true;
+                break;
+            }
+            events.add(change.event());
+            read = s;
+        }
+        return new MacTableChanges(events.isEmpty() ? after : read, reset, events);
+    }
+
+    /* Waits for a change past a sequence number; writers check for waiters after numbering theirs. */
+    private synchronized long await(long after, long timeout) throws InterruptedException {
+        waiting++;
+        try {
+            long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeout);
+            long wait = timeout;
+            while (last.get() == after && wait > 0) {
+                wait(wait);
+                wait = MILLISECONDS.convert(deadline - System.nanoTime(), NANOSECONDS);
+            }
+            return last.get();
+        } finally {
+            waiting--;
+        }
+    }
+
+    /**
+     * Compact record of a change, turned into an event on demand.
+     */
+    static final class Change {
+
+        private final long sequence;
+        private final MacTableEvent.Type type;
+        private final DeviceId deviceId;
+        private final long mac;
+        private final long port;
+        private final long previousPort;
+        private final long time;
+
+        private Change(long sequence, MacTableEvent.Type type, DeviceId deviceId,
+                       long mac, long port, long previousPort, long time) {
+            this.sequence = sequence;
+            this.type = type;
+            this.deviceId = deviceId;
+            this.mac = mac;
+            this.port = port;
+            this.previousPort = previousPort;
+            this.time = time;
+        }
+
+        /**
+         * Returns the event describing the change.
+         *
+         * @return MAC table event
+         */
+        MacTableEvent event() {
+            return new MacTableEvent(type, deviceId, MacAddress.valueOf(mac), PortNumber.portNumber(port),
+                                     previousPort == MacTable.NO_PORT
+                                             ? null : PortNumber.portNumber(previousPort),
+                                     sequence, time);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Batch of MAC table changes read from the change feed.
+ */
+public final class MacTableChanges {
+
+    private final long sequence;
+    private final boolean reset;
+    private final List<MacTableEvent> events;
+
+    /**
+     * Creates a batch of changes.
+     *
+     * @param sequence sequence number to read the next batch after
+     * @param reset    whether changes were missed, so that the reader must
+     *                 start over from a snapshot
+     * @param events   changes in sequence order
+     */
+    public MacTableChanges(long sequence, boolean reset, List<MacTableEvent> events) {
+        this.sequence = sequence;
+        this.reset = reset;
+        this.events = ImmutableList.copyOf(events);
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public boolean reset() {
+        return reset;
+    }
+
+    public List<MacTableEvent> events() {
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sequence", sequence)
+                .add("reset", reset)
+                .add("events", events.size())
+                .toString();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.Config;
+
+/**
+ * Per-device MAC table configuration, overriding the defaults set through the
+ * component configuration of the application.
+ */
+public class MacTableConfig extends Config<DeviceId> {
+
+    public static final String KEY = "l2fwd";
+
+    private static final String AGE = "macAgeSeconds";
+    private static final String CAPACITY = "macTableCapacity";
+
+    @Override
+    public boolean isValid() {
+        return hasOnlyFields(AGE, CAPACITY)
+                && isIntegralNumber(AGE, FieldPresence.OPTIONAL, 1, Integer.MAX_VALUE)
+                && isIntegralNumber(CAPACITY, FieldPresence.OPTIONAL, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the age of learned MAC entries on the device.
+     *
+     * @param defaultAge value returned if the age is not configured
+     * @return age in seconds
+     */
+    public int macAgeSeconds(int defaultAge) {
+        return get(AGE, defaultAge);
+    }
+
+    /**
+     * Returns the maximum number of learned MAC entries on the device.
+     *
+     * @param defaultCapacity value returned if the capacity is not configured
+     * @return entry limit, 0 if unlimited
+     */
+    public int macTableCapacity(int defaultCapacity) {
+        return get(CAPACITY, defaultCapacity);
+    }
+}
@@ -26,8 +26,12 @@ public class MacTableEntry {
     private final Duration timeDuration;
 
     public MacTableEntry(PortNumber portNumber, Duration timeDuration) {
+        this(portNumber, Instant.now(), timeDuration);
+    }
+
+    public MacTableEntry(PortNumber portNumber, Instant lastAccess, Duration timeDuration) {
         this.portNumber = portNumber;
-        this.lastAccess = Instant.now();
+        this.lastAccess = lastAccess;
         this.timeDuration = timeDuration;
     }
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.MacAddress;
+import org.onosproject.event.AbstractEvent;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+/**
+ * Change of the MAC table of a device.
+ * <p>
+ * Changes are numbered in the order they happen on this instance, across
+ * all devices, so that a consumer of the change feed can tell whether it
+ * missed some. Refreshes of an address already learned on the same port
+ * are not changes.
+ */
+public class MacTableEvent extends AbstractEvent<MacTableEvent.Type, DeviceId> {
+
+    /**
+     * Type of MAC table change.
+     */
+    public enum Type {
+        /**
+         * An address was learned for the first time.
+         */
+        LEARNED,
+
+        /**
+         * An address moved to another port.
+         */
+        MOVED,
+
+        /**
+         * An address was not seen for longer than the table age.
+         */
+        EXPIRED,
+
+        /**
+         * An address was evicted at the capacity limit, invalidated by a
+         * move seen on another device or removed by another instance.
+         */
+        REMOVED
+    }
+
+    private final MacAddress mac;
+    private final PortNumber port;
+    private final PortNumber previousPort;
+    private final long sequence;
+
+    /**
+     * Creates a MAC table event.
+     *
+     * @param type         type of change
+     * @param deviceId     device whose table changed
+     * @param mac          MAC address
+     * @param port         port the address is learned on, or was for removals
+     * @param previousPort port the address moved from, null unless moved
+     * @param sequence     sequence number of the change
+     */
+    public MacTableEvent(Type type, DeviceId deviceId, MacAddress mac, PortNumber port,
+                         PortNumber previousPort, long sequence) {
+        super(type, deviceId);
+        this.mac = mac;
+        this.port = port;
+        this.previousPort = previousPort;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Creates a MAC table event of a change that happened at the given time.
+     *
+     * @param type         type of change
+     * @param deviceId     device whose table changed
+     * @param mac          MAC address
+     * @param port         port the address is learned on, or was for removals
+     * @param previousPort port the address moved from, null unless moved
+     * @param sequence     sequence number of the change
+     * @param time         time of the change in milliseconds since the epoch
+     */
+    public MacTableEvent(Type type, DeviceId deviceId, MacAddress mac, PortNumber port,
+                         PortNumber previousPort, long sequence, long time) {
+        super(type, deviceId, time);
+        this.mac = mac;
+        this.port = port;
+        this.previousPort = previousPort;
+        this.sequence = sequence;
+    }
+
+    public MacAddress mac() {
+        return mac;
+    }
+
+    public PortNumber port() {
+        return port;
+    }
+
+    public PortNumber previousPort() {
+        return previousPort;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sequence", sequence)
+                .add("type", type())
+                .add("deviceId", subject())
+                .add("mac", mac)
+                .add("port", port)
+                .add("previousPort", previousPort)
+                .add("time", time())
+                .omitNullValues()
+                .toString();
+    }
+}
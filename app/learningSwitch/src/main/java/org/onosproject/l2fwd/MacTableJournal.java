@@ -0,0 +1,540 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import org.onosproject.net.DeviceId;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Local file copy of the MAC tables, reloaded when the application starts
+ * so that forwarding is warm right away instead of flooding until every
+ * host is relearned.
+ * <p>
+ * The file is memory-mapped and holds a full snapshot of the tables
+ * followed by the changes made since, appended once a second: addresses
+ * learned for the first time or moved, and addresses that left a table.
+ * Mere refreshes are not recorded; the periodic full snapshots, which
+ * replace the file atomically, catch up with them and keep the file from
+ * growing. Writes reach the file through the page cache, so they survive
+ * the controller process going away; they are forced to disk with each
+ * full snapshot.
+ * <p>
+ * Every record is framed by its length and a CRC32 of its content, the
+ * length being written last. Reading stops at the first record that is
+ * incomplete or corrupt, so a file cut short by a crash still yields
+ * everything written before. Entries record how long they had been idle
+ * when written, and keep aging while the application is down: they are
+ * reloaded with their last-seen time, and those older than the table age
+ * by then are left out rather than forwarded to for another aging period.
+ */
+final class MacTableJournal {
+
+    private static final int MAGIC = 0x4c324d54;
+    private static final int VERSION = 1;
+
+    private static final byte HEADER = 1;
+    private static final byte TABLE = 2;
+    private static final byte CHANGES = 3;
+
+    private static final byte LEARNED = 1;
+    private static final byte REMOVED = 2;
+
+    /* Length and CRC of a record, then type and time of its content. */
+    private static final int FRAME_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 1 + 8;
+    /* Operation, 48-bit MAC address, 32-bit port and milliseconds idle. */
+    private static final int ENTRY_LENGTH = 1 + 6 + 4 + 4;
+    private static final int CHUNK = 4096;
+    private static final int MIN_MAPPING = 1 << 20;
+    private static final long FLUSH_PERIOD = SECONDS.toMillis(1);
+
+    private final Logger log = getLogger(getClass());
+
+    private final Path file;
+    private final Map<DeviceId, MacTable> tables;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<DeviceId, Changes> pending = new ConcurrentHashMap<>();
+
+    /* Only touched on the executor thread. */
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer content = ByteBuffer.allocate(RECORD_HEADER_LENGTH + 2 + Short.MAX_VALUE
+                                                                   + 4 + CHUNK * ENTRY_LENGTH);
+    private Segment segment;
+    private long snapshotLength;
+    private long recordTime;
+
+    private ScheduledFuture<?> snapshotTask;
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Creates a journal of the given MAC tables.
+     *
+     * @param file     file the tables are kept in
+     * @param tables   MAC tables by device
+     * @param executor executor the file is written on
+     */
+    MacTableJournal(Path file, Map<DeviceId, MacTable> tables, ScheduledExecutorService executor) {
+        this.file = file;
+        this.tables = tables;
+        this.executor = executor;
+    }
+
+    /**
+     * Reloads the tables kept in the file, leaving out the entries that aged
+     * out since they were written. Addresses already present in a table are
+     * left alone.
+     *
+     * @param tableOf supplies the table of a device, creating it if needed
+     * @return number of entries restored
+     * @throws IOException if the file cannot be read
+     */
+    int load(Function<DeviceId, MacTable> tableOf) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        Map<DeviceId, Changes> restored = new LinkedHashMap<>();
+        CRC32 check = new CRC32();
+        long lastWritten = -1;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            boolean header = false;
+            while (buffer.remaining() >= FRAME_LENGTH) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < RECORD_HEADER_LENGTH || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                buffer.position(buffer.position() + length);
+                check.reset();
+                check.update(record.duplicate());
+                if ((int) check.getValue() != checksum) {
+                    log.warn("Ignoring the end of {}, corrupt record at {}", file, buffer.position() - length);
+                    break;
+                }
+                byte type = record.get();
+                long time = record.getLong();
+                if (!header) {
+                    if (type != HEADER || record.getInt() != MAGIC || record.getInt() != VERSION) {
+                        log.warn("Ignoring {}, not a MAC table snapshot", file);
+                        return 0;
+                    }
+                    header = true;
+                } else if (type == TABLE || type == CHANGES) {
+                    DeviceId deviceId = readDeviceId(record);
+                    restored.computeIfAbsent(deviceId, id -> new Changes()).read(record, time, type == TABLE);
+                } else {
+                    break;
+                }
+                lastWritten = Math.max(lastWritten, time);
+            }
+        }
+        if (lastWritten < 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Map.Entry<DeviceId, Changes> entry : restored.entrySet()) {
+            count += entry.getValue().apply(tableOf.apply(entry.getKey()), now);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a full snapshot now, then every interval, and appends the
+     * changes recorded in between once a second.
+     *
+     * @param interval seconds between full snapshots
+     */
+    synchronized void start(int interval) {
+        cancel();
+        long period = SECONDS.toMillis(interval);
+        snapshotTask = executor.scheduleWithFixedDelay(this::snapshot, 0, period, MILLISECONDS);
+        flushTask = executor.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD, FLUSH_PERIOD, MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic writes and writes a last full snapshot, waiting
+     * for it to complete.
+     */
+    synchronized void close() {
+        cancel();
+        try {
+            executor.submit(() -> {
+                snapshot();
+                if (segment != null) {
+                    segment.close();
+                    segment = null;
+                }
+            }).get();
+        } catch (Exception e) {
+            log.warn("Unable to write the last MAC table snapshot to {}", file, e);
+        }
+    }
+
+    /**
+     * Records that an address was learned for the first time or moved.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     * @param port     learned port number
+     * @param now      timestamp in milliseconds since the epoch
+     */
+    void learned(DeviceId deviceId, long mac, long port, long now) {
+        record(deviceId, LEARNED, mac, port, now);
+    }
+
+    /**
+     * Records that an address left the table of a device.
+     *
+     * @param deviceId device identifier
+     * @param mac      48-bit MAC address
+     */
+    void removed(DeviceId deviceId, long mac) {
+        record(deviceId, REMOVED, mac, 0, 0);
+    }
+
+    /* Appends under the bin lock, so that a change never lands in a batch already taken. */
+    private void record(DeviceId deviceId, byte op, long mac, long port, long time) {
+        pending.compute(deviceId, (id, changes) -> {
+            Changes c = changes != null ? changes : new Changes();
+            c.add(op, mac, port, time);
+            return c;
+        });
+    }
+
+    private void cancel() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+            flushTask.cancel(false);
+            snapshotTask = null;
+            flushTask = null;
+        }
+    }
+
+    /*
+     * Writes every table to a new file replacing the current one. Changes
+     * recorded before the tables are walked are in the snapshot already.
+     */
+    private void snapshot() {
+        Path next = file.resolveSibling(file.getFileName() + ".tmp");
+        Segment written = null;
+        try {
+            pending.clear();
+            long estimate = 0;
+            for (MacTable table : tables.values()) {
+                estimate += table.size();
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            written = new Segment(next, Math.max(MIN_MAPPING, estimate * ENTRY_LENGTH * 5 / 4));
+            long now = System.currentTimeMillis();
+            beginRecord(HEADER, now);
+            content.putInt(MAGIC).putInt(VERSION);
+            written.append(endRecord());
+            for (Map.Entry<DeviceId, MacTable> entry : tables.entrySet()) {
+                writeTable(written, entry.getKey(), entry.getValue());
+            }
+            written.force();
+            Files.move(next, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            if (segment != null) {
+                segment.close();
+            }
+            segment = written;
+            snapshotLength = written.position();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to write a MAC table snapshot to {}", file, e);
+            if (written != null) {
+                written.close();
+            }
+        }
+    }
+
+    private void writeTable(Segment target, DeviceId deviceId, MacTable table) {
+        byte[] id = deviceId.toString().getBytes(StandardCharsets.UTF_8);
+        int[] count = {0};
+        table.walk((mac, port, lastSeen) -> {
+            if (count[0] == 0) {
+                beginTable(TABLE, id);
+            }
+            putEntry(LEARNED, mac, port, recordTime - lastSeen);
+            if (++count[0] == CHUNK) {
+                target.append(endTable(count[0]));
+                count[0] = 0;
+            }
+            return true;
+        });
+        if (count[0] > 0) {
+            target.append(endTable(count[0]));
+        }
+    }
+
+    /* Appends the recorded changes, and compacts the file once they outgrow the snapshot. */
+    private void flush() {
+        if (segment == null || pending.isEmpty()) {
+            return;
+        }
+        try {
+            for (DeviceId deviceId : pending.keySet()) {
+                Changes changes = pending.remove(deviceId);
+                if (changes == null) {
+                    continue;
+                }
+                byte[] id = deviceId.toString().getBytes(StandardCharsets.UTF_8);
+                int count = 0;
+                for (int i = 0; i < changes.size; i++) {
+                    if (count == 0) {
+                        beginTable(CHANGES, id);
+                    }
+                    long idle = changes.ops[i] == LEARNED ? recordTime - changes.times[i] : 0;
+                    putEntry(changes.ops[i], changes.macs[i], changes.ports[i], idle);
+                    if (++count == CHUNK) {
+                        segment.append(endTable(count));
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    segment.append(endTable(count));
+                }
+            }
+            if (segment.position() - snapshotLength > Math.max(snapshotLength, MIN_MAPPING)) {
+                snapshot();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to append MAC table changes to {}", file, e);
+        }
+    }
+
+    private void beginRecord(byte type, long time) {
+        recordTime = time;
+        content.clear();
+        content.put(type).putLong(time);
+    }
+
+    /* Table and change records hold the entries of a device, counted at the end. */
+    private void beginTable(byte type, byte[] deviceId) {
+        beginRecord(type, System.currentTimeMillis());
+        content.putShort((short) deviceId.length).put(deviceId);
+        content.position(content.position() + 4);
+    }
+
+    private ByteBuffer endTable(int count) {
+        content.putInt(RECORD_HEADER_LENGTH + 2 + content.getShort(RECORD_HEADER_LENGTH), count);
+        return endRecord();
+    }
+
+    private ByteBuffer endRecord() {
+        content.flip();
+        return content;
+    }
+
+    private void putEntry(byte op, long mac, long port, long idle) {
+        content.put(op).putShort((short) (mac >>> 32)).putInt((int) mac).putInt((int) port)
+                .putInt((int) Math.min(Math.max(idle, 0), Integer.MAX_VALUE));
+    }
+
+    private static DeviceId readDeviceId(ByteBuffer record) {
+        byte[] id = new byte[record.getShort() & 0xffff];
+        record.get(id);
+        return DeviceId.deviceId(new String(id, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Mapped file the records are appended to, remapped larger when full.
+     */
+    private final class Segment {
+
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+
+        Segment(Path path, long size) throws IOException {
+            channel = FileChannel.open(path, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        long position() {
+            return buffer.position();
+        }
+
+        /* Writes the content, then its CRC, then its length, which makes the record visible. */
+        void append(ByteBuffer record) {
+            int length = record.remaining();
+            try {
+                ensure(FRAME_LENGTH + length);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to grow " + file, e);
+            }
+            crc.reset();
+            crc.update(record.duplicate());
+            int start = buffer.position();
+            buffer.position(start + FRAME_LENGTH);
+            buffer.put(record);
+            buffer.putInt(start + 4, (int) crc.getValue());
+            buffer.putInt(start, length);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Unable to close {}", file, e);
+            }
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            int position = buffer.position();
+            long size = Math.max((long) buffer.capacity() * 2, (long) position + length);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * Entries or changes of a single device, held as primitive arrays.
+     */
+    private static final class Changes {
+
+        private static final int INDEX_BITS = 24;
+        private static final int MAX_SORTED = (1 << INDEX_BITS) - 1;
+
+        private byte[] ops = new byte[16];
+        private long[] macs = new long[16];
+        private long[] ports = new long[16];
+        private long[] times = new long[16];
+        private int size;
+
+        /* Number of leading entries coming from table records. */
+        private int snapshotSize;
+
+        void add(byte op, long mac, long port, long time) {
+            if (size == macs.length) {
+                int capacity = size * 2;
+                ops = Arrays.copyOf(ops, capacity);
+                macs = Arrays.copyOf(macs, capacity);
+                ports = Arrays.copyOf(ports, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            ops[size] = op;
+            macs[size] = mac;
+            ports[size] = port;
+            times[size] = time;
+            size++;
+        }
+
+        /* Table records of a device all precede its change records. */
+        void read(ByteBuffer record, long time, boolean table) {
+            int count = record.getInt();
+            for (int i = 0; i < count; i++) {
+                byte op = record.get();
+                long mac = (record.getShort() & 0xffffL) << 32 | record.getInt() & 0xffffffffL;
+                long port = record.getInt() & 0xffffffffL;
+                long idle = record.getInt();
+                add(op, mac, port, time - idle);
+            }
+            if (table) {
+                snapshotSize = size;
+            }
+        }
+
+        /*
+         * Learns the snapshot entries least recently seen first, so that the
+         * table ages them in the right order, then replays the changes.
+         * Entries and changes older than the table age are skipped; those of
+         * the same address that precede them are older still.
+         */
+        int apply(MacTable table, long now) {
+            long deadline = now - table.age().toMillis();
+            int count = 0;
+            for (int i : recencyOrder()) {
+                if (times[i] >= deadline && table.lookup(macs[i]) == MacTable.NO_PORT) {
+                    table.learn(macs[i], ports[i], times[i]);
+                    count++;
+                }
+            }
+            for (int i = snapshotSize; i < size; i++) {
+                if (ops[i] != LEARNED) {
+                    table.remove(macs[i]);
+                } else if (times[i] >= deadline) {
+                    table.learn(macs[i], ports[i], times[i]);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /*
+         * Sorts the snapshot entries by last-seen time. The time relative to
+         * the oldest entry and the index are packed in one long, as idle
+         * times are bounded to a few weeks.
+         */
+        private int[] recencyOrder() {
+            int n = snapshotSize;
+            int[] order = new int[n];
+            if (n > MAX_SORTED) {
+                Arrays.setAll(order, i -> i);
+                return order;
+            }
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                oldest = Math.min(oldest, times[i]);
+            }
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = (times[i] - oldest) << INDEX_BITS | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++) {
+                order[i] = (int) (keys[i] & MAX_SORTED);
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.net.DeviceId;
+
+import java.util.Arrays;
+
+/**
+ * Immutable point-in-time copy of the MAC table of a device.
+ * <p>
+ * Entries are held in primitive arrays rather than as objects, so that
+ * copying even a large table is a matter of a few array stores per entry.
+ * The copy is taken at once, with the table locked; it reflects every
+ * change up to the sequence number it records, and possibly some later
+ * ones, which replaying the change feed from that number applies again
+ * harmlessly.
+ */
+public final class MacTableSnapshot {
+
+    private final DeviceId deviceId;
+    private final long sequence;
+    private final long timestamp;
+    private final long[] macs;
+    private final long[] ports;
+    private final long[] lastSeen;
+
+    private MacTableSnapshot(DeviceId deviceId, long sequence, long timestamp,
+                             long[] macs, long[] ports, long[] lastSeen) {
+        this.deviceId = deviceId;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.macs = macs;
+        this.ports = ports;
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Copies the entries of a table, least recently seen first.
+     *
+     * @param deviceId device identifier
+     * @param table    MAC table of the device
+     * @param sequence sequence number of the last change before the copy
+     * @return snapshot of the table
+     */
+    static MacTableSnapshot of(DeviceId deviceId, MacTable table, long sequence) {
+        int[] size = {0};
+        long[][] arrays = new long[3][table.size() + 16];
+        table.forEach((mac, port, seen) -> {
+            int i = size[0]++;
+            if (i == arrays[0].length) {
+                for (int a = 0; a < arrays.length; a++) {
+                    arrays[a] = Arrays.copyOf(arrays[a], i * 2);
+                }
+            }
+            arrays[0][i] = mac;
+            arrays[1][i] = port;
+            arrays[2][i] = seen;
+        });
+        return new MacTableSnapshot(deviceId, sequence, System.currentTimeMillis(),
+                                    Arrays.copyOf(arrays[0], size[0]), Arrays.copyOf(arrays[1], size[0]),
+                                    Arrays.copyOf(arrays[2], size[0]));
+    }
+
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int size() {
+        return macs.length;
+    }
+
+    /**
+     * Visits every entry, least recently seen first.
+     *
+     * @param visitor entry visitor
+     */
+    public void forEach(MacTable.Visitor visitor) {
+        for (int i = 0; i < macs.length; i++) {
+            visitor.visit(macs[i], ports[i], lastSeen[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("sequence", sequence)
+                .add("timestamp", timestamp)
+                .add("size", macs.length)
+                .toString();
+    }
+}
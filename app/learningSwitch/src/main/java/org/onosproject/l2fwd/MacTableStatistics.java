@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+
+import java.time.Duration;
+
+/**
+ * Point-in-time statistics of the MAC table of a device.
+ */
+public final class MacTableStatistics {
+
+    private final int size;
+    private final int capacity;
+    private final Duration age;
+    private final long expired;
+    private final long evicted;
+
+    /**
+     * Creates MAC table statistics.
+     *
+     * @param size     number of learned entries
+     * @param capacity maximum number of entries, 0 if unlimited
+     * @param age      age after which entries expire
+     * @param expired  number of entries removed by aging
+     * @param evicted  number of entries evicted at the capacity limit
+     */
+    public MacTableStatistics(int size, int capacity, Duration age, long expired, long evicted) {
+        this.size = size;
+        this.capacity = capacity;
+        this.age = age;
+        this.expired = expired;
+        this.evicted = evicted;
+    }
+
+    static MacTableStatistics of(MacTable table) {
+        return new MacTableStatistics(table.size(), table.maxEntries(), table.age(),
+                                      table.expiredCount(), table.evictedCount());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Duration age() {
+        return age;
+    }
+
+    public long expired() {
+        return expired;
+    }
+
+    public long evicted() {
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", size)
+                .add("capacity", capacity)
+                .add("age", age)
+                .add("expired", expired)
+                .add("evicted", evicted)
+                .toString();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.PortNumber;
+
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only {@link Map} view over a {@link MacTable}.
+ * <p>
+ * Lookups go straight to the underlying table; {@link MacTableEntry} objects
+ * are only materialized for the caller. Iteration walks a copy of the
+ * entries taken when the iterator is created.
+ */
+final class MacTableView extends AbstractMap<MacAddress, MacTableEntry> {
+
+    private final MacTable table;
+
+    MacTableView(MacTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof MacAddress
+                && table.lookup(((MacAddress) key).toLong()) != MacTable.NO_PORT;
+    }
+
+    @Override
+    public MacTableEntry get(Object key) {
+        if (!(key instanceof MacAddress)) {
+            return null;
+        }
+        long mac = ((MacAddress) key).toLong();
+        long port = table.lookup(mac);
+        long lastSeen = table.lastSeen(mac);
+        if (port == MacTable.NO_PORT || lastSeen < 0) {
+            return null;
+        }
+        return entry(port, lastSeen);
+    }
+
+    @Override
+    public Set<Entry<MacAddress, MacTableEntry>> entrySet() {
+        return new AbstractSet<Entry<MacAddress, MacTableEntry>>() {
+            @Override
+            public Iterator<Entry<MacAddress, MacTableEntry>> iterator() {
+                List<Entry<MacAddress, MacTableEntry>> entries =
+                        Lists.newArrayListWithCapacity(table.size());
+                table.forEach((mac, port, lastSeen) -> entries.add(
+                        Maps.immutableEntry(MacAddress.valueOf(mac), entry(port, lastSeen))));
+                return Iterators.unmodifiableIterator(entries.iterator());
+            }
+
+            @Override
+            public int size() {
+                return table.size();
+            }
+        };
+    }
+
+    private MacTableEntry entry(long port, long lastSeen) {
+        return new MacTableEntry(PortNumber.portNumber(port),
+                                 Instant.ofEpochMilli(lastSeen), table.age());
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.Lists;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Asynchronous packet-in pipeline.
+ * <p>
+ * Packets are appended to a bounded queue of the device that received them
+ * and handed to a worker thread later. Devices are sharded over the workers
+ * by identifier; a worker serves its ready devices round-robin, a bounded
+ * number of packets at a time, so a device flooding the controller cannot
+ * starve the other devices of its shard and the devices of other shards are
+ * not affected at all. Packets of one device are always handled in order by
+ * the same worker.
+ */
+final class PacketPipeline {
+
+    /**
+     * Action taken on a packet that does not fit into its device queue.
+     */
+    enum OverflowPolicy {
+        /** Drop the packet. */
+        DROP,
+        /** Flood the packet right away on the calling thread. */
+        FLOOD
+    }
+
+    private static final int QUANTUM = 32;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final int REJECTED = -1;
+    private static final int QUEUED = 0;
+    private static final int SCHEDULE = 1;
+
+    private final Logger log = getLogger(getClass());
+
+    private final int queueDepth;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<PacketContext> handler;
+    private final Consumer<PacketContext> flooder;
+
+    private final Worker[] workers;
+    private final ExecutorService executor;
+    private final Map<DeviceId, DeviceQueue> queues = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram processLatency = new LatencyHistogram();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder flooded = new LongAdder();
+
+    /**
+     * Creates and starts a packet pipeline.
+     *
+     * @param workers        number of worker threads
+     * @param queueDepth     capacity of each device queue
+     * @param overflowPolicy action taken when a device queue is full
+     * @param handler        packet handler run by the workers
+     * @param flooder        packet handler run for overflowing packets
+     *                       under the {@link OverflowPolicy#FLOOD} policy
+     */
+    PacketPipeline(int workers, int queueDepth, OverflowPolicy overflowPolicy,
+                   Consumer<PacketContext> handler, Consumer<PacketContext> flooder) {
+        this.queueDepth = queueDepth;
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+        this.flooder = flooder;
+        this.workers = new Worker[workers];
+        this.executor = newFixedThreadPool(workers, groupedThreads("onos/l2fwd", "packet-worker-%d", log));
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker();
+            executor.execute(this.workers[i]);
+        }
+    }
+
+    /**
+     * Queues a packet for processing.
+     *
+     * @param context packet context
+     * @return false if the packet overflowed its device queue
+     */
+    boolean submit(PacketContext context) {
+        long start = System.nanoTime();
+        DeviceId deviceId = context.inPacket().receivedFrom().deviceId();
+        DeviceQueue queue = queues.get(deviceId);
+        if (queue == null) {
+            queue = queues.computeIfAbsent(deviceId, this::newQueue);
+        }
+        int result = queue.offer(context, start);
+        if (result == SCHEDULE) {
+            queue.worker.ready.add(queue);
+        }
+        enqueueLatency.record(System.nanoTime() - start);
+        if (result != REJECTED) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.FLOOD) {
+            flooded.increment();
+            flooder.accept(context);
+        } else {
+            dropped.increment();
+            context.block();
+        }
+        return false;
+    }
+
+    /**
+     * Stops accepting work and lets the workers finish the packets already
+     * queued.
+     */
+    void shutdown() {
+        running = false;
+        executor.shutdown();
+    }
+
+    /**
+     * Returns whether the pipeline runs with the given settings.
+     *
+     * @param workers        number of worker threads
+     * @param queueDepth     capacity of each device queue
+     * @param overflowPolicy action taken when a device queue is full
+     * @return true if the pipeline need not be rebuilt for these settings
+     */
+    boolean isConfigured(int workers, int queueDepth, OverflowPolicy overflowPolicy) {
+        return this.workers.length == workers && this.queueDepth == queueDepth
+                && this.overflowPolicy == overflowPolicy;
+    }
+
+    /**
+     * Returns the statistics of the pipeline.
+     *
+     * @return pipeline statistics
+     */
+    PacketPipelineStatistics statistics() {
+        int backlog = 0;
+        for (DeviceQueue queue : queues.values()) {
+            backlog += queue.size();
+        }
+        return new PacketPipelineStatistics(workers.length, queueDepth, overflowPolicy.name(),
+                                            backlog, dropped.sum(), flooded.sum(),
+                                            enqueueLatency.snapshot(), queueLatency.snapshot(),
+                                            processLatency.snapshot());
+    }
+
+    private DeviceQueue newQueue(DeviceId deviceId) {
+        return new DeviceQueue(workers[Math.floorMod(deviceId.hashCode(), workers.length)], queueDepth);
+    }
+
+    /**
+     * Bounded FIFO of the packets of a single device, with the time each
+     * packet was queued kept in a parallel primitive array.
+     */
+    private static final class DeviceQueue {
+
+        final Worker worker;
+
+        private final PacketContext[] packets;
+        private final long[] queuedAt;
+        private int head;
+        private int count;
+        private boolean scheduled;
+
+        DeviceQueue(Worker worker, int depth) {
+            this.worker = worker;
+            this.packets = new PacketContext[depth];
+            this.queuedAt = new long[depth];
+        }
+
+        synchronized int offer(PacketContext context, long now) {
+            if (count == packets.length) {
+                return REJECTED;
+            }
+            int tail = (head + count) % packets.length;
+            packets[tail] = context;
+            queuedAt[tail] = now;
+            count++;
+            if (scheduled) {
+                return QUEUED;
+            }
+            scheduled = true;
+            return SCHEDULE;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Worker serving the devices of one shard.
+     */
+    private final class Worker implements Runnable {
+
+        final BlockingQueue<DeviceQueue> ready = new LinkedBlockingQueue<>();
+
+        @Override
+        public void run() {
+            while (running || !ready.isEmpty()) {
+                try {
+                    DeviceQueue queue = ready.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (queue != null && serve(queue)) {
+                        ready.add(queue);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.warn("Packet processing failed", e);
+                }
+            }
+        }
+
+        /*
+         * Processes up to one quantum of packets of a device; returns true if
+         * the device still has packets queued and has to be rescheduled.
+         */
+        private boolean serve(DeviceQueue queue) {
+            for (int n = 0; n < QUANTUM; n++) {
+                PacketContext context;
+                long queuedAt;
+                synchronized (queue) {
+                    if (queue.count == 0) {
+                        queue.scheduled = false;
+                        return false;
+                    }
+                    context = queue.packets[queue.head];
+                    queuedAt = queue.queuedAt[queue.head];
+                    queue.packets[queue.head] = null;
+                    queue.head = (queue.head + 1) % queue.packets.length;
+                    queue.count--;
+                }
+                long start = System.nanoTime();
+                queueLatency.record(start - queuedAt);
+                try {
+                    handler.accept(context);
+                } catch (Exception e) {
+                    log.warn("Unable to process packet {}", context.inPacket(), e);
+                }
+                processLatency.record(System.nanoTime() - start);
+            }
+            return true;
+        }
+    }
+}
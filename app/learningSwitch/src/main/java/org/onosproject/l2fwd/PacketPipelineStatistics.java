@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.forwarding.common.LatencyHistogram;
+
+/**
+ * Point-in-time statistics of the asynchronous packet-in pipeline.
+ */
+public final class PacketPipelineStatistics {
+
+    private final int workers;
+    private final int queueDepth;
+    private final String overflowPolicy;
+    private final int backlog;
+    private final long dropped;
+    private final long flooded;
+    private final LatencyHistogram.Snapshot enqueueLatency;
+    private final LatencyHistogram.Snapshot queueLatency;
+    private final LatencyHistogram.Snapshot processLatency;
+
+    /**
+     * Creates pipeline statistics.
+     *
+     * @param workers        number of worker threads
+     * @param queueDepth     capacity of each device queue
+     * @param overflowPolicy action taken when a device queue is full
+     * @param backlog        number of packets currently queued
+     * @param dropped        number of packets dropped on overflow
+     * @param flooded        number of packets flooded on overflow
+     * @param enqueueLatency time spent queuing packets on the dispatch thread
+     * @param queueLatency   time packets waited in their device queue
+     * @param processLatency time workers spent processing packets
+     */
+    public PacketPipelineStatistics(int workers, int queueDepth, String overflowPolicy,
+                                    int backlog, long dropped, long flooded,
+                                    LatencyHistogram.Snapshot enqueueLatency,
+                                    LatencyHistogram.Snapshot queueLatency,
+                                    LatencyHistogram.Snapshot processLatency) {
+        this.workers = workers;
+        this.queueDepth = queueDepth;
+        this.overflowPolicy = overflowPolicy;
+        this.backlog = backlog;
+        this.dropped = dropped;
+        this.flooded = flooded;
+        this.enqueueLatency = enqueueLatency;
+        this.queueLatency = queueLatency;
+        this.processLatency = processLatency;
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    public String overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int backlog() {
+        return backlog;
+    }
+
+    public long dropped() {
+        return dropped;
+    }
+
+    public long flooded() {
+        return flooded;
+    }
+
+    public LatencyHistogram.Snapshot enqueueLatency() {
+        return enqueueLatency;
+    }
+
+    public LatencyHistogram.Snapshot queueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyHistogram.Snapshot processLatency() {
+        return processLatency;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("workers", workers)
+                .add("queueDepth", queueDepth)
+                .add("overflowPolicy", overflowPolicy)
+                .add("backlog", backlog)
+                .add("dropped", dropped)
+                .add("flooded", flooded)
+                .add("enqueueLatency", enqueueLatency)
+                .add("queueLatency", queueLatency)
+                .add("processLatency", processLatency)
+                .toString();
+    }
+}
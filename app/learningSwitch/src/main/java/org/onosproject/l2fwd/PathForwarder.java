@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.Lists;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.Path;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Installs the forwarding rules of a destination MAC address on every
+ * device along the path towards it at once.
+ * <p>
+ * Once the edge port a destination lives behind is known, the first
+ * packet-in towards it has the rules of all hops installed, rather than
+ * one per device as the frames reach each of them. The rules go out as one
+ * batch through {@link ForwardingRuleInstaller#installPath}, egress first.
+ * <p>
+ * Paths are computed by the topology service and cached per pair of
+ * devices until the topology changes. A path computed while the topology
+ * changed is used but not cached.
+ */
+final class PathForwarder {
+
+    private final TopologyService topologyService;
+    private final ForwardingRuleInstaller ruleInstaller;
+
+    /* Source device -> destination device -> path between them. */
+    private final Map<DeviceId, Map<DeviceId, Path>> paths = new ConcurrentHashMap<>();
+
+    /* Number of invalidations, so that paths racing with one are not cached. */
+    private volatile long generation;
+
+    /**
+     * Creates a path forwarder.
+     *
+     * @param topologyService topology service used to find paths
+     * @param ruleInstaller   installer of the forwarding rules
+     */
+    PathForwarder(TopologyService topologyService, ForwardingRuleInstaller ruleInstaller) {
+        this.topologyService = topologyService;
+        this.ruleInstaller = ruleInstaller;
+    }
+
+    /**
+     * Installs the rules forwarding frames to a destination along the path
+     * from a device to the edge port the destination lives behind.
+     *
+     * @param deviceId device that received a frame towards the destination
+     * @param mac      destination MAC address, as a long
+     * @param home     edge port of the destination
+     * @return port of the device the frame is to be sent out of, null if
+     * no path leads to the destination
+     */
+    PortNumber forward(DeviceId deviceId, long mac, ConnectPoint home) {
+        if (home.deviceId().equals(deviceId)) {
+            ruleInstaller.install(deviceId, mac, home.port());
+            return home.port();
+        }
+        Path path = path(deviceId, home.deviceId());
+        if (path == null) {
+            return null;
+        }
+        List<Link> links = path.links();
+        List<ConnectPoint> hops = Lists.newArrayListWithCapacity(links.size() + 1);
+        hops.add(home);
+        for (int i = links.size() - 1; i >= 0; i--) {
+            hops.add(links.get(i).src());
+        }
+        ruleInstaller.installPath(mac, hops);
+        return links.get(0).src().port();
+    }
+
+    /**
+     * Drops the cached paths, typically because the topology changed.
+     */
+    void invalidate() {
+        generation++;
+        paths.clear();
+    }
+
+    /* Returns the cached path between two devices, computing it on a miss. */
+    private Path path(DeviceId src, DeviceId dst) {
+        Map<DeviceId, Path> from = paths.get(src);
+        Path path = from != null ? from.get(dst) : null;
+        if (path != null) {
+            return path;
+        }
+        long computedAt = generation;
+        Topology topology = topologyService.currentTopology();
+        Set<Path> found = topologyService.getPaths(topology, src, dst);
+        if (found.isEmpty()) {
+            return null;
+        }
+        path = found.iterator().next();
+        if (generation == computedAt) {
+            Map<DeviceId, Path> cached = paths.computeIfAbsent(src, k -> new ConcurrentHashMap<>());
+            cached.put(dst, path);
+            if (generation != computedAt) {
+                cached.remove(dst, path);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Path;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyService;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Pre-installs the forwarding rules of learned MAC addresses.
+ * <p>
+ * When a MAC address is learned, or moves, the rule forwarding frames to it
+ * is installed on the learning device right away instead of on the first
+ * packet-in towards it. Optionally, a MAC learned on an edge port is also
+ * reached from every other device, through the first hop of a topology path
+ * towards its home device. The rules go through the regular
+ * {@link ForwardingRuleInstaller}, and so are deduplicated and batched.
+ * <p>
+ * The rules are removed again when the MAC table entry ages out or is
+ * evicted. An address without a home only has the rule of the entry's device,
+ * which goes with it. Once an address has a home, the rules of every device
+ * lead to that home and are only removed, all of them, when the home entry
+ * goes; the entries of other devices, or of the home device on a port the
+ * address has since left, leave them in place.
+ */
+final class ProactiveForwarder {
+
+    private final Logger log = getLogger(getClass());
+
+    private final TopologyService topologyService;
+    private final DeviceService deviceService;
+    private final ForwardingRuleInstaller ruleInstaller;
+    private final Executor executor;
+
+    /* MAC address -> edge port the rules of all devices lead to. */
+    private final Map<Long, ConnectPoint> homes = new ConcurrentHashMap<>();
+
+    private final LongAdder installed = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+
+    private volatile boolean allDevices;
+
+    /**
+     * Creates a proactive forwarder.
+     *
+     * @param topologyService topology service used to find paths
+     * @param deviceService   device service listing the devices to program
+     * @param ruleInstaller   installer of the forwarding rules
+     * @param executor        executor running the path computations
+     * @param allDevices      whether to program every device or only the learning one
+     */
+    ProactiveForwarder(TopologyService topologyService, DeviceService deviceService,
+                       ForwardingRuleInstaller ruleInstaller, Executor executor,
+                       boolean allDevices) {
+        this.topologyService = topologyService;
+        this.deviceService = deviceService;
+        this.ruleInstaller = ruleInstaller;
+        this.executor = executor;
+        this.allDevices = allDevices;
+    }
+
+    /**
+     * Sets whether every device is programmed or only the learning one.
+     *
+     * @param allDevices true to program every device through topology paths
+     */
+    void configure(boolean allDevices) {
+        this.allDevices = allDevices;
+        if (!allDevices) {
+            homes.clear();
+        }
+    }
+
+    /**
+     * Installs the rules of a MAC address that was just learned or moved.
+     *
+     * @param deviceId device that learned the address
+     * @param mac      MAC address, as a long
+     * @param port     port the address was learned on
+     */
+    void learned(DeviceId deviceId, long mac, long port) {
+        if (ruleInstaller.install(deviceId, mac, PortNumber.portNumber(port))) {
+            installed.increment();
+        }
+        if (allDevices) {
+            ConnectPoint home = new ConnectPoint(deviceId, PortNumber.portNumber(port));
+            executor.execute(() -> fanOut(MacAddress.valueOf(mac), home));
+        }
+    }
+
+    /**
+     * Removes the rules of a MAC address whose entry aged out or was evicted.
+     * Nothing is removed when the address has a home other than this entry.
+     *
+     * @param deviceId device whose MAC table dropped the address
+     * @param mac      MAC address, as a long
+     * @param port     port the address was last seen on
+     */
+    void removed(DeviceId deviceId, long mac, long port) {
+        MacAddress dstMac = MacAddress.valueOf(mac);
+        ConnectPoint home = homes.get(mac);
+        if (home == null) {
+            if (ruleInstaller.remove(deviceId, dstMac)) {
+                removed.increment();
+            }
+        } else if (home.deviceId().equals(deviceId) && home.port().toLong() == port
+                && homes.remove(mac, home)) {
+            removed.add(ruleInstaller.removeAll(dstMac));
+        }
+    }
+
+    /**
+     * Returns the statistics of proactive forwarding.
+     *
+     * @return proactive forwarding statistics
+     */
+    ProactiveForwardingStatistics statistics() {
+        return new ProactiveForwardingStatistics(allDevices, installed.sum(), removed.sum());
+    }
+
+    /* Points every other device at the edge port an address lives behind. */
+    private void fanOut(MacAddress dstMac, ConnectPoint home) {
+        try {
+            Topology topology = topologyService.currentTopology();
+            if (topologyService.isInfrastructure(topology, home)) {
+                return;
+            }
+            homes.put(dstMac.toLong(), home);
+            for (Device device : deviceService.getAvailableDevices()) {
+                if (device.id().equals(home.deviceId())) {
+                    continue;
+                }
+                Set<Path> paths = topologyService.getPaths(topology, device.id(), home.deviceId());
+                if (paths.isEmpty()) {
+                    continue;
+                }
+                PortNumber outPort = paths.iterator().next().src().port();
+                if (ruleInstaller.install(device.id(), dstMac.toLong(), outPort)) {
+                    installed.increment();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to pre-install forwarding rules for {}", dstMac, e);
+        }
+    }
+}
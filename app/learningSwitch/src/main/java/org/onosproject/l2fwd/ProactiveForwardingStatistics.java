@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Point-in-time statistics of proactive forwarding.
+ */
+public final class ProactiveForwardingStatistics {
+
+    private final boolean allDevices;
+    private final long installed;
+    private final long removed;
+
+    /**
+     * Creates proactive forwarding statistics.
+     *
+     * @param allDevices whether every device is programmed or only the learning one
+     * @param installed  number of forwarding rules installed
+     * @param removed    number of forwarding rules removed as their address aged out
+     */
+    public ProactiveForwardingStatistics(boolean allDevices, long installed, long removed) {
+        this.allDevices = allDevices;
+        this.installed = installed;
+        this.removed = removed;
+    }
+
+    public boolean allDevices() {
+        return allDevices;
+    }
+
+    public long installed() {
+        return installed;
+    }
+
+    public long removed() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("allDevices", allDevices)
+                .add("installed", installed)
+                .add("removed", removed)
+                .toString();
+    }
+}
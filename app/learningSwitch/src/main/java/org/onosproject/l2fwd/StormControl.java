@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.topology.TopologyService;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a packet with an unknown destination may be flooded.
+ * <p>
+ * A flood is suppressed when the packet was not received on a broadcast
+ * point of the current topology, when the very same frame was flooded by the
+ * same device within the deduplication window (a loop echo), or when the
+ * device or the source MAC address on that device exceeds its flood rate.
+ * <p>
+ * Rates are enforced with the generic cell rate algorithm, so that each
+ * limiter is a single theoretical arrival time updated by compare-and-set.
+ * Source limiters and recently flooded frames live in fixed-size hashed
+ * arrays: checking a packet neither locks nor allocates, at the price of
+ * sources occasionally sharing a limiter and recent frames being forgotten
+ * early when their slots collide.
+ */
+final class StormControl {
+
+    private static final int SOURCE_SLOTS = 1 << 16;
+    private static final int RECENT_SLOTS = 1 << 14;
+    private static final int TIME_BITS = 24;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long NO_ARRIVAL = Long.MIN_VALUE;
+
+    /**
+     * Outcome of a flood check.
+     */
+    enum Verdict {
+        FLOOD, NOT_BROADCAST_POINT, DUPLICATE, SOURCE_RATE, DEVICE_RATE
+    }
+
+    private final TopologyService topologyService;
+
+    private final ConcurrentMap<DeviceId, AtomicLong> devices = new ConcurrentHashMap<>();
+    private final AtomicLongArray sources = new AtomicLongArray(SOURCE_SLOTS);
+    private final AtomicLongArray recent = new AtomicLongArray(RECENT_SLOTS);
+
+    private final LongAdder flooded = new LongAdder();
+    private final LongAdder notBroadcastPoint = new LongAdder();
+    private final LongAdder duplicate = new LongAdder();
+    private final LongAdder sourceRate = new LongAdder();
+    private final LongAdder deviceRate = new LongAdder();
+
+    private volatile Limit deviceLimit;
+    private volatile Limit sourceLimit;
+    private volatile int dedupWindow;
+
+    /**
+     * Creates storm control.
+     *
+     * @param topologyService topology service telling broadcast points
+     * @param deviceRate      floods allowed per second on a device, 0 for no limit
+     * @param sourceRate      floods allowed per second from a source MAC address
+     *                        on a device, 0 for no limit
+     * @param dedupWindow     milliseconds a flooded frame is remembered, 0 to disable
+     */
+    StormControl(TopologyService topologyService, int deviceRate, int sourceRate, int dedupWindow) {
+        this.topologyService = topologyService;
+        for (int i = 0; i < SOURCE_SLOTS; i++) {
+            sources.set(i, NO_ARRIVAL);
+        }
+        configure(deviceRate, sourceRate, dedupWindow);
+    }
+
+    /**
+     * Changes the flood limits. Limiters keep their current state.
+     *
+     * @param deviceRate  floods allowed per second on a device, 0 for no limit
+     * @param sourceRate  floods allowed per second from a source MAC address
+     *                    on a device, 0 for no limit
+     * @param dedupWindow milliseconds a flooded frame is remembered, 0 to disable
+     */
+    void configure(int deviceRate, int sourceRate, int dedupWindow) {
+        this.deviceLimit = Limit.of(deviceRate);
+        this.sourceLimit = Limit.of(sourceRate);
+        this.dedupWindow = (int) Math.min(dedupWindow, TIME_MASK);
+    }
+
+    /**
+     * Checks whether a packet may be flooded, and counts the outcome.
+     *
+     * @param receivedFrom port the packet came in on
+     * @param srcMac       source MAC address, as a long
+     * @param frame        raw frame
+     * @return whether to flood or why not to
+     */
+    Verdict check(ConnectPoint receivedFrom, long srcMac, ByteBuffer frame) {
+        Verdict verdict = decide(receivedFrom, srcMac, frame);
+        switch (verdict) {
+            case FLOOD:
+                flooded.increment();
+                break;
+            case NOT_BROADCAST_POINT:
+                notBroadcastPoint.increment();
+                break;
+            case DUPLICATE:
+                duplicate.increment();
+                break;
+            case SOURCE_RATE:
+                sourceRate.increment();
+                break;
+            default:
+                deviceRate.increment();
+                break;
+        }
+        return verdict;
+    }
+
+    private Verdict decide(ConnectPoint receivedFrom, long srcMac, ByteBuffer frame) {
+        if (!topologyService.isBroadcastPoint(topologyService.currentTopology(), receivedFrom)) {
+            return Verdict.NOT_BROADCAST_POINT;
+        }
+        DeviceId deviceId = receivedFrom.deviceId();
+        long deviceHash = deviceId.hashCode();
+        int window = dedupWindow;
+        if (window > 0 && !remember(mix(deviceHash, frame), window)) {
+            return Verdict.DUPLICATE;
+        }
+        long now = System.nanoTime();
+        Limit limit = sourceLimit;
+        if (limit != null) {
+            int slot = (int) (mix(deviceHash * 31 + srcMac) & (SOURCE_SLOTS - 1));
+            if (!limit.acquire(sources, slot, now)) {
+                return Verdict.SOURCE_RATE;
+            }
+        }
+        limit = deviceLimit;
+        if (limit != null && !limit.acquire(device(deviceId), now)) {
+            return Verdict.DEVICE_RATE;
+        }
+        return Verdict.FLOOD;
+    }
+
+    /**
+     * Returns the flood limits and the number of floods let through and
+     * suppressed.
+     *
+     * @return storm control statistics
+     */
+    StormControlStatistics statistics() {
+        Limit device = deviceLimit;
+        Limit source = sourceLimit;
+        return new StormControlStatistics(device == null ? 0 : device.rate,
+                                          source == null ? 0 : source.rate, dedupWindow,
+                                          flooded.sum(), notBroadcastPoint.sum(), duplicate.sum(),
+                                          sourceRate.sum(), deviceRate.sum());
+    }
+
+    private AtomicLong device(DeviceId deviceId) {
+        AtomicLong state = devices.get(deviceId);
+        return state != null ? state : devices.computeIfAbsent(deviceId, id -> new AtomicLong(NO_ARRIVAL));
+    }
+
+    /*
+     * Records a frame hash with the current time; false if the same hash was
+     * recorded less than a window ago. Slots hold the hash's upper bits and
+     * the time in milliseconds, modulo 2^24.
+     */
+    private boolean remember(long hash, int window) {
+        int slot = (int) (hash & (RECENT_SLOTS - 1));
+        long tag = hash & ~TIME_MASK;
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) & TIME_MASK;
+        long seen = recent.get(slot);
+        recent.lazySet(slot, tag | now);
+        return seen == 0 || (seen & ~TIME_MASK) != tag || ((now - seen) & TIME_MASK) >= window;
+    }
+
+    /* Hashes a frame without moving its position. */
+    private static long mix(long seed, ByteBuffer frame) {
+        long hash = seed;
+        int i = frame.position();
+        int limit = frame.limit();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            hash = (hash ^ frame.getLong(i)) * 0x9e3779b97f4a7c15L;
+        }
+        for (; i < limit; i++) {
+            hash = (hash ^ frame.get(i)) * 0x9e3779b97f4a7c15L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        h *= 0xc2b2ae3d27d4eb4fL;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Rate limit as an emission interval and a burst tolerance of one
+     * second's worth of floods.
+     */
+    private static final class Limit {
+
+        private final int rate;
+        private final long interval;
+        private final long tolerance;
+
+        private Limit(int rate) {
+            this.rate = rate;
+            this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.tolerance = interval * (rate - 1);
+        }
+
+        static Limit of(int rate) {
+            return rate > 0 ? new Limit(rate) : null;
+        }
+
+        boolean acquire(AtomicLong state, long now) {
+            while (true) {
+                long arrival = state.get();
+                long start = arrival == NO_ARRIVAL ? now : Math.max(arrival, now);
+                if (start - now > tolerance) {
+                    return false;
+                }
+                if (state.compareAndSet(arrival, start + interval)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean acquire(AtomicLongArray states, int slot, long now) {
+            while (true) {
+                long arrival = states.get(slot);
+                long start = arrival == NO_ARRIVAL ? now : Math.max(arrival, now);
+                if (start - now > tolerance) {
+                    return false;
+                }
+                if (states.compareAndSet(slot, arrival, start + interval)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.l2fwd;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Point-in-time statistics of flood storm control.
+ */
+public final class StormControlStatistics {
+
+    private final int deviceRateLimit;
+    private final int sourceRateLimit;
+    private final int dedupWindow;
+    private final long flooded;
+    private final long notBroadcastPoint;
+    private final long duplicate;
+    private final long sourceRate;
+    private final long deviceRate;
+
+    /**
+     * Creates storm control statistics.
+     *
+     * @param deviceRateLimit   floods allowed per second on a device, 0 for no limit
+     * @param sourceRateLimit   floods allowed per second from a source MAC
+     *                          address on a device, 0 for no limit
+     * @param dedupWindow       milliseconds a flooded frame is remembered
+     * @param flooded           number of packets let through to be flooded
+     * @param notBroadcastPoint number of floods suppressed as not received on a
+     *                          broadcast point
+     * @param duplicate         number of floods suppressed as duplicates of a
+     *                          recently flooded frame
+     * @param sourceRate        number of floods suppressed by the source rate limit
+     * @param deviceRate        number of floods suppressed by the device rate limit
+     */
+    public StormControlStatistics(int deviceRateLimit, int sourceRateLimit, int dedupWindow,
+                                  long flooded, long notBroadcastPoint, long duplicate,
+                                  long sourceRate, long deviceRate) {
+        this.deviceRateLimit = deviceRateLimit;
+        this.sourceRateLimit = sourceRateLimit;
+        this.dedupWindow = dedupWindow;
+        this.flooded = flooded;
+        this.notBroadcastPoint = notBroadcastPoint;
+        this.duplicate = duplicate;
+        this.sourceRate = sourceRate;
+        this.deviceRate = deviceRate;
+    }
+
+    public int deviceRateLimit() {
+        return deviceRateLimit;
+    }
+
+    public int sourceRateLimit() {
+        return sourceRateLimit;
+    }
+
+    public int dedupWindow() {
+        return dedupWindow;
+    }
+
+    public long flooded() {
+        return flooded;
+    }
+
+    public long notBroadcastPoint() {
+        return notBroadcastPoint;
+    }
+
+    public long duplicate() {
+        return duplicate;
+    }
+
+    public long sourceRate() {
+        return sourceRate;
+    }
+
+    public long deviceRate() {
+        return deviceRate;
+    }
+
+    /**
+     * Returns the number of floods suppressed for any reason.
+     *
+     * @return suppressed floods
+     */
+    public long suppressed() {
+        return notBroadcastPoint + duplicate + sourceRate + deviceRate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceRateLimit", deviceRateLimit)
+                .add("sourceRateLimit", sourceRateLimit)
+                .add("dedupWindow", dedupWindow)
+                .add("flooded", flooded)
+                .add("notBroadcastPoint", notBroadcastPoint)
+                .add("duplicate", duplicate)
+                .add("sourceRate", sourceRate)
+                .add("deviceRate", deviceRate)
+                .toString();
+    }
+}
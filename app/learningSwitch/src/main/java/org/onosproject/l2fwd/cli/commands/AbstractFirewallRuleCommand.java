@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.cli.commands;
+
+import org.apache.karaf.shell.commands.Option;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.cli.AbstractShellCommand;
+
+import org.onosproject.l2fwd.FirewallRule;
+
+/**
+ * Base of the commands taking a firewall rule as options.
+ */
+public abstract class AbstractFirewallRuleCommand extends AbstractShellCommand {
+    @Option(name = "-s", aliases = "--src", description = "Source prefix or host address",
+            required = false, multiValued = false)
+    private String src = null;
+
+    @Option(name = "-d", aliases = "--dst", description = "Destination prefix or host address",
+            required = false, multiValued = false)
+    private String dst = null;
+
+    @Option(name = "-p", aliases = "--protocol", description = "IP protocol: tcp, udp, icmp, any or a number",
+            required = false, multiValued = false)
+    private String protocol = "any";
+
+    @Option(name = "--src-port", description = "Source port or port range, such as 1024-65535",
+            required = false, multiValued = false)
+    private String srcPort = "any";
+
+    @Option(name = "--dst-port", description = "Destination port or port range, such as 8000-8080",
+            required = false, multiValued = false)
+    private String dstPort = "any";
+
+    /**
+     * Builds the firewall rule given by the options.
+     *
+     * @return firewall rule
+     * @throws IllegalArgumentException if an option is malformed
+     */
+    protected FirewallRule rule() {
+        FirewallRule.Builder builder = FirewallRule.builder()
+                .protocol(FirewallRule.protocolNumber(protocol))
+                .srcPorts(FirewallRule.PortRange.valueOf(srcPort))
+                .dstPorts(FirewallRule.PortRange.valueOf(dstPort));
+        if (src != null) {
+            builder.src(prefix(src));
+        }
+        if (dst != null) {
+            builder.dst(prefix(dst));
+        }
+        return builder.build();
+    }
+
+    private static IpPrefix prefix(String value) {
+        return value.indexOf('/') < 0 ? IpAddress.valueOf(value).toIpPrefix() : IpPrefix.valueOf(value);
+    }
+}
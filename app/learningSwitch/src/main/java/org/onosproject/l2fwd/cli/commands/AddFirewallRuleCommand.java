@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.cli.commands;
+
+import org.apache.karaf.shell.commands.Command;
+
+import org.onosproject.l2fwd.FirewallRule;
+import org.onosproject.l2fwd.LayerTwoService;
+
+import java.util.Collections;
+
+/**
+ * Command to add a firewall rule on every device.
+ */
+@Command(scope = "onos", name = "add-firewall-rule",
+        description = "Drop the matching IP traffic on every device")
+public class AddFirewallRuleCommand extends AbstractFirewallRuleCommand {
+
+    @Override
+    protected void execute() {
+        FirewallRule rule;
+        try {
+            rule = rule();
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage());
+            return;
+        }
+        LayerTwoService layerTwoService = get(LayerTwoService.class);
+        for (FirewallRule other : layerTwoService.getOverlappingFirewallRules(rule)) {
+            print(" Overlaps %s", other);
+        }
+        if (layerTwoService.addFirewallRules(Collections.singleton(rule)).isEmpty()) {
+            print(" Already installed: %s", rule);
+        } else {
+            print(" Added %s", rule);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.cli.commands;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+
+import org.onosproject.l2fwd.FirewallRule;
+import org.onosproject.l2fwd.LayerTwoService;
+
+import java.util.Set;
+
+/**
+ * Command to list the installed firewall rules.
+ */
+@Command(scope = "onos", name = "firewall-rules",
+        description = "List the firewall rules installed on every device")
+public class FirewallRulesCommand extends AbstractShellCommand {
+    @Option(name = "-o", aliases = "--overlaps", description = "Also list the rules each rule overlaps",
+            required = false, multiValued = false)
+    private boolean overlaps = false;
+
+    private static final String FORMAT = " src=%s, dst=%s, protocol=%s, srcPorts=%s, dstPorts=%s";
+
+    @Override
+    protected void execute() {
+        LayerTwoService layerTwoService = get(LayerTwoService.class);
+        Set<FirewallRule> rules = layerTwoService.getFirewallRules();
+        for (FirewallRule rule : rules) {
+            print(FORMAT, rule.src(), rule.dst(), FirewallRule.protocolName(rule.protocol()),
+                  rule.srcPorts(), rule.dstPorts());
+            if (overlaps) {
+                for (FirewallRule other : layerTwoService.getOverlappingFirewallRules(rule)) {
+                    print("   overlaps %s", other);
+                }
+            }
+        }
+        print(" %d firewall rules", rules.size());
+    }
+}
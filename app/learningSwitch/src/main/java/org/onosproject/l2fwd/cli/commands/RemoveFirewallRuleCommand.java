@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.cli.commands;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+
+import org.onosproject.l2fwd.FirewallRule;
+import org.onosproject.l2fwd.LayerTwoService;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Command to remove firewall rules from every device.
+ */
+@Command(scope = "onos", name = "remove-firewall-rule",
+        description = "Remove a firewall rule, or all of them, from every device")
+public class RemoveFirewallRuleCommand extends AbstractFirewallRuleCommand {
+    @Option(name = "-a", aliases = "--all", description = "Remove all firewall rules",
+            required = false, multiValued = false)
+    private boolean all = false;
+
+    @Override
+    protected void execute() {
+        LayerTwoService layerTwoService = get(LayerTwoService.class);
+        Collection<FirewallRule> rules;
+        if (all) {
+            rules = layerTwoService.getFirewallRules();
+        } else {
+            try {
+                rules = Collections.singleton(rule());
+            } catch (IllegalArgumentException e) {
+                error(e.getMessage());
+                return;
+            }
+        }
+        Set<FirewallRule> removed = layerTwoService.removeFirewallRules(rules);
+        if (removed.isEmpty()) {
+            print(" No such firewall rule");
+        } else {
+            print(" Removed %d firewall rules", removed.size());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.cli.commands;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+
+import org.onosproject.l2fwd.ForwardingRuleStatistics;
+import org.onosproject.l2fwd.ForwardingStatistics;
+import org.onosproject.l2fwd.LayerTwoService;
+import org.onosproject.l2fwd.PacketPipelineStatistics;
+import org.onosproject.l2fwd.ProactiveForwardingStatistics;
+import org.onosproject.l2fwd.StormControlStatistics;
+
+import java.util.Map;
+
+/**
+ * Command to print the packet-in metrics of the learning switch.
+ */
+@Command(scope = "onos", name = "show-l2fwd-metrics",
+        description = "Show packet-in counters and forwarding latency of the learning switch")
+public class ShowForwardingMetricsCommand extends AbstractShellCommand {
+    @Argument(index = 0, name = "device", description = "Device ID",
+              required = false, multiValued = false)
+    private String deviceStr = null;
+
+    @Option(name = "-a", aliases = "--all-devices", description = "Also show the counters of every device",
+            required = false, multiValued = false)
+    private boolean allDevices = false;
+
+    @Option(name = "-r", aliases = "--reset", description = "Reset the counters after showing them",
+            required = false, multiValued = false)
+    private boolean reset = false;
+
+    private static final String COUNTERS = " %s: %d packets, %d forwarded, %d flooded (%.1f%%), " +
+            "MAC hit rate %.1f%%, %d learned, %d moved, %d ARP replies, " +
+            "%d skipped as not master, mean %.1fus";
+    private static final String LATENCY = " latency: p50 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus";
+    private static final String PIPELINE = " pipeline: %d workers, backlog %d, %d dropped, %d flooded, " +
+            "queue p99 %.1fus";
+    private static final String STORM = " storm control: %d flooded, %d suppressed (%d not broadcast point, " +
+            "%d duplicate, %d source rate, %d device rate)";
+    private static final String RULES = " rules: batch size %d, batch delay %dms, %d requested, " +
+            "%d suppressed, %d batches, %d relocations, %d paths";
+    private static final String PROACTIVE = " proactive (%s): %d rules installed, %d removed";
+
+    @Override
+    protected void execute() {
+        LayerTwoService layerTwoService = get(LayerTwoService.class);
+        if (deviceStr != null) {
+            DeviceId deviceId = DeviceId.deviceId(deviceStr);
+            ForwardingStatistics stats = layerTwoService.getForwardingStatistics(deviceId);
+            if (stats == null) {
+                print(" No packet-in from %s", deviceId);
+            } else {
+                printCounters(deviceId.toString(), stats);
+            }
+        } else {
+            ForwardingStatistics total = layerTwoService.getForwardingStatistics();
+            printCounters("total", total);
+            LatencyHistogram.Snapshot latency = total.latency();
+            print(LATENCY, micros(latency.percentile(50)), micros(latency.percentile(99)),
+                  micros(latency.percentile(99.9)), micros(latency.max()));
+            PacketPipelineStatistics pipeline = layerTwoService.getPacketPipelineStatistics();
+            if (pipeline != null) {
+                print(PIPELINE, pipeline.workers(), pipeline.backlog(), pipeline.dropped(),
+                      pipeline.flooded(), micros(pipeline.queueLatency().percentile(99)));
+            }
+            StormControlStatistics storm = layerTwoService.getStormControlStatistics();
+            if (storm != null) {
+                print(STORM, storm.flooded(), storm.suppressed(), storm.notBroadcastPoint(),
+                      storm.duplicate(), storm.sourceRate(), storm.deviceRate());
+            }
+            ForwardingRuleStatistics rules = layerTwoService.getForwardingRuleStatistics();
+            print(RULES, rules.batchSize(), rules.batchDelay(), rules.requested(), rules.suppressed(),
+                  rules.batches(), rules.relocations(), rules.paths());
+            ProactiveForwardingStatistics proactive = layerTwoService.getProactiveForwardingStatistics();
+            if (proactive != null) {
+                print(PROACTIVE, proactive.allDevices() ? "all devices" : "learning device",
+                      proactive.installed(), proactive.removed());
+            }
+            if (allDevices) {
+                for (Map.Entry<DeviceId, ForwardingStatistics> entry
+                        : layerTwoService.getDeviceForwardingStatistics().entrySet()) {
+                    printCounters(entry.getKey().toString(), entry.getValue());
+                }
+            }
+        }
+        if (reset) {
+            layerTwoService.resetForwardingStatistics();
+        }
+    }
+
+    private void printCounters(String name, ForwardingStatistics stats) {
+        print(COUNTERS, name, stats.packets(), stats.forwarded(), stats.flooded(),
+              stats.floodRatio() * 100, stats.hitRate() * 100, stats.learned(), stats.moved(),
+              stats.arpReplied(), stats.notMaster(), micros(stats.meanProcessingNanos()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
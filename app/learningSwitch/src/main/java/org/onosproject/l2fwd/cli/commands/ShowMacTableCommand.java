@@ -16,54 +16,477 @@
 
 package org.onosproject.l2fwd.cli.commands;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
-import org.onosproject.net.DeviceId;
-import org.onlab.packet.MacAddress;
+import org.apache.karaf.shell.commands.Option;
 import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
 
-import org.onosproject.l2fwd.MacTableEntry;
 import org.onosproject.l2fwd.LayerTwoService;
+import org.onosproject.l2fwd.MacTableStatistics;
 
-import java.util.Map;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
- * Command to print flow table on a switch.
+ * Command to print the MAC table of a switch.
+ * <p>
+ * Entries are streamed from the table as it is walked, one line each, so
+ * that even a table of hundreds of thousands of entries prints without
+ * being copied and without holding off learning. Only sorting needs the
+ * matching entries gathered first, and only the first pages of them when a
+ * limit is given.
  */
 @Command(scope = "onos", name = "show-mactable",
         description = "Show Mac table on a switch")
 public class ShowMacTableCommand extends AbstractShellCommand {
     @Argument(index = 0, name = "device", description = "Device ID",
-              required = true, multiValued = false)
+              required = false, multiValued = false)
     private String deviceStr = null;
 
-    private static final String HEADER  = "\n\u001B[1;37mMAC Address\t\t" +
-            "Port\t\tTimeout\t\tLast Access\u001B[0m";
-    private static final String SEPARATOR   = "\u001B[1;37m------------" +
-            "-----------------------------------------------------------" +
-            "--------------------------------------\u001B[0m";
-    private static final String FORMAT  = "\u001B[1;32m%" +
-                "s\u001B[0m\t\t\u001B[1;37m%s\t\t%s\t\t%s\u001B[0m\n";
+    @Option(name = "-a", aliases = "--all-devices", description = "Show the MAC table of every device",
+            required = false, multiValued = false)
+    private boolean allDevices = false;
+
+    @Option(name = "-m", aliases = "--mac-prefix", description = "Only show MAC addresses starting with " +
+            "the given hexadecimal digits, e.g. 00:1b:21",
+            required = false, multiValued = false)
+    private String macPrefix = null;
+
+    @Option(name = "-p", aliases = "--port", description = "Only show entries learned on the given port",
+            required = false, multiValued = false)
+    private String portStr = null;
+
+    @Option(name = "--min-age", description = "Only show entries not seen for at least the given seconds",
+            required = false, multiValued = false)
+    private int minAge = 0;
+
+    @Option(name = "--max-age", description = "Only show entries seen within the given seconds",
+            required = false, multiValued = false)
+    private int maxAge = -1;
+
+    @Option(name = "-s", aliases = "--sort", description = "Sort the entries of each device by mac, port " +
+            "or age, most recently seen first",
+            required = false, multiValued = false)
+    private String sort = null;
+
+    @Option(name = "-o", aliases = "--offset", description = "Skip the given number of matching entries " +
+            "of each device",
+            required = false, multiValued = false)
+    private int offset = 0;
+
+    @Option(name = "-n", aliases = "--limit", description = "Show at most the given number of entries " +
+            "of each device",
+            required = false, multiValued = false)
+    private int limit = 0;
+
+    @Option(name = "-c", aliases = "--count", description = "Only count the matching entries",
+            required = false, multiValued = false)
+    private boolean countOnly = false;
+
+    private static final String HEADER = "\u001B[1;37mMAC Address\t\tPort\t\tIdle\u001B[0m";
+    private static final String STATS = " %d entries (capacity %d), age %s, %d expired, %d evicted";
+    private static final String COUNT = " %s: %d matching of %d entries";
+    private static final String MORE = " more entries, use --offset %d";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private long prefix;
+    private int prefixShift = -1;
+    private long portFilter = -1;
+    private long now;
 
     @Override
     protected void execute() {
-        DeviceId deviceId = DeviceId.deviceId(deviceStr);
+        if (deviceStr == null && !allDevices) {
+            error("Specify a device or --all-devices");
+            return;
+        }
+        if (!parseFilters()) {
+            return;
+        }
+        Comparator<Row> order = null;
+        if (sort != null) {
+            order = comparator(sort);
+            if (order == null) {
+                error("Unknown sort order %s, expected mac, port or age", sort);
+                return;
+            }
+        }
+
         LayerTwoService layerTwoService = get(LayerTwoService.class);
-        Map<MacAddress, MacTableEntry> macTable = layerTwoService.getDeviceMacTable(deviceId);
-        if (!macTable.isEmpty()) {
+        List<DeviceId> devices = new ArrayList<>();
+        if (allDevices) {
+            devices.addAll(layerTwoService.getMacTableDevices());
+            devices.sort(Comparator.comparing(DeviceId::toString));
+        } else {
+            devices.add(DeviceId.deviceId(deviceStr));
+        }
+
+        now = System.currentTimeMillis();
+        Sink sink = outputJson() ? new JsonSink() : new TextSink();
+        sink.begin(allDevices);
+        for (DeviceId deviceId : devices) {
+            MacTableStatistics stats = layerTwoService.getMacTableStatistics(deviceId);
+            if (stats == null) {
+                sink.missing(deviceId);
+                continue;
+            }
+            sink.device(deviceId, stats, !countOnly);
+            if (countOnly) {
+                sink.count(deviceId, stats, count(layerTwoService, deviceId, stats));
+            } else if (order != null) {
+                sorted(layerTwoService, deviceId, order, sink);
+            } else {
+                streamed(layerTwoService, deviceId, sink);
+            }
+        }
+        sink.end();
+    }
+
+    /* Prints the matching entries in table order, stopping once the page is full. */
+    private void streamed(LayerTwoService layerTwoService, DeviceId deviceId, Sink sink) {
+        long[] matched = {0};
+        boolean[] more = {false};
+        layerTwoService.walkMacTable(deviceId, (mac, port, lastSeen) -> {
+            if (!matches(mac, port, lastSeen)) {
+                return true;
+            }
+            if (limit > 0 && matched[0] >= (long) offset + limit) {
+                more[0] = true;
+                return false;
+            }
+            if (matched[0]++ >= offset) {
+                sink.entry(mac, port, lastSeen);
+            }
+            return true;
+        });
+        sink.entriesEnd(more[0] ? (long) offset + limit : -1);
+    }
+
+    /*
+     * Gathers and sorts the matching entries. With a limit, only the
+     * offset + limit first ones are kept, in a bounded heap.
+     */
+    private void sorted(LayerTwoService layerTwoService, DeviceId deviceId,
+                        Comparator<Row> order, Sink sink) {
+        int keep = limit > 0 ? offset + limit : Integer.MAX_VALUE;
+        Comparator<Row> reversed = order.reversed();
+        PriorityQueue<Row> heap = new PriorityQueue<>(reversed);
+        List<Row> rows = new ArrayList<>();
+        boolean[] more = {false};
+        layerTwoService.walkMacTable(deviceId, (mac, port, lastSeen) -> {
+            if (!matches(mac, port, lastSeen)) {
+                return true;
+            }
+            Row row = new Row(mac, port, lastSeen);
+            if (limit <= 0) {
+                rows.add(row);
+            } else if (heap.size() < keep) {
+                heap.add(row);
+            } else {
+                more[0] = true;
+                if (reversed.compare(row, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            }
+            return true;
+        });
+        if (limit > 0) {
+            rows.addAll(heap);
+        }
+        rows.sort(order);
+        for (int i = offset; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            sink.entry(row.mac, row.port, row.lastSeen);
+        }
+        sink.entriesEnd(more[0] ? keep : -1);
+    }
+
+    /* Counts the matching entries, without walking the table when nothing is filtered. */
+    private long count(LayerTwoService layerTwoService, DeviceId deviceId, MacTableStatistics stats) {
+        if (prefixShift < 0 && portFilter < 0 && minAge <= 0 && maxAge < 0) {
+            return stats.size();
+        }
+        long[] matched = {0};
+        layerTwoService.walkMacTable(deviceId, (mac, port, lastSeen) -> {
+            if (matches(mac, port, lastSeen)) {
+                matched[0]++;
+            }
+            return true;
+        });
+        return matched[0];
+    }
+
+    private boolean matches(long mac, long port, long lastSeen) {
+        if (prefixShift >= 0 && mac >>> prefixShift != prefix) {
+            return false;
+        }
+        if (portFilter >= 0 && port != portFilter) {
+            return false;
+        }
+        long idle = idle(lastSeen);
+        return idle >= minAge * 1000L && (maxAge < 0 || idle <= maxAge * 1000L);
+    }
+
+    /* Entries refreshed while the table is walked were seen after the walk began, not in the future. */
+    private long idle(long lastSeen) {
+        return Math.max(0, now - lastSeen);
+    }
+
+    private boolean parseFilters() {
+        if (macPrefix != null) {
+            String digits = macPrefix.replaceAll("[:.-]", "");
+            if (digits.isEmpty() || digits.length() > 12 || !digits.matches("[0-9a-fA-F]+")) {
+                error("Invalid MAC address prefix %s", macPrefix);
+                return false;
+            }
+            prefix = Long.parseLong(digits, 16);
+            prefixShift = 48 - 4 * digits.length();
+        }
+        if (portStr != null) {
+            try {
+                portFilter = PortNumber.fromString(portStr).toLong();
+            } catch (IllegalArgumentException e) {
+                error("Invalid port %s", portStr);
+                return false;
+            }
+        }
+        if (offset < 0 || limit < 0) {
+            error("Offset and limit must not be negative");
+            return false;
+        }
+        return true;
+    }
+
+    private static Comparator<Row> comparator(String sort) {
+        switch (sort) {
+            case "mac":
+                return Comparator.comparingLong(r -> r.mac);
+            case "port":
+                return Comparator.<Row>comparingLong(r -> r.port).thenComparingLong(r -> r.mac);
+            case "age":
+                return Comparator.<Row>comparingLong(r -> -r.lastSeen).thenComparingLong(r -> r.mac);
+            default:
+                return null;
+        }
+    }
+
+    /* Writes a MAC address without going through MacAddress. */
+    private static StringBuilder appendMac(StringBuilder sb, long mac) {
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int b = (int) (mac >>> shift) & 0xff;
+            sb.append(HEX[b >>> 4]).append(HEX[b & 0xf]);
+            if (shift > 0) {
+                sb.append(':');
+            }
+        }
+        return sb;
+    }
+
+    /* Matching entry held for sorting. */
+    private static final class Row {
+
+        private final long mac;
+        private final long port;
+        private final long lastSeen;
+
+        private Row(long mac, long port, long lastSeen) {
+            this.mac = mac;
+            this.port = port;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    /* Output format of the command. */
+    private interface Sink {
+        void begin(boolean manyDevices);
+
+        void missing(DeviceId deviceId);
+
+        void device(DeviceId deviceId, MacTableStatistics stats, boolean withEntries);
+
+        void entry(long mac, long port, long lastSeen);
+
+        /* Closes the entries of a device; next is the offset of the entries left out, -1 if none. */
+        void entriesEnd(long next);
+
+        void count(DeviceId deviceId, MacTableStatistics stats, long matched);
+
+        void end();
+    }
+
+    /* Tab separated lines, one per entry, built in a reused buffer. */
+    private final class TextSink implements Sink {
+
+        private final PrintStream out = System.out;
+        private final StringBuilder line = new StringBuilder(64);
+        private MacTableStatistics stats;
+        private boolean many;
+        private boolean empty;
+
+        @Override
+        public void begin(boolean manyDevices) {
+            many = manyDevices;
+        }
+
+        @Override
+        public void missing(DeviceId deviceId) {
+            print(" No MAC table for device %s", deviceId);
+        }
+
+        @Override
+        public void device(DeviceId deviceId, MacTableStatistics stats, boolean withEntries) {
+            this.stats = stats;
+            if (!withEntries) {
+                return;
+            }
+            if (many) {
+                print("%s", deviceId);
+            }
             print(HEADER);
-            for (Map.Entry<MacAddress, MacTableEntry> entry : macTable.entrySet()) {
-                print(SEPARATOR);
-                MacAddress macAddress = entry.getKey();
-                MacTableEntry macTableEntry = entry.getValue();
-                print(FORMAT,
-                        macAddress.toString(),
-                        macTableEntry.getPortNumber().toString(),
-                        macTableEntry.getTimeDuration().toString(),
-                        macTableEntry.getLastAccess().toString());
+            empty = true;
+        }
+
+        @Override
+        public void entry(long mac, long port, long lastSeen) {
+            line.setLength(0);
+            appendMac(line, mac).append("\t\t").append(port).append("\t\t")
+                    .append(idle(lastSeen) / 1000).append('s');
+            out.println(line);
+            empty = false;
+        }
+
+        @Override
+        public void entriesEnd(long next) {
+            if (empty) {
+                print(" No matching entry");
+            }
+            if (next >= 0) {
+                print(MORE, next);
+            }
+            print(STATS, stats.size(), stats.capacity(), stats.age(), stats.expired(), stats.evicted());
+        }
+
+        @Override
+        public void count(DeviceId deviceId, MacTableStatistics stats, long matched) {
+            print(COUNT, deviceId, matched, stats.size());
+        }
+
+        @Override
+        public void end() {
+            out.flush();
+        }
+    }
+
+    /* JSON streamed through a generator, so that entries are never held as a tree. */
+    private final class JsonSink implements Sink {
+
+        private final StringBuilder macText = new StringBuilder(17);
+        private JsonGenerator json;
+        private boolean many;
+
+        @Override
+        public void begin(boolean manyDevices) {
+            many = manyDevices;
+            try {
+                json = mapper().getFactory().createGenerator(System.out)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                if (many) {
+                    json.writeStartArray();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void missing(DeviceId deviceId) {
+            try {
+                json.writeStartObject();
+                json.writeStringField("device", deviceId.toString());
+                json.writeStringField("error", "No MAC table");
+                json.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void device(DeviceId deviceId, MacTableStatistics stats, boolean withEntries) {
+            try {
+                json.writeStartObject();
+                json.writeStringField("device", deviceId.toString());
+                json.writeNumberField("size", stats.size());
+                json.writeNumberField("capacity", stats.capacity());
+                json.writeNumberField("age", stats.age().getSeconds());
+                json.writeNumberField("expired", stats.expired());
+                json.writeNumberField("evicted", stats.evicted());
+                if (withEntries) {
+                    json.writeArrayFieldStart("entries");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void entry(long mac, long port, long lastSeen) {
+            macText.setLength(0);
+            appendMac(macText, mac);
+            try {
+                json.writeStartObject();
+                json.writeStringField("mac", macText.toString());
+                json.writeNumberField("port", port);
+                json.writeNumberField("lastSeen", lastSeen);
+                json.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void entriesEnd(long next) {
+            try {
+                json.writeEndArray();
+                if (next >= 0) {
+                    json.writeNumberField("next", next);
+                }
+                json.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void count(DeviceId deviceId, MacTableStatistics stats, long matched) {
+            try {
+                json.writeNumberField("matched", matched);
+                json.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void end() {
+            try {
+                if (many) {
+                    json.writeEndArray();
+                }
+                json.writeRaw('\n');
+                json.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        } else {
-            print(" Empty Mac Table");
         }
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onlab.rest.BaseResource;
+import org.onosproject.forwarding.common.LatencyHistogram;
+import org.onosproject.net.DeviceId;
+
+import org.onosproject.l2fwd.ForwardingRuleStatistics;
+import org.onosproject.l2fwd.ForwardingStatistics;
+import org.onosproject.l2fwd.LayerTwoService;
+import org.onosproject.l2fwd.PacketPipelineStatistics;
+import org.onosproject.l2fwd.ProactiveForwardingStatistics;
+import org.onosproject.l2fwd.StormControlStatistics;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Packet-in metrics of the learning switch.
+ */
+@Path("metrics")
+public class ForwardingMetricsWebResource extends BaseResource {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Returns the packet-in counters and forwarding latency summed over all
+     * devices, the forwarding rule counters, the pipeline, storm control and
+     * proactive forwarding counters when enabled, followed by the counters of
+     * each device.
+     *
+     * @return 200 OK with the metrics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        LayerTwoService service = get(LayerTwoService.class);
+        ObjectNode root = mapper.createObjectNode();
+        root.set("total", json(service.getForwardingStatistics()));
+        root.set("rules", json(service.getForwardingRuleStatistics()));
+        PacketPipelineStatistics pipeline = service.getPacketPipelineStatistics();
+        if (pipeline != null) {
+            root.set("pipeline", json(pipeline));
+        }
+        StormControlStatistics storm = service.getStormControlStatistics();
+        if (storm != null) {
+            root.set("stormControl", json(storm));
+        }
+        ProactiveForwardingStatistics proactive = service.getProactiveForwardingStatistics();
+        if (proactive != null) {
+            root.set("proactive", json(proactive));
+        }
+        ArrayNode devices = root.putArray("devices");
+        for (Map.Entry<DeviceId, ForwardingStatistics> entry
+                : service.getDeviceForwardingStatistics().entrySet()) {
+            devices.add(json(entry.getValue()).put("id", entry.getKey().toString()));
+        }
+        return ok(root).build();
+    }
+
+    /**
+     * Returns the packet-in counters of a device.
+     *
+     * @param deviceId device identifier
+     * @return 200 OK with the metrics, 404 if the device sent no packet
+     */
+    @GET
+    @Path("{deviceId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDeviceMetrics(@PathParam("deviceId") String deviceId) {
+        ForwardingStatistics stats = get(LayerTwoService.class)
+                .getForwardingStatistics(DeviceId.deviceId(deviceId));
+        if (stats == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return ok(json(stats).put("id", deviceId)).build();
+    }
+
+    /**
+     * Clears the packet-in counters and the latency distribution.
+     *
+     * @return 204 NO CONTENT
+     */
+    @DELETE
+    public Response resetMetrics() {
+        get(LayerTwoService.class).resetForwardingStatistics();
+        return Response.noContent().build();
+    }
+
+    private ObjectNode json(ForwardingStatistics stats) {
+        ObjectNode node = mapper.createObjectNode()
+                .put("packets", stats.packets())
+                .put("forwarded", stats.forwarded())
+                .put("flooded", stats.flooded())
+                .put("learned", stats.learned())
+                .put("moved", stats.moved())
+                .put("arpReplied", stats.arpReplied())
+                .put("notMaster", stats.notMaster())
+                .put("floodRatio", stats.floodRatio())
+                .put("hitRate", stats.hitRate())
+                .put("meanNanos", stats.meanProcessingNanos());
+        if (stats.latency() != null) {
+            node.set("latency", json(stats.latency()));
+        }
+        return node;
+    }
+
+    private ObjectNode json(PacketPipelineStatistics stats) {
+        ObjectNode node = mapper.createObjectNode()
+                .put("workers", stats.workers())
+                .put("queueDepth", stats.queueDepth())
+                .put("overflowPolicy", stats.overflowPolicy())
+                .put("backlog", stats.backlog())
+                .put("dropped", stats.dropped())
+                .put("flooded", stats.flooded());
+        node.set("enqueueLatency", json(stats.enqueueLatency()));
+        node.set("queueLatency", json(stats.queueLatency()));
+        node.set("processLatency", json(stats.processLatency()));
+        return node;
+    }
+
+    private ObjectNode json(StormControlStatistics stats) {
+        return mapper.createObjectNode()
+                .put("deviceRateLimit", stats.deviceRateLimit())
+                .put("sourceRateLimit", stats.sourceRateLimit())
+                .put("dedupWindow", stats.dedupWindow())
+                .put("flooded", stats.flooded())
+                .put("suppressed", stats.suppressed())
+                .put("notBroadcastPoint", stats.notBroadcastPoint())
+                .put("duplicate", stats.duplicate())
+                .put("sourceRate", stats.sourceRate())
+                .put("deviceRate", stats.deviceRate());
+    }
+
+    private ObjectNode json(ForwardingRuleStatistics stats) {
+        return mapper.createObjectNode()
+                .put("batchSize", stats.batchSize())
+                .put("batchDelay", stats.batchDelay())
+                .put("requested", stats.requested())
+                .put("suppressed", stats.suppressed())
+                .put("batches", stats.batches())
+                .put("relocations", stats.relocations())
+                .put("paths", stats.paths());
+    }
+
+    private ObjectNode json(ProactiveForwardingStatistics stats) {
+        return mapper.createObjectNode()
+                .put("allDevices", stats.allDevices())
+                .put("installed", stats.installed())
+                .put("removed", stats.removed());
+    }
+
+    private ObjectNode json(LatencyHistogram.Snapshot latency) {
+        return mapper.createObjectNode()
+                .put("count", latency.count())
+                .put("meanNanos", latency.mean())
+                .put("p50Nanos", latency.percentile(50))
+                .put("p99Nanos", latency.percentile(99))
+                .put("p999Nanos", latency.percentile(99.9))
+                .put("maxNanos", latency.max());
+    }
+}
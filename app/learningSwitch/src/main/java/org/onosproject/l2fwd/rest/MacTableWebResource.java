@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onlab.packet.MacAddress;
+import org.onlab.rest.BaseResource;
+import org.onosproject.net.DeviceId;
+
+import org.onosproject.l2fwd.LayerTwoService;
+import org.onosproject.l2fwd.MacLocation;
+import org.onosproject.l2fwd.MacTableChanges;
+import org.onosproject.l2fwd.MacTableEvent;
+import org.onosproject.l2fwd.MacTableSnapshot;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Learned MAC addresses of the learning switch.
+ * <p>
+ * Monitoring clients take a snapshot of the tables, then follow the change
+ * feed from the sequence number of the snapshot with long polls, starting
+ * over from a new snapshot whenever the feed tells them to.
+ */
+@Path("mactables")
+public class MacTableWebResource extends BaseResource {
+
+    private static final int MAX_TIMEOUT = 60;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Returns a snapshot of the MAC tables of the given devices, or of every
+     * device, with the sequence number to follow the change feed from.
+     *
+     * @param devices device identifiers, every device if none
+     * @return 200 OK with the MAC table entries by device
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMacTables(@QueryParam("device") List<String> devices) {
+        LayerTwoService service = get(LayerTwoService.class);
+        Map<DeviceId, MacTableSnapshot> snapshots = service.getMacTableSnapshots(
+                devices.stream().map(DeviceId::deviceId).collect(Collectors.toList()));
+        long sequence = snapshots.isEmpty() ? service.getMacTableSequence()
+                : snapshots.values().iterator().next().sequence();
+        /* Tables may be large, entries are streamed rather than built as a tree */
+        StreamingOutput output = stream -> {
+            try (JsonGenerator json = mapper.getFactory().createGenerator(stream)) {
+                json.writeStartObject();
+                json.writeNumberField("sequence", sequence);
+                json.writeArrayFieldStart("devices");
+                for (MacTableSnapshot snapshot : snapshots.values()) {
+                    json.writeStartObject();
+                    json.writeStringField("id", snapshot.deviceId().toString());
+                    json.writeNumberField("timestamp", snapshot.timestamp());
+                    json.writeArrayFieldStart("entries");
+                    snapshot.forEach((mac, port, lastSeen) -> {
+                        try {
+                            json.writeStartObject();
+                            json.writeStringField("mac", MacAddress.valueOf(mac).toString());
+                            json.writeNumberField("port", port);
+                            json.writeNumberField("lastSeen", lastSeen);
+                            json.writeEndObject();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    json.writeEndArray();
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    /**
+     * Returns the ports a MAC address has been learned on, on every device.
+     *
+     * @param mac MAC address
+     * @return 200 OK with the locations of the address, telling edge ports
+     * from links to other devices
+     */
+    @GET
+    @Path("locations/{mac}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMacLocations(@PathParam("mac") String mac) {
+        ObjectNode root = mapper.createObjectNode().put("mac", mac);
+        ArrayNode locations = root.putArray("locations");
+        for (MacLocation location : get(LayerTwoService.class).getMacLocations(MacAddress.valueOf(mac))) {
+            locations.addObject()
+                    .put("device", location.connectPoint().deviceId().toString())
+                    .put("port", location.connectPoint().port().toLong())
+                    .put("edge", location.isEdge())
+                    .put("lastSeen", location.lastSeen());
+        }
+        return ok(root).build();
+    }
+
+    /**
+     * Returns the MAC table changes following a sequence number, waiting up
+     * to the timeout for one if there is none yet. A reset flag tells that
+     * changes were missed and the tables must be read again.
+     *
+     * @param since   sequence number of the last change read
+     * @param max     maximum number of changes returned
+     * @param timeout seconds to wait for a change, at most 60
+     * @return 200 OK with the changes and the sequence number to poll from
+     */
+    @GET
+    @Path("changes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getChanges(@QueryParam("since") @DefaultValue("0") long since,
+                               @QueryParam("max") @DefaultValue("1000") int max,
+                               @QueryParam("timeout") @DefaultValue("30") int timeout) {
+        MacTableChanges changes;
+        try {
+            changes = get(LayerTwoService.class).getMacTableChanges(
+                    since, max, SECONDS.toMillis(Math.max(0, Math.min(timeout, MAX_TIMEOUT))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        ObjectNode root = mapper.createObjectNode()
+                .put("sequence", changes.sequence())
+                .put("reset", changes.reset());
+        ArrayNode events = root.putArray("changes");
+        for (MacTableEvent event : changes.events()) {
+            ObjectNode node = events.addObject()
+                    .put("sequence", event.sequence())
+                    .put("type", event.type().name())
+                    .put("device", event.subject().toString())
+                    .put("mac", event.mac().toString())
+                    .put("port", event.port().toLong())
+                    .put("time", event.time());
+            if (event.previousPort() != null) {
+                node.put("previousPort", event.previousPort().toLong());
+            }
+        }
+        return ok(root).build();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapBuilder;
+import org.onosproject.store.service.TestEventuallyConsistentMap;
+import org.onosproject.store.service.TestStorageService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the distributed MAC store, with two instances sharing one
+ * in-process map in place of a cluster.
+ */
+public class DistributedMacStoreTest {
+
+    private static final DeviceId DID = DeviceId.deviceId("of:0000000000000001");
+    private static final long MAC = 0x0000_0a0b_0c0d_0e0fL;
+
+    private final Map<String, EventuallyConsistentMap<?, ?>> maps = new HashMap<>();
+    private final RecordingDelegate delegate1 = new RecordingDelegate();
+    private final RecordingDelegate delegate2 = new RecordingDelegate();
+    private DistributedMacStore store1;
+    private DistributedMacStore store2;
+
+    @Before
+    public void setUp() {
+        SharedStorageService storageService = new SharedStorageService();
+        store1 = new DistributedMacStore(storageService, NodeId.nodeId("1"), delegate1, Runnable::run);
+        store2 = new DistributedMacStore(storageService, NodeId.nodeId("2"), delegate2, Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        store1.close();
+        store2.close();
+    }
+
+    @Test
+    public void putReachesPeersOnly() {
+        store1.put(DID, MAC, 1, 1000);
+
+        assertTrue(delegate1.learned.isEmpty());
+        assertEquals(1, delegate2.learned.size());
+        assertEquals(new Learned(MAC, 1, 1000), delegate2.learned.get(0));
+        assertEquals(1, store2.size());
+    }
+
+    @Test
+    public void refreshCarriesWriterTimestamp() {
+        MacTable table = new MacTable();
+        table.learn(MAC, 1, 1000);
+        store1.put(DID, MAC, 1, 1000);
+        table.learn(MAC, 1, 5000);
+
+        assertEquals(1, store1.refresh(DID, table, 1000));
+        assertEquals(new Learned(MAC, 1, 5000), delegate2.learned.get(1));
+
+        assertEquals("only entries seen since the previous refresh",
+                     0, store1.refresh(DID, table, 5000));
+        assertEquals(2, delegate2.learned.size());
+    }
+
+    @Test
+    public void refreshSkipsEntriesOfPeers() {
+        MacTable table = new MacTable();
+        store2.put(DID, MAC, 2, 1000);
+        table.learn(MAC, 2, 5000);
+
+        assertEquals(0, store1.refresh(DID, table, 0));
+        assertTrue(delegate2.learned.isEmpty());
+    }
+
+    @Test
+    public void onlyWriterRemoves() {
+        store1.put(DID, MAC, 1, 1000);
+
+        store2.remove(DID, MAC, 1);
+        assertEquals(1, store1.size());
+        store1.remove(DID, MAC, 2);
+        assertEquals("port moved in the meantime", 1, store1.size());
+
+        store1.remove(DID, MAC, 1);
+        assertEquals(0, store2.size());
+        assertTrue(delegate1.removed.isEmpty());
+        assertEquals(1, delegate2.removed.size());
+    }
+
+    @Test
+    public void loadKeepsWriterTimestamp() {
+        store1.put(DID, MAC, 1, 1000);
+        delegate2.learned.clear();
+
+        assertEquals(1, store2.load());
+        assertEquals(new Learned(MAC, 1, 1000), delegate2.learned.get(0));
+    }
+
+    /**
+     * Storage service handing out one map per name, as a cluster would.
+     */
+    private class SharedStorageService extends TestStorageService {
+        @Override
+        public <K, V> EventuallyConsistentMapBuilder<K, V> eventuallyConsistentMapBuilder() {
+            return new SharedMapBuilder<>();
+        }
+    }
+
+    private class SharedMapBuilder<K, V> extends TestEventuallyConsistentMap.Builder<K, V> {
+        private String name;
+
+        @Override
+        public EventuallyConsistentMapBuilder<K, V> withName(String name) {
+            this.name = name;
+            return super.withName(name);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public EventuallyConsistentMap<K, V> build() {
+            return (EventuallyConsistentMap<K, V>) maps.computeIfAbsent(name, n -> super.build());
+        }
+    }
+
+    private static final class Learned {
+        private final long mac;
+        private final long port;
+        private final long lastSeen;
+
+        Learned(long mac, long port, long lastSeen) {
+            this.mac = mac;
+            this.port = port;
+            this.lastSeen = lastSeen;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Learned)) {
+                return false;
+            }
+            Learned that = (Learned) obj;
+            return mac == that.mac && port == that.port && lastSeen == that.lastSeen;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(mac ^ port ^ lastSeen);
+        }
+
+        @Override
+        public String toString() {
+            return mac + "@" + port + "/" + lastSeen;
+        }
+    }
+
+    private static final class RecordingDelegate implements DistributedMacStore.Delegate {
+        private final List<Learned> learned = new ArrayList<>();
+        private final List<Long> removed = new ArrayList<>();
+
+        @Override
+        public void learned(DeviceId deviceId, long mac, long port, long lastSeen) {
+            learned.add(new Learned(mac, port, lastSeen));
+        }
+
+        @Override
+        public void removed(DeviceId deviceId, long mac, Long port) {
+            removed.add(mac);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the MAC table journal. The periodic snapshot and flush tasks are
+ * captured instead of scheduled, and run by the tests.
+ */
+public class MacTableJournalTest {
+
+    private static final DeviceId DID = DeviceId.deviceId("of:0000000000000001");
+    private static final long MAC1 = 0x0000_0a00_0000_0001L;
+    private static final long MAC2 = 0x0000_0a00_0000_0002L;
+    private static final long MAC3 = 0x0000_0a00_0000_0003L;
+
+    private final List<Runnable> tasks = Lists.newArrayList();
+    private ScheduledThreadPoolExecutor executor;
+    private Path directory;
+    private Path file;
+    private Map<DeviceId, MacTable> tables;
+    private MacTableJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = new CapturingExecutor();
+        directory = Files.createTempDirectory("l2fwd-journal");
+        file = directory.resolve("mac-tables");
+        tables = new ConcurrentHashMap<>();
+        journal = new MacTableJournal(file, tables, executor);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void snapshotAndChangesRoundTrip() throws IOException {
+        long now = System.currentTimeMillis();
+        MacTable table = table();
+        table.learn(MAC1, 1, now - 1000);
+        table.learn(MAC2, 2, now);
+        snapshot();
+
+        table.learn(MAC3, 3, now);
+        journal.learned(DID, MAC3, 3, now);
+        table.remove(MAC2);
+        journal.removed(DID, MAC2);
+        table.learn(MAC1, 4, now);
+        journal.learned(DID, MAC1, 4, now);
+        flush();
+
+        Map<DeviceId, MacTable> loaded = new HashMap<>();
+        assertEquals(4, load(file, loaded));
+        assertEquals(ImmutableMap.of(MAC1, 4L, MAC3, 3L), entries(loaded.get(DID)));
+        assertEquals(now, loaded.get(DID).lastSeen(MAC3));
+    }
+
+    @Test
+    public void truncatedFileKeepsCompleteRecords() throws IOException {
+        long now = System.currentTimeMillis();
+        MacTable table = table();
+        table.learn(MAC1, 1, now);
+        table.learn(MAC2, 2, now);
+        snapshot();
+        journal.learned(DID, MAC3, 3, now);
+        flush();
+
+        List<Integer> ends = recordEnds(file);
+        Path copy = copy(ends.get(ends.size() - 1) - 3, -1);
+        Map<DeviceId, MacTable> loaded = new HashMap<>();
+        load(copy, loaded);
+        assertEquals("change record cut short", ImmutableMap.of(MAC1, 1L, MAC2, 2L), entries(loaded.get(DID)));
+    }
+
+    @Test
+    public void corruptRecordEndsTheLoad() throws IOException {
+        long now = System.currentTimeMillis();
+        MacTable table = table();
+        table.learn(MAC1, 1, now);
+        snapshot();
+        journal.learned(DID, MAC2, 2, now);
+        flush();
+        journal.learned(DID, MAC3, 3, now);
+        flush();
+
+        List<Integer> ends = recordEnds(file);
+        assertEquals("header, table and two change records", 4, ends.size());
+        Path copy = copy(ends.get(3), ends.get(2) - 1);
+        Map<DeviceId, MacTable> loaded = new HashMap<>();
+        load(copy, loaded);
+        assertEquals(ImmutableMap.of(MAC1, 1L), entries(loaded.get(DID)));
+    }
+
+    @Test
+    public void staleEntriesAreNotRestored() throws IOException {
+        long now = System.currentTimeMillis();
+        MacTable table = table();
+        table.learn(MAC1, 1, now - SECONDS.toMillis(120));
+        table.learn(MAC2, 2, now - SECONDS.toMillis(10));
+        snapshot();
+        journal.learned(DID, MAC3, 3, now - SECONDS.toMillis(90));
+        flush();
+
+        Map<DeviceId, MacTable> loaded = new HashMap<>();
+        assertEquals(1, load(file, loaded));
+        assertEquals(ImmutableMap.of(MAC2, 2L), entries(loaded.get(DID)));
+        assertEquals("keeps aging from its last-seen time",
+                     now - SECONDS.toMillis(10), loaded.get(DID).lastSeen(MAC2));
+    }
+
+    private MacTable table() {
+        return tables.computeIfAbsent(DID, id -> new MacTable());
+    }
+
+    /* The snapshot task is scheduled first, then the flush task. */
+    private void snapshot() {
+        journal.start(3600);
+        tasks.get(0).run();
+    }
+
+    private void flush() {
+        tasks.get(1).run();
+    }
+
+    private int load(Path path, Map<DeviceId, MacTable> loaded) throws IOException {
+        MacTableJournal reader = new MacTableJournal(path, loaded, executor);
+        return reader.load(id -> loaded.computeIfAbsent(id, k -> new MacTable()));
+    }
+
+    private static Map<Long, Long> entries(MacTable table) {
+        Map<Long, Long> entries = new HashMap<>();
+        table.forEach((mac, port, lastSeen) -> entries.put(mac, port));
+        return entries;
+    }
+
+    /* Offsets right after each record, following the length of their frames. */
+    private static List<Integer> recordEnds(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<Integer> ends = Lists.newArrayList();
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            if (length == 0) {
+                break;
+            }
+            buffer.position(buffer.position() + 4 + length);
+            ends.add(buffer.position());
+        }
+        return ends;
+    }
+
+    /* Copies the start of the journal, flipping the bits of one byte if given. */
+    private Path copy(int length, int corrupt) throws IOException {
+        byte[] bytes = Arrays.copyOf(Files.readAllBytes(file), length);
+        if (corrupt >= 0) {
+            bytes[corrupt] ^= (byte) 0xff;
+        }
+        Path copy = directory.resolve("copy");
+        Files.write(copy, bytes);
+        return copy;
+    }
+
+    private final class CapturingExecutor extends ScheduledThreadPoolExecutor {
+
+        CapturingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+                                                         long delay, TimeUnit unit) {
+            tasks.add(command);
+            return schedule(() -> { }, 1, DAYS);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.l2fwd;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.l2fwd.MacTable.NO_PORT;
+
+/**
+ * Tests of the MAC table.
+ */
+public class MacTableTest {
+
+    private static final long MAC1 = 0x0000_0000_0000_0001L;
+    private static final long MAC2 = 0x0000_0000_0000_0002L;
+    private static final long MAC3 = 0x0000_0000_0000_0003L;
+    private static final long MAC4 = 0x0000_0000_0000_0004L;
+
+    @Test
+    public void learnMoveRemove() {
+        MacTable table = new MacTable();
+        assertEquals(NO_PORT, table.learn(MAC1, 1, 100));
+        assertEquals(1, table.lookup(MAC1));
+        assertEquals(100, table.lastSeen(MAC1));
+
+        assertEquals("move returns the previous port", 1, table.learn(MAC1, 2, 200));
+        assertEquals(2, table.lookup(MAC1));
+        assertEquals(200, table.lastSeen(MAC1));
+        assertEquals(1, table.size());
+
+        assertEquals(2, table.remove(MAC1));
+        assertEquals(NO_PORT, table.lookup(MAC1));
+        assertEquals(-1, table.lastSeen(MAC1));
+        assertEquals(NO_PORT, table.remove(MAC1));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void removeWithinProbeChains() {
+        /* Addresses sharing a home slot, followed by one homed right after them */
+        MacTable table = new MacTable(1024);
+        List<Long> chain = colliding(2048, 4);
+        long neighbour = homedAt(2048, (home(chain.get(0), 2048) + 1) & 2047);
+        for (long mac : chain) {
+            table.learn(mac, mac, 1);
+        }
+        table.learn(neighbour, 7, 1);
+
+        assertEquals(chain.get(0).longValue(), table.remove(chain.get(0)));
+        assertEquals(chain.get(2).longValue(), table.remove(chain.get(2)));
+        assertEquals(chain.get(1).longValue(), table.lookup(chain.get(1)));
+        assertEquals(chain.get(3).longValue(), table.lookup(chain.get(3)));
+        assertEquals(7, table.lookup(neighbour));
+
+        table.remove(chain.get(1));
+        table.remove(chain.get(3));
+        assertEquals(7, table.lookup(neighbour));
+        assertEquals(1, table.size());
+        for (long mac : chain) {
+            assertEquals(NO_PORT, table.lookup(mac));
+        }
+    }
+
+    @Test
+    public void matchesMapUnderRandomOperations() {
+        MacTable table = new MacTable(1);
+        Map<Long, Long> model = new HashMap<>();
+        Random random = new Random(42);
+        for (int op = 0; op < 50_000; op++) {
+            long mac = random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                Long expected = model.remove(mac);
+                assertEquals(expected == null ? NO_PORT : expected, table.remove(mac));
+            } else {
+                long port = random.nextInt(48);
+                Long expected = model.put(mac, port);
+                assertEquals(expected == null ? NO_PORT : expected, table.learn(mac, port, op));
+            }
+        }
+        assertEquals(model.size(), table.size());
+        for (long mac = 0; mac < 300; mac++) {
+            Long expected = model.get(mac);
+            assertEquals(expected == null ? NO_PORT : expected, table.lookup(mac));
+        }
+    }
+
+    @Test
+    public void resizeKeepsEntriesAndRecency() {
+        MacTable table = new MacTable(1);
+        for (long mac = 0; mac < 1000; mac++) {
+            table.learn(mac, mac % 48, mac);
+        }
+        assertEquals(1000, table.size());
+        for (long mac = 0; mac < 1000; mac++) {
+            assertEquals(mac % 48, table.lookup(mac));
+        }
+        List<Long> order = Lists.newArrayList();
+        table.forEach((mac, port, lastSeen) -> order.add(mac));
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals("least recently seen first", i, order.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void expireOldestFirstWithinBudget() {
+        MacTable table = new MacTable();
+        table.setAge(Duration.ofMillis(5));
+        for (long mac = 1; mac <= 10; mac++) {
+            table.learn(mac, 1, mac);
+        }
+        table.learn(2, 1, 20);
+
+        List<Long> removed = Lists.newArrayList();
+        assertEquals(3, table.expire(12, 3, (mac, port, lastSeen) -> removed.add(mac)));
+        assertEquals(Lists.newArrayList(1L, 3L, 4L), removed);
+
+        removed.clear();
+        assertEquals(2, table.expire(12, 100, (mac, port, lastSeen) -> removed.add(mac)));
+        assertEquals("stops at the first fresh entry", Lists.newArrayList(5L, 6L), removed);
+        assertEquals(5, table.expiredCount());
+        assertEquals(5, table.size());
+        assertEquals(1, table.lookup(2));
+    }
+
+    @Test
+    public void evictLeastRecentlySeenAtCapacity() {
+        MacTable table = new MacTable();
+        List<Long> evicted = Lists.newArrayList();
+        table.setEvictionListener((mac, port, lastSeen) -> evicted.add(mac));
+        table.setMaxEntries(3);
+        table.learn(MAC1, 1, 1);
+        table.learn(MAC2, 1, 2);
+        table.learn(MAC3, 1, 3);
+        table.lookup(MAC1);
+        table.learn(MAC1, 1, 4);
+
+        table.learn(MAC4, 1, 5);
+        assertEquals(Lists.newArrayList(MAC2), evicted);
+        assertEquals(3, table.size());
+
+        table.setMaxEntries(1);
+        assertEquals(Lists.newArrayList(MAC2, MAC3, MAC1), evicted);
+        assertEquals(1, table.lookup(MAC4));
+        assertEquals(3, table.evictedCount());
+    }
+
+    @Test
+    public void walkCrossesChunks() {
+        MacTable table = new MacTable(1);
+        for (long mac = 0; mac < 1000; mac++) {
+            table.learn(mac, 1, mac);
+        }
+        Set<Long> seen = new HashSet<>();
+        table.walk((mac, port, lastSeen) -> {
+            assertTrue("visited once", seen.add(mac));
+            assertEquals(mac, lastSeen);
+            return true;
+        });
+        assertEquals(1000, seen.size());
+
+        int[] visits = {0};
+        table.walk((mac, port, lastSeen) -> ++visits[0] < 300);
+        assertEquals("stops when the walker does", 300, visits[0]);
+    }
+
+    /* Same spreading as the table, to build colliding addresses. */
+    private static int home(long mac, int capacity) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    private static List<Long> colliding(int capacity, int count) {
+        Map<Integer, List<Long>> byHome = new HashMap<>();
+        for (long mac = 1; ; mac++) {
+            List<Long> macs = byHome.computeIfAbsent(home(mac, capacity), h -> Lists.newArrayList());
+            macs.add(mac);
+            if (macs.size() == count) {
+                return macs;
+            }
+        }
+    }
+
+    private static long homedAt(int capacity, int slot) {
+        for (long mac = 1 << 20; ; mac++) {
+            if (home(mac, capacity) == slot) {
+                return mac;
+            }
+        }
+    }
+}